@@ -0,0 +1,52 @@
+package com.restaurant.pos.bench;
+
+import com.restaurant.pos.service.ForecastModel;
+import com.restaurant.pos.service.ForecastService;
+import com.restaurant.pos.service.PromoService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+    private BenchDatabase db;
+    private ForecastService forecasts;
+    private PromoService promos;
+    private int yearDays;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDatabase.create(20);
+        forecasts = new ForecastService();
+        promos = new PromoService();
+        yearDays = ForecastService.historyDaysFor(12);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Benchmark
+    public List<ForecastService.Forecast> forecastNextMonthSales() {
+        return forecasts.forecastNextMonthSales(3);
+    }
+
+    // Heaviest model over the full year of history
+    @Benchmark
+    public List<ForecastService.Forecast> forecastHoltWintersYear() {
+        return forecasts.forecast(ForecastModel.holtWinters(0.3, 0.05, 0.3), yearDays, ForecastService.nextMonthDays());
+    }
+
+    // After the first invocation every expiring item already has a promo, so this measures the update path
+    @Benchmark
+    public PromoService.PromoRunReport generateExpiryBasedPromos() {
+        return promos.generateExpiryBasedPromos(7, 20);
+    }
+}
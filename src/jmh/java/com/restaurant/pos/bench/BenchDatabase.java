@@ -0,0 +1,105 @@
+package com.restaurant.pos.bench;
+
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.service.MenuCatalog;
+import com.restaurant.pos.service.PromoPricing;
+import com.restaurant.pos.service.StockProjection;
+import com.restaurant.pos.tools.DataGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * A throwaway database in its own temp directory, filled by {@link DataGenerator} at production scale (a year of
+ * order history over a few hundred items) plus a configurable number of deep inventory batches per item. Each JMH
+ * fork gets its own copy.
+ */
+final class BenchDatabase implements AutoCloseable {
+    static final int MENU_ITEMS = 400;
+
+    // Deep enough that benchmark iterations never run out of stock
+    static final int BATCH_QUANTITY = 1_000_000;
+
+    private static int[] itemIds;
+
+    private final Path dir;
+
+    private BenchDatabase(Path dir) {
+        this.dir = dir;
+    }
+
+    static BenchDatabase create(int batchesPerItem) throws Exception {
+        Path dir = Files.createTempDirectory("pos-bench");
+        System.setProperty("pos.data.dir", dir.toString());
+        Database.initialize();
+        BenchDatabase db = new BenchDatabase(dir);
+        new DataGenerator(new DataGenerator.Config(MENU_ITEMS, 365, 400, 6, 20, 40, 42)).generate();
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            itemIds = loadItemIds(conn);
+            seedBatches(conn, new SplittableRandom(42), batchesPerItem);
+            conn.commit();
+        }
+        StockProjection.instance().reload();
+        MenuCatalog.instance().refreshIfChanged();
+        PromoPricing.instance().refreshIfChanged();
+        return db;
+    }
+
+    // i-th active menu item, 0 <= i < MENU_ITEMS
+    static int itemId(int i) {
+        return itemIds[i];
+    }
+
+    private static int[] loadItemIds(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM menu_item WHERE active = 1 ORDER BY id LIMIT ?")) {
+            ps.setInt(1, MENU_ITEMS);
+            try (ResultSet rs = ps.executeQuery()) {
+                int[] ids = new int[MENU_ITEMS];
+                int n = 0;
+                while (rs.next()) ids[n++] = rs.getInt(1);
+                return ids;
+            }
+        }
+    }
+
+    // Expiries spread over the next two months, so promo generation finds a realistic share expiring soon
+    private static void seedBatches(Connection conn, SplittableRandom rnd, int batchesPerItem) throws SQLException {
+        LocalDate today = LocalDate.now();
+        String now = LocalDateTime.now().toString();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO inventory_batch(menu_item_id, quantity, unit_cost_cents, expiry_date, created_at) VALUES (?,?,?,?,?)")) {
+            for (int i = 0; i < MENU_ITEMS; i++) {
+                for (int b = 0; b < batchesPerItem; b++) {
+                    ps.setInt(1, itemId(i));
+                    ps.setInt(2, BATCH_QUANTITY / batchesPerItem + 1);
+                    ps.setInt(3, 100 + rnd.nextInt(500));
+                    ps.setString(4, today.plusDays(1 + rnd.nextInt(60)).toString());
+                    ps.setString(5, now);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Database.shutdown();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.restaurant.pos.bench;
+
+import com.restaurant.pos.service.ForecastEngine;
+import com.restaurant.pos.service.ForecastModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ForecastEngine} alone, over in-memory series shaped like real sales: a per-item level, a weekly pattern and
+ * days without sales. No database, so the numbers are the evaluation itself; the default parameters are the target
+ * of thousands of items over two years of daily history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForecastEngineBenchmark {
+    @Param({"moving-average", "exponential-smoothing", "holt-winters", "day-of-week"})
+    public String model;
+
+    @Param({"2000"})
+    public int items;
+
+    @Param({"730"})
+    public int days;
+
+    private static final int HORIZON_DAYS = 30;
+
+    private final ForecastEngine engine = new ForecastEngine();
+    private ForecastModel forecastModel;
+    private int[][] series;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        forecastModel = ForecastModel.named(model, days);
+        SplittableRandom rnd = new SplittableRandom(42);
+        series = new int[items][days];
+        for (int i = 0; i < items; i++) {
+            double level = 0.5 + rnd.nextDouble() * 20;
+            double weekend = 1 + rnd.nextDouble();
+            for (int d = 0; d < days; d++) {
+                double mean = d % 7 >= 5 ? level * weekend : level;
+                series[i][d] = rnd.nextDouble() < 0.1 ? 0 : (int) Math.round(mean * (0.5 + rnd.nextDouble()));
+            }
+        }
+    }
+
+    @Benchmark
+    public double[] evaluate() {
+        return engine.evaluate(forecastModel, series, 0, HORIZON_DAYS);
+    }
+}
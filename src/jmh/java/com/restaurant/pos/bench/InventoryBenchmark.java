@@ -0,0 +1,64 @@
+package com.restaurant.pos.bench;
+
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.service.InventoryService;
+import com.restaurant.pos.service.StockProjection;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryBenchmark {
+    @Param({"10", "100", "1000"})
+    public int batchesPerItem;
+
+    private BenchDatabase db;
+    private InventoryService inventory;
+    private int item;
+    private int quantity;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDatabase.create(batchesPerItem);
+        inventory = new InventoryService();
+        item = BenchDatabase.itemId(0);
+        // Walks half of the item's batches, depleting most of them
+        quantity = BenchDatabase.BATCH_QUANTITY / 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        db.close();
+    }
+
+    // Rolled back every time so each invocation sees the same batches; the rollback is part of the measurement
+    @Benchmark
+    public void deductInventoryFIFO() throws Exception {
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                inventory.deductInventoryFIFO(item, quantity, conn);
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<InventoryService.StockLevel> getStockLevels() {
+        return inventory.getStockLevels();
+    }
+
+    // Full aggregate over inventory_batch, for comparison with the in-memory projection
+    @Benchmark
+    public List<StockProjection.Drift> checkStockProjection() {
+        return inventory.checkStockProjection();
+    }
+}
@@ -0,0 +1,46 @@
+package com.restaurant.pos.bench;
+
+import com.restaurant.pos.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One synchronous checkout: pricing, FIFO deduction, rollup, receipt and the commit. Across cart sizes the scores show
+// what each line adds; OrderWritePathTest pins the statement counts that keep that small.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBenchmark {
+    @Param({"1", "5", "20"})
+    public int cartSize;
+
+    private BenchDatabase db;
+    private OrderService orders;
+    private List<OrderService.CartLine> cart;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchDatabase.create(10);
+        orders = new OrderService();
+        cart = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            cart.add(new OrderService.CartLine(BenchDatabase.itemId(i * 7 % BenchDatabase.MENU_ITEMS), "Bench item", 1 + i % 3, 999));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        orders.shutdown();
+        db.close();
+    }
+
+    @Benchmark
+    public OrderService.OrderResult placeOrder() {
+        return orders.placeOrder(cart, "CARD");
+    }
+}
@@ -1,6 +1,17 @@
 package com.restaurant.pos;
 
 import com.restaurant.pos.db.Database;
+import com.restaurant.pos.http.RemoteServices;
+import com.restaurant.pos.metrics.Metrics;
+import com.restaurant.pos.service.AsyncServices;
+import com.restaurant.pos.service.BackgroundJobs;
+import com.restaurant.pos.service.JobScheduler;
+import com.restaurant.pos.service.OrderEvents;
+import com.restaurant.pos.service.OrderJournal;
+import com.restaurant.pos.service.PromoPricing;
+import com.restaurant.pos.service.SalesFacts;
+import com.restaurant.pos.service.SalesRollupService;
+import com.restaurant.pos.service.StockProjection;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
@@ -13,26 +24,65 @@ import com.restaurant.pos.ui.InventoryTab;
 import com.restaurant.pos.ui.OrdersTab;
 import com.restaurant.pos.ui.AnalyticsTab;
 
+import java.net.URI;
+
+/**
+ * Standalone by default: the app owns the local database and runs the background jobs itself. With
+ * {@code --server=http://host:8085} it is a thin client of a {@link com.restaurant.pos.http.PosServer} and
+ * touches no local data.
+ */
 public class MainApp extends Application {
+    private AsyncServices services;
+    private JobScheduler scheduler;
 
     @Override
     public void start(Stage primaryStage) {
-        // Initialize DB schema and seed data
-        Database.initialize();
+        String server = getParameters().getNamed().get("server");
+        if (server != null) {
+            services = new RemoteServices(URI.create(server));
+        } else {
+            // Initialize DB schema and seed data
+            Database.initialize();
+            StockProjection.instance().reload();
+            PromoPricing.instance().current();
+            new SalesRollupService().backfillIfEmpty();
+            OrderJournal.instance().open();
+            SalesFacts.instance().open();
+
+            scheduler = new JobScheduler();
+            BackgroundJobs.registerDefaults(scheduler);
+            scheduler.start();
+            scheduler.runNow(BackgroundJobs.FORECAST);
 
+            services = AsyncServices.local();
+        }
         TabPane tabs = new TabPane();
-        tabs.getTabs().add(new Tab("Order", new OrderTab()));
-        tabs.getTabs().add(new Tab("Inventory", new InventoryTab()));
-        tabs.getTabs().add(new Tab("Orders", new OrdersTab()));
-        tabs.getTabs().add(new Tab("Analytics", new AnalyticsTab()));
+        tabs.getTabs().add(new Tab("Order", new OrderTab(services)));
+        tabs.getTabs().add(new Tab("Inventory", new InventoryTab(services)));
+        tabs.getTabs().add(new Tab("Orders", new OrdersTab(services)));
+        tabs.getTabs().add(new Tab("Analytics", new AnalyticsTab(services)));
 
         BorderPane root = new BorderPane(tabs);
         Scene scene = new Scene(root, 1200, 800);
-        primaryStage.setTitle("Restaurant POS");
+        primaryStage.setTitle(server == null ? "Restaurant POS" : "Restaurant POS - " + server);
         primaryStage.setScene(scene);
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        if (scheduler != null) scheduler.close();
+        OrderEvents.instance().logSummary();
+        if (services != null) services.close();
+        // A thin client never opened the database
+        if (scheduler != null) {
+            OrderJournal.instance().close();
+            SalesFacts.instance().close();
+            Metrics.logSummary();
+            Database.shutdown();
+        }
+    }
+
     private Tab createPlaceholderTab(String title, String message) {
         Tab tab = new Tab(title);
         tab.setClosable(false);
@@ -0,0 +1,311 @@
+package com.restaurant.pos.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Closed trading months moved out of the hot database into one SQLite file each, data/archive/pos-YYYY-MM.db, so
+ * pos.db only holds the open period plus a short tail and stops growing with the age of the store. The
+ * archive_period registry in the hot database records which months have moved, their time and order id ranges;
+ * reads that reach further back ATTACH just the files whose range they need.
+ *
+ * <p>A month moves in two transactions on the writer. The first copies its rows into the month's file and registers
+ * the period as 'copying'. The second checks that every hot row of the month is in the file, deletes them from the
+ * hot database and marks the period 'sealed'; it writes pos.db only, so it commits atomically even though the
+ * cross-file commit of a WAL database does not. Readers only attach sealed periods, and a sealed month has no rows
+ * left in the hot database, so every order is seen exactly once. A crash in between leaves the hot rows in place
+ * and the next run copies again over what is already there.
+ */
+public final class Archives {
+    private static final Logger log = LoggerFactory.getLogger(Archives.class);
+
+    // The one schema name an archive is attached under, so statements prepared against it stay reusable
+    public static final String ALIAS = "arc";
+
+    public static record Period(YearMonth month, Path file, long fromMs, long untilMs, int firstOrderId,
+                                int lastOrderId, long orders, long ledgerRows) {
+        // Both ranges half-open, [from, until)
+        public boolean overlaps(long fromMs, long untilMs) {
+            return this.fromMs < untilMs && fromMs < this.untilMs;
+        }
+
+        public boolean mayHoldOrder(int orderId) {
+            return orders > 0 && orderId >= firstOrderId && orderId <= lastOrderId;
+        }
+    }
+
+    // hotRows selects the month's rows in the hot database from ?1 (start) and ?2 (end) in epoch millis
+    private record Table(String name, String key, String columns, String hotRows, String... ddl) {}
+
+    private static final String ARC = ALIAS + ".";
+    private static final String IN_MONTH = "created_ms >= ?1 AND created_ms < ?2";
+    private static final String OF_ORDERS_IN_MONTH = "order_id IN (SELECT id FROM main.orders WHERE " + IN_MONTH + ")";
+
+    // Same columns as the hot tables but no foreign keys, since menu_item stays in the hot database. Orders first;
+    // deletes run in reverse so children go before their order
+    private static final List<Table> TABLES = List.of(
+            new Table("orders", "id",
+                    "id, created_at, subtotal_cents, discount_cents, tax_cents, total_cents, payment_method, status, created_ms",
+                    IN_MONTH,
+                    "CREATE TABLE IF NOT EXISTS " + ARC + "orders (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "created_at TEXT NOT NULL, " +
+                            "subtotal_cents INTEGER NOT NULL, " +
+                            "discount_cents INTEGER NOT NULL, " +
+                            "tax_cents INTEGER NOT NULL, " +
+                            "total_cents INTEGER NOT NULL, " +
+                            "payment_method TEXT NOT NULL, " +
+                            "status TEXT NOT NULL, " +
+                            "created_ms INTEGER NOT NULL" +
+                            ")",
+                    "CREATE INDEX IF NOT EXISTS " + ARC + "idx_orders_created_ms ON orders(created_ms)"),
+            new Table("order_item", "id",
+                    "id, order_id, menu_item_id, quantity, unit_price_cents, line_total_cents",
+                    OF_ORDERS_IN_MONTH,
+                    "CREATE TABLE IF NOT EXISTS " + ARC + "order_item (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "order_id INTEGER NOT NULL, " +
+                            "menu_item_id INTEGER NOT NULL, " +
+                            "quantity INTEGER NOT NULL, " +
+                            "unit_price_cents INTEGER NOT NULL, " +
+                            "line_total_cents INTEGER NOT NULL" +
+                            ")",
+                    "CREATE INDEX IF NOT EXISTS " + ARC + "idx_order_item_order ON order_item(order_id)"),
+            new Table("payment", "id",
+                    "id, order_id, amount_cents, method, created_at, created_ms",
+                    OF_ORDERS_IN_MONTH,
+                    "CREATE TABLE IF NOT EXISTS " + ARC + "payment (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "order_id INTEGER NOT NULL, " +
+                            "amount_cents INTEGER NOT NULL, " +
+                            "method TEXT NOT NULL, " +
+                            "created_at TEXT NOT NULL, " +
+                            "created_ms INTEGER" +
+                            ")",
+                    "CREATE INDEX IF NOT EXISTS " + ARC + "idx_payment_order ON payment(order_id)"),
+            new Table("order_receipt", "order_id",
+                    "order_id, content",
+                    OF_ORDERS_IN_MONTH,
+                    "CREATE TABLE IF NOT EXISTS " + ARC + "order_receipt (" +
+                            "order_id INTEGER PRIMARY KEY, " +
+                            "content TEXT NOT NULL" +
+                            ")"),
+            new Table("order_receipt_data", "order_id",
+                    "order_id, data",
+                    OF_ORDERS_IN_MONTH,
+                    "CREATE TABLE IF NOT EXISTS " + ARC + "order_receipt_data (" +
+                            "order_id INTEGER PRIMARY KEY, " +
+                            "data BLOB NOT NULL" +
+                            ")"),
+            new Table("inventory_ledger", "id",
+                    "id, menu_item_id, quantity_change, reason, ref_type, ref_id, created_at, created_ms",
+                    IN_MONTH,
+                    "CREATE TABLE IF NOT EXISTS " + ARC + "inventory_ledger (" +
+                            "id INTEGER PRIMARY KEY, " +
+                            "menu_item_id INTEGER NOT NULL, " +
+                            "quantity_change INTEGER NOT NULL, " +
+                            "reason TEXT NOT NULL, " +
+                            "ref_type TEXT, " +
+                            "ref_id INTEGER, " +
+                            "created_at TEXT NOT NULL, " +
+                            "created_ms INTEGER NOT NULL" +
+                            ")",
+                    "CREATE INDEX IF NOT EXISTS " + ARC + "idx_ledger_item_time ON inventory_ledger(menu_item_id, created_ms)"));
+
+    private static final String PERIOD_COLUMNS =
+            "period, file, from_ms, until_ms, first_order_id, last_order_id, orders, ledger_rows";
+    private static final String SELECT_SEALED =
+            "SELECT " + PERIOD_COLUMNS + " FROM archive_period WHERE status = 'sealed' ORDER BY from_ms DESC";
+    private static final String SELECT_PERIOD = "SELECT " + PERIOD_COLUMNS + " FROM archive_period WHERE period = ?";
+    private static final String REGISTER_PERIOD =
+            "INSERT INTO archive_period(period, file, from_ms, until_ms, status) VALUES (?,?,?,?,'copying') " +
+            "ON CONFLICT(period) DO NOTHING";
+    private static final String SEAL_PERIOD = "UPDATE archive_period SET status = 'sealed', sealed_ms = ?, " +
+            "orders = (SELECT COUNT(*) FROM " + ARC + "orders), " +
+            "first_order_id = (SELECT MIN(id) FROM " + ARC + "orders), " +
+            "last_order_id = (SELECT MAX(id) FROM " + ARC + "orders), " +
+            "ledger_rows = (SELECT COUNT(*) FROM " + ARC + "inventory_ledger) " +
+            "WHERE period = ?";
+    private static final String OLDEST_HOT = "SELECT MIN(ms) FROM (" +
+            "SELECT MIN(created_ms) AS ms FROM orders UNION ALL SELECT MIN(created_ms) FROM inventory_ledger)";
+    private static final String HOT_FROM = "SELECT MAX(until_ms) FROM archive_period WHERE status = 'sealed'";
+
+    private Archives() {}
+
+    // Newest first
+    public static List<Period> sealed(Connection conn) throws SQLException {
+        List<Period> out = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_SEALED); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(period(rs));
+        }
+        return out;
+    }
+
+    // Where the hot database starts: the end of the newest sealed month, or Long.MIN_VALUE before any is sealed
+    public static long hotFromMs(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(HOT_FROM); ResultSet rs = ps.executeQuery()) {
+            long ms = rs.next() ? rs.getLong(1) : 0;
+            return rs.wasNull() ? Long.MIN_VALUE : ms;
+        }
+    }
+
+    /**
+     * Attaches a sealed period's file as {@link #ALIAS}. SQLite refuses ATTACH inside a transaction, so the
+     * connection must be in auto-commit mode; detach again before the lease is released.
+     */
+    public static void attach(Connection conn, Period period) throws SQLException {
+        if (!Files.isRegularFile(period.file())) {
+            throw new SQLException("Archive file for " + period.month() + " is missing: " + period.file());
+        }
+        attach(conn, period.file());
+    }
+
+    public static void detach(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DETACH DATABASE " + ALIAS);
+        }
+    }
+
+    // Archives every month before firstHotMonth that still has rows in the hot database; returns the periods sealed
+    public static List<Period> archiveBefore(YearMonth firstHotMonth) throws SQLException {
+        long cutoff = startOf(firstHotMonth);
+        List<Period> sealed = new ArrayList<>();
+        for (YearMonth month = oldestHotMonth(cutoff); month != null; month = oldestHotMonth(cutoff)) {
+            sealed.add(archive(month));
+        }
+        return sealed;
+    }
+
+    static Period archive(YearMonth month) throws SQLException {
+        Path file = Database.dataFile("archive").resolve("pos-" + month + ".db");
+        try {
+            Files.createDirectories(file.getParent());
+        } catch (IOException e) {
+            throw new SQLException("Cannot create archive directory " + file.getParent(), e);
+        }
+        long fromMs = startOf(month);
+        long untilMs = startOf(month.plusMonths(1));
+        try (Connection conn = Database.getConnection()) {
+            attach(conn, file);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    // The copy has to be on disk before the second transaction deletes the hot rows
+                    st.execute("PRAGMA " + ALIAS + ".synchronous = FULL");
+                    for (Table t : TABLES) {
+                        for (String ddl : t.ddl()) st.execute(ddl);
+                    }
+                }
+                long copied = Transactions.write(conn, c -> copy(c, month, file, fromMs, untilMs));
+                Period period = Transactions.write(conn, c -> seal(c, month, fromMs, untilMs));
+                log.info("Archived {}: {} rows copied, {} orders and {} ledger rows in {}",
+                        month, copied, period.orders(), period.ledgerRows(), file);
+                return period;
+            } finally {
+                detach(conn);
+            }
+        }
+    }
+
+    // Rows already in the file (an earlier interrupted run, or a sealed month receiving late rows) are replaced
+    private static long copy(Connection conn, YearMonth month, Path file, long fromMs, long untilMs) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(REGISTER_PERIOD)) {
+            ps.setString(1, month.toString());
+            ps.setString(2, file.getFileName().toString());
+            ps.setLong(3, fromMs);
+            ps.setLong(4, untilMs);
+            ps.executeUpdate();
+        }
+        long copied = 0;
+        for (Table t : TABLES) {
+            copied += update(conn, "INSERT OR REPLACE INTO " + ARC + t.name() + "(" + t.columns() + ") " +
+                    "SELECT " + t.columns() + " FROM main." + t.name() + " WHERE " + t.hotRows(), fromMs, untilMs);
+        }
+        return copied;
+    }
+
+    private static Period seal(Connection conn, YearMonth month, long fromMs, long untilMs) throws SQLException {
+        for (Table t : TABLES) {
+            long missing = count(conn, "SELECT COUNT(*) FROM main." + t.name() + " h WHERE " + t.hotRows() +
+                    " AND NOT EXISTS (SELECT 1 FROM " + ARC + t.name() + " a WHERE a." + t.key() + " = h." + t.key() + ")",
+                    fromMs, untilMs);
+            if (missing > 0) {
+                throw new IllegalStateException(month + " changed while it was being archived: " + missing + " "
+                        + t.name() + " rows not copied; the next run copies them");
+            }
+        }
+        for (int i = TABLES.size() - 1; i >= 0; i--) {
+            Table t = TABLES.get(i);
+            update(conn, "DELETE FROM main." + t.name() + " WHERE " + t.hotRows(), fromMs, untilMs);
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SEAL_PERIOD)) {
+            ps.setLong(1, System.currentTimeMillis());
+            ps.setString(2, month.toString());
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_PERIOD)) {
+            ps.setString(1, month.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new IllegalStateException("Archive period " + month + " is not registered");
+                return period(rs);
+            }
+        }
+    }
+
+    // Month of the oldest hot order or ledger row, if that is before the cutoff
+    private static YearMonth oldestHotMonth(long cutoffMs) throws SQLException {
+        try (Connection conn = Database.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(OLDEST_HOT);
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return null;
+            long ms = rs.getLong(1);
+            if (rs.wasNull() || ms >= cutoffMs) return null;
+            return YearMonth.from(Timestamps.local(ms));
+        }
+    }
+
+    private static void attach(Connection conn, Path file) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("ATTACH DATABASE ? AS " + ALIAS)) {
+            ps.setString(1, file.toString());
+            ps.execute();
+        }
+    }
+
+    private static Period period(ResultSet rs) throws SQLException {
+        return new Period(YearMonth.parse(rs.getString(1)), Database.dataFile("archive").resolve(rs.getString(2)),
+                rs.getLong(3), rs.getLong(4), rs.getInt(5), rs.getInt(6), rs.getLong(7), rs.getLong(8));
+    }
+
+    private static long startOf(YearMonth month) {
+        return Timestamps.startOfDay(month.atDay(1));
+    }
+
+    private static int update(Connection conn, String sql, long fromMs, long untilMs) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, fromMs);
+            ps.setLong(2, untilMs);
+            return ps.executeUpdate();
+        }
+    }
+
+    private static long count(Connection conn, String sql, long fromMs, long untilMs) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, fromMs);
+            ps.setLong(2, untilMs);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+}
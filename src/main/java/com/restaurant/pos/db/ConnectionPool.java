@@ -0,0 +1,344 @@
+package com.restaurant.pos.db;
+
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded SQLite connection pool with a single writer lane and a small reader lane.
+ * Connections are opened lazily, tuned once with {@link #PRAGMAS} and keep their own
+ * prepared-statement cache for as long as they live. Acquisition waits, commits and every
+ * statement execution are timed into {@link Metrics} histograms.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+    // Applied once per physical connection. journal_mode is persistent, but setting it is idempotent.
+    private static final String[] PRAGMAS = {
+            "PRAGMA journal_mode = WAL",
+            // WAL commits are not fsynced, only checkpoints are. The file stays consistent whatever happens, and a
+            // process crash loses nothing; a power loss or OS crash can lose the commits since the last checkpoint.
+            // FULL would fsync every commit instead. OrderJournal checkpoints before it drops what it has applied.
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA foreign_keys = ON",
+            "PRAGMA busy_timeout = 5000",
+            "PRAGMA cache_size = -16000",
+            "PRAGMA mmap_size = 268435456",
+            "PRAGMA temp_store = MEMORY"
+    };
+
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    public static record PoolStats(String lane, int open, int inUse, long acquisitions, long timeouts,
+                                   long totalWaitNanos, long maxWaitNanos) {
+        public double avgWaitMillis() {
+            return acquisitions == 0 ? 0 : totalWaitNanos / 1_000_000.0 / acquisitions;
+        }
+    }
+
+    private final String jdbcUrl;
+    private final long acquireTimeoutMillis;
+    private final Lane writer;
+    private final Lane readers;
+    private volatile boolean closed;
+
+    public ConnectionPool(String jdbcUrl, int readerCount, long acquireTimeoutMillis) {
+        this.jdbcUrl = jdbcUrl;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.writer = new Lane("writer", 1, false);
+        this.readers = new Lane("reader", Math.max(1, readerCount), true);
+    }
+
+    public Connection acquireWriter() throws SQLException {
+        return writer.acquire();
+    }
+
+    public Connection acquireReader() throws SQLException {
+        return readers.acquire();
+    }
+
+    public List<PoolStats> stats() {
+        return List.of(writer.stats(), readers.stats());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.closeIdle();
+        readers.closeIdle();
+    }
+
+    private Physical open(boolean readOnly) throws SQLException {
+        Connection raw = DriverManager.getConnection(jdbcUrl);
+        try (Statement st = raw.createStatement()) {
+            for (String pragma : PRAGMAS) {
+                st.execute(pragma);
+            }
+            if (readOnly) {
+                st.execute("PRAGMA query_only = ON");
+            }
+        } catch (SQLException e) {
+            raw.close();
+            throw e;
+        }
+        return new Physical(raw);
+    }
+
+    private final class Lane {
+        private final String name;
+        private final int capacity;
+        private final boolean readOnly;
+        private final BlockingQueue<Physical> idle;
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LatencyHistogram waitTimer;
+        private final LatencyHistogram commitTimer;
+
+        Lane(String name, int capacity, boolean readOnly) {
+            this.name = name;
+            this.waitTimer = Metrics.histogram("db.acquire." + name);
+            this.commitTimer = Metrics.histogram("db.commit." + name);
+            this.capacity = capacity;
+            this.readOnly = readOnly;
+            this.idle = new ArrayBlockingQueue<>(capacity);
+        }
+
+        Connection acquire() throws SQLException {
+            if (closed) throw new SQLException("Connection pool is closed");
+            long start = System.nanoTime();
+            Physical p = idle.poll();
+            if (p == null) {
+                p = tryOpen();
+            }
+            if (p == null) {
+                try {
+                    p = idle.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for " + name + " connection", e);
+                }
+                if (p == null) {
+                    timeouts.incrementAndGet();
+                    throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis + "ms waiting for " + name + " connection");
+                }
+            }
+            long waited = System.nanoTime() - start;
+            acquisitions.incrementAndGet();
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            waitTimer.record(waited);
+            inUse.incrementAndGet();
+            return p.lease(this);
+        }
+
+        private Physical tryOpen() throws SQLException {
+            while (true) {
+                int n = open.get();
+                if (n >= capacity) return null;
+                if (open.compareAndSet(n, n + 1)) break;
+            }
+            try {
+                return open(readOnly);
+            } catch (SQLException e) {
+                open.decrementAndGet();
+                throw e;
+            }
+        }
+
+        void release(Physical p) {
+            inUse.decrementAndGet();
+            boolean healthy;
+            try {
+                if (!p.raw.getAutoCommit()) {
+                    // Never hand out a connection with a dangling transaction
+                    p.raw.rollback();
+                    p.raw.setAutoCommit(true);
+                }
+                healthy = !p.raw.isClosed();
+            } catch (SQLException e) {
+                log.warn("Discarding broken {} connection", name, e);
+                healthy = false;
+            }
+            if (healthy && !closed && idle.offer(p)) return;
+            p.destroy();
+            open.decrementAndGet();
+        }
+
+        void closeIdle() {
+            Physical p;
+            while ((p = idle.poll()) != null) {
+                p.destroy();
+                open.decrementAndGet();
+            }
+        }
+
+        PoolStats stats() {
+            return new PoolStats(name, open.get(), inUse.get(), acquisitions.get(), timeouts.get(),
+                    totalWaitNanos.get(), maxWaitNanos.get());
+        }
+    }
+
+    // A physical connection plus its statement cache. Handed out as a proxy whose close() returns it to the lane.
+    private static final class Physical {
+        final Connection raw;
+        final StatementCache statements;
+
+        Physical(Connection raw) {
+            this.raw = raw;
+            this.statements = new StatementCache(STATEMENT_CACHE_SIZE);
+        }
+
+        Connection lease(Lane lane) {
+            Handle handle = new Handle(this, lane);
+            Connection proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handle);
+            handle.self = proxy;
+            return proxy;
+        }
+
+        void destroy() {
+            statements.closeAll();
+            try {
+                raw.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close connection", e);
+            }
+        }
+    }
+
+    private static final class Handle implements InvocationHandler {
+        private final Physical physical;
+        private final Lane lane;
+        private final List<Statement> uncached = new ArrayList<>();
+        private Connection self;
+        private boolean released;
+
+        Handle(Physical physical, Lane lane) {
+            this.physical = physical;
+            this.lane = lane;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        for (Statement st : uncached) {
+                            st.close();
+                        }
+                        physical.statements.releaseAll();
+                        lane.release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || physical.raw.isClosed();
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(physical.raw)) return physical.raw;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + lane.name + "]" + physical.raw;
+                default:
+                    break;
+            }
+            if (released) throw new SQLException("Connection already returned to pool");
+            String name = method.getName();
+            if (name.equals("prepareStatement")) {
+                PreparedStatement cached = physical.statements.checkout(physical.raw, self, args);
+                if (cached != null) return cached;
+            } else if (name.equals("commit")) {
+                // Appends the commit frame to the WAL and releases the lock; under synchronous=NORMAL no fsync
+                long t0 = System.nanoTime();
+                try {
+                    return invokeRaw(physical.raw, method, args);
+                } finally {
+                    lane.commitTimer.recordSince(t0);
+                }
+            }
+            Object result = invokeRaw(physical.raw, method, args);
+            if (result instanceof Statement st) {
+                // Statements bypassing the cache are closed with the lease
+                uncached.add(st);
+                String sql = name.equals("createStatement") ? null : (String) args[0];
+                return Timed.wrap(st, self, sql);
+            }
+            return result;
+        }
+    }
+
+    // Times executions on statements that bypass the cache; plain Statements are keyed by the SQL they execute
+    private static final class Timed implements InvocationHandler {
+        private final Statement target;
+        private final Connection owner;
+        private final LatencyHistogram timer;
+
+        private Timed(Statement target, Connection owner, LatencyHistogram timer) {
+            this.target = target;
+            this.owner = owner;
+            this.timer = timer;
+        }
+
+        static Statement wrap(Statement st, Connection owner, String sql) {
+            Class<?> type = st instanceof CallableStatement ? CallableStatement.class
+                    : st instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                    new Timed(st, owner, sql == null ? null : SqlTimers.forSql(sql)));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (!SqlTimers.isExecute(method.getName())) return invokeRaw(target, method, args);
+            LatencyHistogram h = timer;
+            if (h == null) {
+                h = args != null && args.length > 0 && args[0] instanceof String sql
+                        ? SqlTimers.forSql(sql) : Metrics.histogram("sql batch");
+            }
+            long t0 = System.nanoTime();
+            try {
+                return invokeRaw(target, method, args);
+            } finally {
+                h.recordSince(t0);
+            }
+        }
+    }
+
+    static Object invokeRaw(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -4,15 +4,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 
 public final class Database {
     private static final Logger log = LoggerFactory.getLogger(Database.class);
 
-    private static final String DB_DIR = "data";
+    // -Dpos.data.dir points the application (or a benchmark) at another directory
+    private static final String DB_DIR = System.getProperty("pos.data.dir", "data");
     private static final String DB_PATH = DB_DIR + File.separator + "pos.db";
     private static final String JDBC_URL = "jdbc:sqlite:" + DB_PATH;
+    private static final int READER_CONNECTIONS = 4;
+    private static final long ACQUIRE_TIMEOUT_MS = 10_000;
+
+    private static volatile ConnectionPool pool;
 
     private Database() {}
 
@@ -22,104 +32,55 @@ public final class Database {
             if (!dir.exists() && !dir.mkdirs()) {
                 throw new IllegalStateException("Failed to create data directory: " + DB_DIR);
             }
-            try (Connection conn = getConnection()) {
-                conn.setAutoCommit(false);
-                try (Statement st = conn.createStatement()) {
-                    st.execute("PRAGMA foreign_keys = ON");
-                    // Schema
-                    st.addBatch("CREATE TABLE IF NOT EXISTS menu_item (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "name TEXT NOT NULL UNIQUE, " +
-                            "category TEXT, " +
-                            "price_cents INTEGER NOT NULL, " +
-                            "sku TEXT, " +
-                            "active INTEGER NOT NULL DEFAULT 1" +
-                            ")");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS inventory_batch (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "menu_item_id INTEGER NOT NULL, " +
-                            "quantity INTEGER NOT NULL, " +
-                            "unit_cost_cents INTEGER NOT NULL, " +
-                            "expiry_date TEXT, " +
-                            "created_at TEXT NOT NULL, " +
-                            "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
-                            ")");
-
-                    st.addBatch("CREATE INDEX IF NOT EXISTS idx_inventory_item_expiry ON inventory_batch(menu_item_id, expiry_date)");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS promo (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "menu_item_id INTEGER NOT NULL, " +
-                            "discount_percent REAL NOT NULL, " +
-                            "start_date TEXT NOT NULL, " +
-                            "end_date TEXT NOT NULL, " +
-                            "reason TEXT, " +
-                            "auto_generated INTEGER NOT NULL DEFAULT 0, " +
-                            "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
-                            ")");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS orders (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "created_at TEXT NOT NULL, " +
-                            "subtotal_cents INTEGER NOT NULL, " +
-                            "discount_cents INTEGER NOT NULL, " +
-                            "tax_cents INTEGER NOT NULL, " +
-                            "total_cents INTEGER NOT NULL, " +
-                            "payment_method TEXT NOT NULL, " +
-                            "status TEXT NOT NULL DEFAULT 'PAID'" +
-                            ")");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS order_item (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "order_id INTEGER NOT NULL, " +
-                            "menu_item_id INTEGER NOT NULL, " +
-                            "quantity INTEGER NOT NULL, " +
-                            "unit_price_cents INTEGER NOT NULL, " +
-                            "line_total_cents INTEGER NOT NULL, " +
-                            "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE, " +
-                            "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
-                            ")");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS payment (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "order_id INTEGER NOT NULL, " +
-                            "amount_cents INTEGER NOT NULL, " +
-                            "method TEXT NOT NULL, " +
-                            "created_at TEXT NOT NULL, " +
-                            "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE" +
-                            ")");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS order_receipt (" +
-                            "order_id INTEGER PRIMARY KEY, " +
-                            "content TEXT NOT NULL, " +
-                            "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE" +
-                            ")");
-
-                    st.addBatch("CREATE TABLE IF NOT EXISTS inventory_ledger (" +
-                            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                            "menu_item_id INTEGER NOT NULL, " +
-                            "quantity_change INTEGER NOT NULL, " +
-                            "reason TEXT NOT NULL, " +
-                            "ref_type TEXT, " +
-                            "ref_id INTEGER, " +
-                            "created_at TEXT NOT NULL, " +
-                            "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
-                            ")");
-
-                    st.executeBatch();
-                }
+            pool = new ConnectionPool(JDBC_URL, READER_CONNECTIONS, ACQUIRE_TIMEOUT_MS);
+            // Several processes may open the same file at once; BEGIN IMMEDIATE keeps them from deadlocking here
+            Transactions.write(conn -> {
+                Migrations.migrate(conn);
                 seed(conn);
-                conn.commit();
-            }
+                return null;
+            });
         } catch (Exception e) {
             log.error("DB initialization failed", e);
             throw new RuntimeException(e);
         }
     }
 
+    // Write connection; there is exactly one, so keep the lease short and never nest acquisitions.
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(JDBC_URL);
+        return pool().acquireWriter();
+    }
+
+    // Read-only connection from the reader lane; runs concurrently with the writer under WAL.
+    public static Connection getReadConnection() throws SQLException {
+        return pool().acquireReader();
+    }
+
+    // Other files the application keeps next to the database
+    public static Path dataFile(String name) {
+        return Path.of(DB_DIR, name);
+    }
+
+    public static List<ConnectionPool.PoolStats> poolStats() {
+        ConnectionPool p = pool;
+        return p == null ? List.of() : p.stats();
+    }
+
+    public static void shutdown() {
+        ConnectionPool p = pool;
+        if (p == null) return;
+        for (ConnectionPool.PoolStats s : p.stats()) {
+            log.info("Pool {}: {} acquisitions, avg wait {} ms, max wait {} ms, {} timeouts",
+                    s.lane(), s.acquisitions(), String.format("%.3f", s.avgWaitMillis()),
+                    s.maxWaitNanos() / 1_000_000, s.timeouts());
+        }
+        pool = null;
+        p.close();
+    }
+
+    private static ConnectionPool pool() throws SQLException {
+        ConnectionPool p = pool;
+        if (p == null) throw new SQLException("Database not initialized");
+        return p;
     }
 
     private static void seed(Connection conn) throws SQLException {
@@ -134,13 +95,17 @@ public final class Database {
                     insertMenu(ins, "Fries", "Food", 299, "FRIE001");
                     insertMenu(ins, "Cola", "Beverage", 199, "COLA001");
                 }
-                // Add some inventory batches
+                // Add some inventory batches, each with its delivery in the ledger as addStockBatch writes it
                 try (PreparedStatement inv = conn.prepareStatement(
                         "INSERT INTO inventory_batch(menu_item_id, quantity, unit_cost_cents, expiry_date, created_at) " +
-                                "VALUES (?,?,?,?,?)")) {
-                    addBatch(inv, 1, 50, 450, LocalDate.now().plusDays(7));
-                    addBatch(inv, 2, 100, 100, LocalDate.now().plusDays(5));
-                    addBatch(inv, 3, 80, 80, LocalDate.now().plusDays(90));
+                                "VALUES (?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS);
+                     PreparedStatement led = conn.prepareStatement(
+                             "INSERT INTO inventory_ledger(menu_item_id, quantity_change, reason, ref_type, ref_id, created_at, created_ms) " +
+                                     "VALUES (?,?,'delivery','batch',?,?,?)")) {
+                    Instant now = Instant.now();
+                    addBatch(inv, led, now, 1, 50, 450, LocalDate.now().plusDays(7));
+                    addBatch(inv, led, now, 2, 100, 100, LocalDate.now().plusDays(5));
+                    addBatch(inv, led, now, 3, 80, 80, LocalDate.now().plusDays(90));
                 }
             }
         }
@@ -155,13 +120,25 @@ public final class Database {
         ps.executeBatch();
     }
 
-    private static void addBatch(PreparedStatement ps, int menuItemId, int qty, int unitCostCents, LocalDate expiry) throws SQLException {
+    private static void addBatch(PreparedStatement ps, PreparedStatement led, Instant now, int menuItemId, int qty,
+                                 int unitCostCents, LocalDate expiry) throws SQLException {
+        LocalDateTime ts = LocalDateTime.ofInstant(now, ZoneId.systemDefault());
         ps.setInt(1, menuItemId);
         ps.setInt(2, qty);
         ps.setInt(3, unitCostCents);
         ps.setString(4, expiry != null ? expiry.toString() : null);
-        ps.setString(5, LocalDate.now().toString());
-        ps.addBatch();
-        ps.executeBatch();
+        ps.setString(5, ts.toLocalDate().toString());
+        ps.executeUpdate();
+        long batchId;
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if (!keys.next()) throw new SQLException("No batch id generated");
+            batchId = keys.getLong(1);
+        }
+        led.setInt(1, menuItemId);
+        led.setInt(2, qty);
+        led.setLong(3, batchId);
+        led.setString(4, ts.toString());
+        led.setLong(5, now.toEpochMilli());
+        led.executeUpdate();
     }
 }
@@ -0,0 +1,320 @@
+package com.restaurant.pos.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Ordered schema migrations, each applied exactly once and recorded in schema_version. They run inside the
+ * initialization transaction, so a failing step leaves the database at the previous version, and two processes
+ * starting together apply each step once between them. Steps are only ever appended: an applied migration is
+ * never edited, a later one changes what it did.
+ */
+final class Migrations {
+    private static final Logger log = LoggerFactory.getLogger(Migrations.class);
+
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    record Migration(int version, String description, Step step) {}
+
+    static final List<Migration> ALL = List.of(
+            // Everything up to the introduction of schema_version; idempotent, so older databases pass through it
+            new Migration(1, "baseline schema", Migrations::baseline),
+            new Migration(2, "epoch-millis timestamps", Migrations::epochMillis),
+            new Migration(3, "foreign key and time indexes", Migrations::indexes),
+            new Migration(4, "archive period registry", Migrations::archivePeriods),
+            new Migration(5, "stock snapshots", Migrations::stockSnapshots));
+
+    private Migrations() {}
+
+    // Brings the schema up to the latest version; returns the number of steps applied
+    static int migrate(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "description TEXT NOT NULL, " +
+                    "applied_ms INTEGER NOT NULL" +
+                    ")");
+        }
+        int current = currentVersion(conn);
+        int applied = 0;
+        for (Migration m : ALL) {
+            if (m.version() <= current) continue;
+            long t0 = System.nanoTime();
+            m.step().apply(conn);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO schema_version(version, description, applied_ms) VALUES (?,?,?)")) {
+                ps.setInt(1, m.version());
+                ps.setString(2, m.description());
+                ps.setLong(3, System.currentTimeMillis());
+                ps.executeUpdate();
+            }
+            log.info("Applied migration {} ({}) in {} ms", m.version(), m.description(), (System.nanoTime() - t0) / 1_000_000);
+            applied++;
+        }
+        return applied;
+    }
+
+    static int currentVersion(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM schema_version");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void baseline(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            // Schema
+            st.addBatch("CREATE TABLE IF NOT EXISTS menu_item (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "name TEXT NOT NULL UNIQUE, " +
+                    "category TEXT, " +
+                    "price_cents INTEGER NOT NULL, " +
+                    "sku TEXT, " +
+                    "active INTEGER NOT NULL DEFAULT 1" +
+                    ")");
+
+            // Bumped by triggers on every menu_item change; the in-memory catalog compares against it
+            st.addBatch("CREATE TABLE IF NOT EXISTS menu_version (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                    "version INTEGER NOT NULL" +
+                    ")");
+            st.addBatch("INSERT OR IGNORE INTO menu_version(id, version) VALUES (1, 0)");
+            for (String event : new String[]{"INSERT", "UPDATE", "DELETE"}) {
+                st.addBatch("CREATE TRIGGER IF NOT EXISTS trg_menu_item_" + event.toLowerCase() +
+                        " AFTER " + event + " ON menu_item BEGIN " +
+                        "UPDATE menu_version SET version = version + 1 WHERE id = 1; END");
+            }
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS inventory_batch (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "quantity INTEGER NOT NULL, " +
+                    "unit_cost_cents INTEGER NOT NULL, " +
+                    "expiry_date TEXT, " +
+                    "created_at TEXT NOT NULL, " +
+                    "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
+                    ")");
+
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_inventory_item_expiry ON inventory_batch(menu_item_id, expiry_date)");
+            // FIFO lookups only ever want stock on hand
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_inventory_live ON inventory_batch(menu_item_id, expiry_date, id) WHERE quantity > 0");
+            // Expiry scans across all items (promo generation)
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_inventory_live_expiry ON inventory_batch(expiry_date) WHERE quantity > 0");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS inventory_batch_archive (" +
+                    "id INTEGER PRIMARY KEY, " +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "unit_cost_cents INTEGER NOT NULL, " +
+                    "expiry_date TEXT, " +
+                    "created_at TEXT NOT NULL, " +
+                    "depleted_at TEXT NOT NULL, " +
+                    "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
+                    ")");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS promo (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "discount_percent REAL NOT NULL, " +
+                    "start_date TEXT NOT NULL, " +
+                    "end_date TEXT NOT NULL, " +
+                    "reason TEXT, " +
+                    "auto_generated INTEGER NOT NULL DEFAULT 0, " +
+                    "retired INTEGER NOT NULL DEFAULT 0, " +
+                    "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
+                    ")");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS orders (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "created_at TEXT NOT NULL, " +
+                    "subtotal_cents INTEGER NOT NULL, " +
+                    "discount_cents INTEGER NOT NULL, " +
+                    "tax_cents INTEGER NOT NULL, " +
+                    "total_cents INTEGER NOT NULL, " +
+                    "payment_method TEXT NOT NULL, " +
+                    "status TEXT NOT NULL DEFAULT 'PAID'" +
+                    ")");
+
+            // Order history pages walk created_at newest-first; totals filter on their own index
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_orders_created_at ON orders(created_at)");
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_orders_total ON orders(total_cents)");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS order_item (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "order_id INTEGER NOT NULL, " +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "quantity INTEGER NOT NULL, " +
+                    "unit_price_cents INTEGER NOT NULL, " +
+                    "line_total_cents INTEGER NOT NULL, " +
+                    "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE, " +
+                    "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
+                    ")");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS payment (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "order_id INTEGER NOT NULL, " +
+                    "amount_cents INTEGER NOT NULL, " +
+                    "method TEXT NOT NULL, " +
+                    "created_at TEXT NOT NULL, " +
+                    "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE" +
+                    ")");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS order_receipt (" +
+                    "order_id INTEGER PRIMARY KEY, " +
+                    "content TEXT NOT NULL, " +
+                    "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE" +
+                    ")");
+
+            // Receipts written since the structured format; order_receipt keeps older TEXT receipts
+            st.addBatch("CREATE TABLE IF NOT EXISTS order_receipt_data (" +
+                    "order_id INTEGER PRIMARY KEY, " +
+                    "data BLOB NOT NULL, " +
+                    "FOREIGN KEY(order_id) REFERENCES orders(id) ON DELETE CASCADE" +
+                    ")");
+
+            st.addBatch("CREATE TABLE IF NOT EXISTS inventory_ledger (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "quantity_change INTEGER NOT NULL, " +
+                    "reason TEXT NOT NULL, " +
+                    "ref_type TEXT, " +
+                    "ref_id INTEGER, " +
+                    "created_at TEXT NOT NULL, " +
+                    "FOREIGN KEY(menu_item_id) REFERENCES menu_item(id) ON DELETE CASCADE" +
+                    ")");
+
+            // Per-item daily totals maintained by checkout; analytics read this instead of orders
+            st.addBatch("CREATE TABLE IF NOT EXISTS sales_daily (" +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "day TEXT NOT NULL, " +
+                    "qty INTEGER NOT NULL, " +
+                    "revenue_cents INTEGER NOT NULL, " +
+                    "PRIMARY KEY(menu_item_id, day)" +
+                    ") WITHOUT ROWID");
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_sales_daily_day ON sales_daily(day, menu_item_id)");
+
+            // One row per background job run (or skipped occurrence)
+            st.addBatch("CREATE TABLE IF NOT EXISTS job_run (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "job_name TEXT NOT NULL, " +
+                    "started_at TEXT NOT NULL, " +
+                    "finished_at TEXT, " +
+                    "status TEXT NOT NULL, " +
+                    "detail TEXT" +
+                    ")");
+            st.addBatch("CREATE INDEX IF NOT EXISTS idx_job_run_job ON job_run(job_name, started_at)");
+
+            st.executeBatch();
+            // Retire batches emptied before the archive existed
+            st.executeUpdate("INSERT OR IGNORE INTO inventory_batch_archive(id, menu_item_id, unit_cost_cents, expiry_date, created_at, depleted_at) " +
+                    "SELECT id, menu_item_id, unit_cost_cents, expiry_date, created_at, created_at FROM inventory_batch WHERE quantity = 0");
+            st.executeUpdate("DELETE FROM inventory_batch WHERE quantity = 0");
+
+            // At most one live auto-generated promo per item; promo generation upserts against this
+            addColumnIfMissing(conn, "promo", "retired", "INTEGER NOT NULL DEFAULT 0");
+            st.executeUpdate("UPDATE promo SET retired = 1 WHERE auto_generated = 1 AND retired = 0 AND id NOT IN " +
+                    "(SELECT MAX(id) FROM promo WHERE auto_generated = 1 AND retired = 0 GROUP BY menu_item_id)");
+            st.execute("CREATE UNIQUE INDEX IF NOT EXISTS ux_promo_auto_live ON promo(menu_item_id) WHERE auto_generated = 1 AND retired = 0");
+
+            // Bumped on every promo change so the in-memory pricing index knows when to reload
+            st.execute("CREATE TABLE IF NOT EXISTS promo_version (" +
+                    "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                    "version INTEGER NOT NULL" +
+                    ")");
+            st.execute("INSERT OR IGNORE INTO promo_version(id, version) VALUES (1, 0)");
+            for (String event : new String[]{"INSERT", "UPDATE", "DELETE"}) {
+                st.execute("CREATE TRIGGER IF NOT EXISTS trg_promo_" + event.toLowerCase() +
+                        " AFTER " + event + " ON promo BEGIN " +
+                        "UPDATE promo_version SET version = version + 1 WHERE id = 1; END");
+            }
+        }
+    }
+
+    /*
+     * created_at stays as the human-readable local time; created_ms is the same instant as epoch millis, which is
+     * what range filters and ordering use. The 'utc' modifier reads the stored text as local time, matching how the
+     * application wrote it. Whole seconds plus the first three fraction digits truncate exactly like
+     * Instant.toEpochMilli(); julianday() arithmetic would be off by one on some rows.
+     */
+    private static void epochMillis(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String table : new String[]{"orders", "payment", "inventory_ledger"}) {
+                addColumnIfMissing(conn, table, "created_ms", "INTEGER");
+                st.executeUpdate("UPDATE " + table + " SET created_ms = " +
+                        "CAST(strftime('%s', created_at, 'utc') AS INTEGER) * 1000 + CAST(substr(created_at, 21, 3) AS INTEGER) " +
+                        "WHERE created_ms IS NULL");
+            }
+        }
+    }
+
+    private static void indexes(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            // Order history pages walk created_ms newest-first; the rowid in every index entry breaks ties by id
+            st.execute("CREATE INDEX IF NOT EXISTS idx_orders_created_ms ON orders(created_ms)");
+            st.execute("DROP INDEX IF EXISTS idx_orders_created_at");
+            // Child rows looked up (and cascaded) by order
+            st.execute("CREATE INDEX IF NOT EXISTS idx_order_item_order ON order_item(order_id)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_payment_order ON payment(order_id)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_promo_item ON promo(menu_item_id, start_date)");
+            // Stock movements per item over time
+            st.execute("CREATE INDEX IF NOT EXISTS idx_ledger_item_time ON inventory_ledger(menu_item_id, created_ms)");
+            st.execute("ANALYZE");
+        }
+    }
+
+    // One row per closed month moved to its own file; see Archives
+    private static void archivePeriods(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS archive_period (" +
+                    "period TEXT PRIMARY KEY, " +
+                    "file TEXT NOT NULL, " +
+                    "from_ms INTEGER NOT NULL, " +
+                    "until_ms INTEGER NOT NULL, " +
+                    "first_order_id INTEGER, " +
+                    "last_order_id INTEGER, " +
+                    "orders INTEGER NOT NULL DEFAULT 0, " +
+                    "ledger_rows INTEGER NOT NULL DEFAULT 0, " +
+                    "status TEXT NOT NULL, " +
+                    "sealed_ms INTEGER" +
+                    ")");
+            // Archiving finds and moves whole months of ledger rows at a time
+            st.execute("CREATE INDEX IF NOT EXISTS idx_ledger_created_ms ON inventory_ledger(created_ms)");
+        }
+    }
+
+    // Per-item stock checkpoints; see StockHistoryService
+    private static void stockSnapshots(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS stock_snapshot (" +
+                    "taken_ms INTEGER NOT NULL, " +
+                    "menu_item_id INTEGER NOT NULL, " +
+                    "on_hand INTEGER NOT NULL, " +
+                    "expected INTEGER NOT NULL, " +
+                    "ledger_id INTEGER NOT NULL, " +
+                    "PRIMARY KEY (taken_ms, menu_item_id)" +
+                    ") WITHOUT ROWID");
+        }
+    }
+
+    private static void addColumnIfMissing(Connection conn, String table, String column, String definition) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM pragma_table_info(?) WHERE name = ?")) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return;
+            }
+        }
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+}
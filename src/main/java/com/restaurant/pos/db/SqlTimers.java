@@ -0,0 +1,64 @@
+package com.restaurant.pos.db;
+
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps SQL text to a per-statement latency histogram keyed by its normalized form ("sql SELECT ... WHERE id = ?").
+final class SqlTimers {
+    private static final int MAX_KEY_LENGTH = 160;
+    // Same SQL text comes back constantly; only the first sighting pays for normalization
+    private static final int MAX_CACHED = 4096;
+    private static final Map<String, LatencyHistogram> bySql = new ConcurrentHashMap<>();
+
+    private SqlTimers() {}
+
+    static LatencyHistogram forSql(String sql) {
+        LatencyHistogram h = bySql.get(sql);
+        if (h != null) return h;
+        h = Metrics.histogram("sql " + normalize(sql));
+        if (bySql.size() < MAX_CACHED) bySql.put(sql, h);
+        return h;
+    }
+
+    static boolean isExecute(String methodName) {
+        return methodName.startsWith("execute");
+    }
+
+    // Collapses whitespace and replaces string and numeric literals with ?, so ad-hoc SQL groups by shape
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(Math.min(sql.length(), MAX_KEY_LENGTH));
+        boolean space = false;
+        int n = sql.length();
+        for (int i = 0; i < n && sb.length() < MAX_KEY_LENGTH; i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space) {
+                sb.append(' ');
+                space = false;
+            }
+            if (c == '\'') {
+                i++;
+                while (i < n && !(sql.charAt(i) == '\'' && (i + 1 >= n || sql.charAt(i + 1) != '\''))) {
+                    i += sql.charAt(i) == '\'' ? 2 : 1;
+                }
+                sb.append('?');
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) i++;
+                sb.append('?');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,161 @@
+package com.restaurant.pos.db;
+
+import com.restaurant.pos.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Per-connection LRU of prepared statements. Only touched by the thread holding the connection lease.
+final class StatementCache {
+    private static final Logger log = LoggerFactory.getLogger(StatementCache.class);
+
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    StatementCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns a cached statement for the given prepareStatement arguments, or null when the call
+     * cannot be served from the cache (unsupported overload, or the statement is already in use).
+     */
+    PreparedStatement checkout(Connection raw, Connection owner, Object[] args) throws SQLException {
+        String key = keyOf(args);
+        if (key == null) return null;
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry(prepare(raw, args), SqlTimers.forSql((String) args[0]));
+            entries.put(key, e);
+            evictOverflow();
+        } else if (e.inUse) {
+            return null;
+        }
+        e.inUse = true;
+        return e.lease(owner);
+    }
+
+    // Called when a lease ends, so statements a caller forgot to close become reusable again
+    void releaseAll() throws SQLException {
+        for (Entry e : entries.values()) {
+            if (e.inUse) {
+                e.statement.clearParameters();
+                e.inUse = false;
+            }
+        }
+    }
+
+    void closeAll() {
+        for (Entry e : entries.values()) {
+            e.closeQuietly();
+        }
+        entries.clear();
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            Entry e = it.next();
+            if (!e.inUse) {
+                e.closeQuietly();
+                it.remove();
+            }
+        }
+    }
+
+    private static String keyOf(Object[] args) {
+        String sql = (String) args[0];
+        return switch (args.length) {
+            case 1 -> sql;
+            case 2 -> args[1] instanceof Integer keys ? keys + "|" + sql : null;
+            case 3 -> args[1] + "|" + args[2] + "|" + sql;
+            default -> null;
+        };
+    }
+
+    private static PreparedStatement prepare(Connection raw, Object[] args) throws SQLException {
+        String sql = (String) args[0];
+        return switch (args.length) {
+            case 1 -> raw.prepareStatement(sql);
+            case 2 -> raw.prepareStatement(sql, (Integer) args[1]);
+            default -> raw.prepareStatement(sql, (Integer) args[1], (Integer) args[2]);
+        };
+    }
+
+    private static final class Entry {
+        final PreparedStatement statement;
+        final LatencyHistogram timer;
+        boolean inUse;
+
+        Entry(PreparedStatement statement, LatencyHistogram timer) {
+            this.statement = statement;
+            this.timer = timer;
+        }
+
+        PreparedStatement lease(Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    new Lease(this, owner));
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException ex) {
+                log.debug("Failed to close cached statement", ex);
+            }
+        }
+    }
+
+    // close() hands the statement back to the cache instead of finalizing it
+    private static final class Lease implements InvocationHandler {
+        private final Entry entry;
+        private final Connection owner;
+        private boolean closed;
+
+        Lease(Entry entry, Connection owner) {
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        entry.statement.clearParameters();
+                        entry.statement.clearBatch();
+                        entry.inUse = false;
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || entry.statement.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (closed) throw new SQLException("Statement already closed");
+            if (!SqlTimers.isExecute(method.getName())) return ConnectionPool.invokeRaw(entry.statement, method, args);
+            long t0 = System.nanoTime();
+            try {
+                return ConnectionPool.invokeRaw(entry.statement, method, args);
+            } finally {
+                entry.timer.recordSince(t0);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.restaurant.pos.db;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Conversions for the *_ms columns: epoch millis of a local date-time in the system time zone
+public final class Timestamps {
+    private Timestamps() {}
+
+    public static long millis(LocalDateTime local) {
+        return local.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static long startOfDay(LocalDate day) {
+        return day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime local(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,186 @@
+package com.restaurant.pos.db;
+
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write transactions on the pooled writer connection. Each attempt starts with BEGIN IMMEDIATE, so the write lock
+ * is taken before the first read instead of being upgraded from a read lock halfway through, which is where two
+ * writers on the same database file (the app, a server, a generator) deadlock into SQLITE_BUSY. A busy or locked
+ * failure before the commit has gone through rolls back and reruns the whole unit of work after a jittered
+ * exponential backoff, until the policy's deadline; any other failure propagates at once.
+ *
+ * <p>Units of work must therefore be safe to rerun from scratch and keep their side effects inside the
+ * transaction. Anything that must happen exactly once after the commit goes in an {@link AfterCommit}, which runs
+ * on the same connection and is never retried.
+ */
+public final class Transactions {
+    private static final Logger log = LoggerFactory.getLogger(Transactions.class);
+
+    private static final LatencyHistogram BACKOFF = Metrics.histogram("db.busy_backoff");
+    private static final LongAdder COMMITTED = new LongAdder();
+    private static final LongAdder RETRIES = new LongAdder();
+    private static final LongAdder EXHAUSTED = new LongAdder();
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface AfterCommit<T> {
+        void accept(T result, Connection conn) throws SQLException;
+    }
+
+    // Backoff before attempt n is uniform in [0, min(maxBackoff, initialBackoff * 2^n)) ("full jitter")
+    public static record RetryPolicy(Duration deadline, Duration initialBackoff, Duration maxBackoff) {
+        public static final RetryPolicy DEFAULT =
+                new RetryPolicy(Duration.ofSeconds(15), Duration.ofMillis(5), Duration.ofMillis(500));
+    }
+
+    public static record Stats(long committed, long retries, long exhausted) {}
+
+    private Transactions() {}
+
+    public static <T> T write(Work<T> work) throws SQLException {
+        return write(RetryPolicy.DEFAULT, work, null);
+    }
+
+    public static <T> T write(Work<T> work, AfterCommit<T> afterCommit) throws SQLException {
+        return write(RetryPolicy.DEFAULT, work, afterCommit);
+    }
+
+    public static <T> T write(RetryPolicy policy, Work<T> work, AfterCommit<T> afterCommit) throws SQLException {
+        return run(null, policy, work, afterCommit);
+    }
+
+    /**
+     * Runs on a writer lease the caller already holds, for work that needs the connection prepared outside any
+     * transaction first (ATTACH, for one). Retries reuse the same lease; closing it stays with the caller.
+     */
+    public static <T> T write(Connection conn, Work<T> work) throws SQLException {
+        return run(conn, RetryPolicy.DEFAULT, work, null);
+    }
+
+    private static <T> T run(Connection held, RetryPolicy policy, Work<T> work, AfterCommit<T> afterCommit)
+            throws SQLException {
+        long deadline = System.nanoTime() + policy.deadline().toNanos();
+        for (int attempt = 0; ; attempt++) {
+            Connection conn = held != null ? held : Database.getConnection();
+            try {
+                T result;
+                try {
+                    beginImmediate(conn);
+                    result = work.run(conn);
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    abandon(conn);
+                    if (!isBusy(e)) throw e;
+                    long pause = backoffNanos(policy, attempt);
+                    if (System.nanoTime() + pause > deadline) {
+                        EXHAUSTED.increment();
+                        log.warn("Write transaction still busy after {} attempts, giving up", attempt + 1);
+                        throw e;
+                    }
+                    RETRIES.increment();
+                    log.debug("Write transaction busy (attempt {}), retrying in {} us", attempt + 1, pause / 1_000);
+                    sleep(pause);
+                    continue;
+                }
+                COMMITTED.increment();
+                // Committed: from here on nothing may be retried
+                if (afterCommit != null) afterCommit.accept(result, conn);
+                conn.setAutoCommit(true);
+                return result;
+            } finally {
+                if (held == null) conn.close();
+            }
+        }
+    }
+
+    /**
+     * True when the failure, or anything in its cause chain, is SQLITE_BUSY or SQLITE_LOCKED in any of their
+     * extended forms (BUSY_SNAPSHOT, BUSY_RECOVERY, LOCKED_SHAREDCACHE, ...).
+     */
+    public static boolean isBusy(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof SQLiteException e) {
+                SQLiteErrorCode code = e.getResultCode();
+                int primary = (code == null ? e.getErrorCode() : code.code) & 0xff;
+                if (primary == SQLiteErrorCode.SQLITE_BUSY.code || primary == SQLiteErrorCode.SQLITE_LOCKED.code) {
+                    return true;
+                }
+            }
+            String msg = t.getMessage();
+            if (t instanceof SQLException && msg != null
+                    && (msg.contains("SQLITE_BUSY") || msg.contains("SQLITE_LOCKED") || msg.contains("database is locked"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static Stats stats() {
+        return new Stats(COMMITTED.sum(), RETRIES.sum(), EXHAUSTED.sum());
+    }
+
+    /*
+     * The driver begins a transaction as soon as auto-commit is switched off, and begins the next one right after
+     * every commit or rollback, using the connection's transaction mode. IMMEDIATE is therefore set only around the
+     * opening BEGIN: the follow-up transactions stay DEFERRED and never take (or wait for) the write lock while the
+     * connection is idle.
+     */
+    private static void beginImmediate(Connection conn) throws SQLException {
+        SQLiteConnection sqlite = conn.unwrap(SQLiteConnection.class);
+        sqlite.getConnectionConfig().setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        try {
+            conn.setAutoCommit(false);
+        } finally {
+            sqlite.getConnectionConfig().setTransactionMode(SQLiteConfig.TransactionMode.DEFERRED);
+        }
+    }
+
+    // Leaves the connection in auto-commit mode with nothing open, even if BEGIN itself failed
+    private static void abandon(Connection conn) {
+        try {
+            if (!conn.getAutoCommit()) conn.rollback();
+        } catch (SQLException e) {
+            // BEGIN failed, so there is nothing to roll back
+        }
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            // The flag is already reset; only the driver's no-op COMMIT complained
+        }
+    }
+
+    static long backoffNanos(RetryPolicy policy, int attempt) {
+        long cap = policy.maxBackoff().toNanos();
+        long ceiling = Math.min(cap, policy.initialBackoff().toNanos() << Math.min(attempt, 30));
+        return ThreadLocalRandom.current().nextLong(Math.max(1, ceiling));
+    }
+
+    private static void sleep(long nanos) throws SQLException {
+        long t0 = System.nanoTime();
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while backing off a busy write transaction", e);
+        } finally {
+            BACKOFF.recordSince(t0);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.restaurant.pos.http;
+
+import com.restaurant.pos.service.ForecastService;
+import com.restaurant.pos.service.InventoryService;
+import com.restaurant.pos.service.MenuService;
+import com.restaurant.pos.service.OrderHistoryService;
+import com.restaurant.pos.service.OrderService;
+import com.restaurant.pos.service.PromoPricing;
+import com.restaurant.pos.service.PromoService;
+import com.restaurant.pos.service.SalesFacts;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Wire format shared by PosServer and RemoteServices; field names follow the service records
+final class ApiCodec {
+    private ApiCodec() {}
+
+    // ---- menu ----
+
+    static void write(Json.Writer w, MenuService.MenuItem mi) {
+        w.beginObject()
+                .name("id").value(mi.id())
+                .name("name").value(mi.name())
+                .name("category").value(mi.category())
+                .name("priceCents").value(mi.priceCents())
+                .name("sku").value(mi.sku())
+                .name("active").value(mi.active())
+                .endObject();
+    }
+
+    static MenuService.MenuItem menuItem(Object json) {
+        Map<String, Object> m = Json.object(json);
+        return new MenuService.MenuItem(intField(m, "id"), string(m, "name"), string(m, "category"),
+                intField(m, "priceCents"), string(m, "sku"), bool(m, "active"));
+    }
+
+    static String menu(List<MenuService.MenuItem> items) {
+        Json.Writer w = new Json.Writer().beginArray();
+        for (MenuService.MenuItem mi : items) write(w, mi);
+        return w.endArray().toString();
+    }
+
+    static List<MenuService.MenuItem> menuItems(Object json) {
+        List<MenuService.MenuItem> items = new ArrayList<>();
+        for (Object o : Json.array(json)) items.add(menuItem(o));
+        return items;
+    }
+
+    // ---- carts and orders ----
+
+    static String cart(List<OrderService.CartLine> cart, String paymentMethod) {
+        Json.Writer w = new Json.Writer().beginObject();
+        if (paymentMethod != null) w.name("paymentMethod").value(paymentMethod);
+        w.name("lines").beginArray();
+        for (OrderService.CartLine line : cart) {
+            w.beginObject()
+                    .name("menuItemId").value(line.menuItemId())
+                    .name("quantity").value(line.quantity())
+                    .endObject();
+        }
+        return w.endArray().endObject().toString();
+    }
+
+    // Names and prices come from the server's catalog, never from the request
+    static List<OrderService.CartLine> cartLines(Map<String, Object> body, MenuLookup menu) {
+        List<OrderService.CartLine> cart = new ArrayList<>();
+        for (Object o : Json.array(body.get("lines"))) {
+            Map<String, Object> m = Json.object(o);
+            int id = intField(m, "menuItemId");
+            int qty = intField(m, "quantity");
+            if (qty <= 0) throw new IllegalArgumentException("Quantity must be positive for menu item " + id);
+            MenuService.MenuItem mi = menu.byId(id);
+            if (mi == null || !mi.active()) throw new IllegalArgumentException("Unknown menu item " + id);
+            cart.add(new OrderService.CartLine(mi.id(), mi.name(), qty, mi.priceCents()));
+        }
+        if (cart.isEmpty()) throw new IllegalArgumentException("Cart is empty");
+        return cart;
+    }
+
+    interface MenuLookup {
+        MenuService.MenuItem byId(int id);
+    }
+
+    static String quote(PromoPricing.Quote q) {
+        return new Json.Writer().beginObject()
+                .name("subtotalCents").value(q.subtotalCents())
+                .name("discountCents").value(q.discountCents())
+                .name("taxCents").value(q.taxCents())
+                .name("totalCents").value(q.totalCents())
+                .endObject().toString();
+    }
+
+    static String orderResult(OrderService.OrderResult r) {
+        return new Json.Writer().beginObject()
+                .name("orderId").value(r.orderId)
+                .name("subtotalCents").value(r.subtotalCents)
+                .name("discountCents").value(r.discountCents)
+                .name("taxCents").value(r.taxCents)
+                .name("totalCents").value(r.totalCents)
+                .name("receipt").value(r.receipt)
+                .endObject().toString();
+    }
+
+    static OrderService.OrderResult orderResult(Object json) {
+        Map<String, Object> m = Json.object(json);
+        return new OrderService.OrderResult(intField(m, "orderId"), intField(m, "subtotalCents"),
+                intField(m, "discountCents"), intField(m, "taxCents"), intField(m, "totalCents"), string(m, "receipt"));
+    }
+
+    static String page(OrderHistoryService.Page page) {
+        Json.Writer w = new Json.Writer().beginObject().name("rows").beginArray();
+        for (OrderHistoryService.OrderSummary s : page.rows()) {
+            w.beginObject()
+                    .name("id").value(s.id())
+                    .name("createdAt").value(s.createdAt())
+                    .name("totalCents").value(s.totalCents())
+                    .endObject();
+        }
+        w.endArray().name("next");
+        if (page.next() == null) {
+            w.nullValue();
+        } else {
+            w.beginObject()
+                    .name("createdMs").value(page.next().createdMs())
+                    .name("id").value(page.next().id())
+                    .endObject();
+        }
+        return w.endObject().toString();
+    }
+
+    static OrderHistoryService.Page page(Object json) {
+        Map<String, Object> m = Json.object(json);
+        List<OrderHistoryService.OrderSummary> rows = new ArrayList<>();
+        for (Object o : Json.array(m.get("rows"))) {
+            Map<String, Object> r = Json.object(o);
+            rows.add(new OrderHistoryService.OrderSummary(intField(r, "id"), string(r, "createdAt"),
+                    intField(r, "totalCents")));
+        }
+        OrderHistoryService.Cursor next = null;
+        if (m.get("next") != null) {
+            Map<String, Object> c = Json.object(m.get("next"));
+            next = new OrderHistoryService.Cursor(longField(c, "createdMs"), intField(c, "id"));
+        }
+        return new OrderHistoryService.Page(List.copyOf(rows), next);
+    }
+
+    // ---- stock ----
+
+    static String stockLevels(List<InventoryService.StockLevel> levels) {
+        Json.Writer w = new Json.Writer().beginArray();
+        for (InventoryService.StockLevel s : levels) {
+            w.beginObject()
+                    .name("menuItemId").value(s.menuItemId())
+                    .name("name").value(s.name())
+                    .name("totalQuantity").value(s.totalQuantity())
+                    .endObject();
+        }
+        return w.endArray().toString();
+    }
+
+    static List<InventoryService.StockLevel> stockLevels(Object json) {
+        List<InventoryService.StockLevel> levels = new ArrayList<>();
+        for (Object o : Json.array(json)) {
+            Map<String, Object> m = Json.object(o);
+            levels.add(new InventoryService.StockLevel(intField(m, "menuItemId"), string(m, "name"),
+                    intField(m, "totalQuantity")));
+        }
+        return levels;
+    }
+
+    static String stockBatch(int menuItemId, int quantity, int unitCostCents, LocalDate expiryDate) {
+        return new Json.Writer().beginObject()
+                .name("menuItemId").value(menuItemId)
+                .name("quantity").value(quantity)
+                .name("unitCostCents").value(unitCostCents)
+                .name("expiryDate").value(expiryDate == null ? null : expiryDate.toString())
+                .endObject().toString();
+    }
+
+    // ---- promos ----
+
+    static void write(Json.Writer w, PromoService.Promo p) {
+        w.beginObject()
+                .name("id").value(p.id())
+                .name("menuItemId").value(p.menuItemId())
+                .name("discountPercent").value(p.discountPercent())
+                .name("startDate").value(p.startDate().toString())
+                .name("endDate").value(p.endDate().toString())
+                .name("reason").value(p.reason())
+                .name("autoGenerated").value(p.autoGenerated())
+                .endObject();
+    }
+
+    static String promos(List<PromoService.Promo> promos) {
+        Json.Writer w = new Json.Writer().beginArray();
+        for (PromoService.Promo p : promos) write(w, p);
+        return w.endArray().toString();
+    }
+
+    static List<PromoService.Promo> promos(Object json) {
+        List<PromoService.Promo> promos = new ArrayList<>();
+        for (Object o : Json.array(json)) {
+            Map<String, Object> m = Json.object(o);
+            promos.add(new PromoService.Promo(intField(m, "id"), intField(m, "menuItemId"),
+                    number(m, "discountPercent").doubleValue(), LocalDate.parse(string(m, "startDate")),
+                    LocalDate.parse(string(m, "endDate")), string(m, "reason"), bool(m, "autoGenerated")));
+        }
+        return promos;
+    }
+
+    static String pricing(PromoPricing.Snapshot s) {
+        Json.Writer w = new Json.Writer().beginObject()
+                .name("version").value(s.version())
+                .name("promos").beginArray();
+        for (PromoService.Promo p : s.promos()) write(w, p);
+        return w.endArray().endObject().toString();
+    }
+
+    static PromoPricing.Snapshot pricing(Object json) {
+        Map<String, Object> m = Json.object(json);
+        return PromoPricing.Snapshot.of(longField(m, "version"), promos(m.get("promos")));
+    }
+
+    static String promoRunReport(PromoService.PromoRunReport r) {
+        return new Json.Writer().beginObject()
+                .name("created").value(r.created())
+                .name("updated").value(r.updated())
+                .name("retired").value(r.retired())
+                .endObject().toString();
+    }
+
+    static PromoService.PromoRunReport promoRunReport(Object json) {
+        Map<String, Object> m = Json.object(json);
+        return new PromoService.PromoRunReport(intField(m, "created"), intField(m, "updated"), intField(m, "retired"));
+    }
+
+    // ---- forecast ----
+
+    static String forecasts(List<ForecastService.Forecast> forecasts) {
+        Json.Writer w = new Json.Writer().beginArray();
+        for (ForecastService.Forecast f : forecasts) {
+            w.beginObject()
+                    .name("menuItemId").value(f.menuItemId())
+                    .name("name").value(f.name())
+                    .name("forecastQty").value(f.forecastQty())
+                    .endObject();
+        }
+        return w.endArray().toString();
+    }
+
+    static List<ForecastService.Forecast> forecasts(Object json) {
+        List<ForecastService.Forecast> forecasts = new ArrayList<>();
+        for (Object o : Json.array(json)) {
+            Map<String, Object> m = Json.object(o);
+            forecasts.add(new ForecastService.Forecast(intField(m, "menuItemId"), string(m, "name"),
+                    intField(m, "forecastQty")));
+        }
+        return forecasts;
+    }
+
+    // ---- sales ----
+
+    static String hourlySales(SalesFacts.HourlySales h) {
+        Json.Writer w = new Json.Writer().beginObject()
+                .name("from").value(h.from().toString())
+                .name("to").value(h.to().toString());
+        longs(w.name("qty"), h.qty());
+        longs(w.name("revenueCents"), h.revenueCents());
+        longs(w.name("discountCents"), h.discountCents());
+        return w.endObject().toString();
+    }
+
+    static SalesFacts.HourlySales hourlySales(Object json) {
+        Map<String, Object> m = Json.object(json);
+        return new SalesFacts.HourlySales(LocalDate.parse(string(m, "from")), LocalDate.parse(string(m, "to")),
+                longs(m, "qty"), longs(m, "revenueCents"), longs(m, "discountCents"));
+    }
+
+    private static void longs(Json.Writer w, long[] values) {
+        w.beginArray();
+        for (long v : values) w.value(v);
+        w.endArray();
+    }
+
+    private static long[] longs(Map<String, Object> m, String name) {
+        List<Object> list = Json.array(m.get(name));
+        long[] out = new long[list.size()];
+        for (int i = 0; i < out.length; i++) {
+            if (!(list.get(i) instanceof Number n)) throw new IllegalArgumentException("Field '" + name + "' must hold numbers");
+            out[i] = whole(n, name);
+        }
+        return out;
+    }
+
+    // ---- errors ----
+
+    static String error(String message) {
+        return new Json.Writer().beginObject().name("error").value(message).endObject().toString();
+    }
+
+    // ---- field access ----
+
+    static int intField(Map<String, Object> m, String name) {
+        long v = longField(m, name);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Field '" + name + "' is out of range");
+        }
+        return (int) v;
+    }
+
+    static long longField(Map<String, Object> m, String name) {
+        return whole(number(m, name), name);
+    }
+
+    // Json yields Long for integral literals; a Double is accepted only if it is a whole number a long can hold
+    private static long whole(Number n, String name) {
+        if (n instanceof Long l) return l;
+        double d = n.doubleValue();
+        if (d != Math.rint(d) || d < -0x1p63 || d >= 0x1p63) {
+            throw new IllegalArgumentException("Field '" + name + "' must be a whole number");
+        }
+        return (long) d;
+    }
+
+    static Number number(Map<String, Object> m, String name) {
+        if (m.get(name) instanceof Number n) return n;
+        throw new IllegalArgumentException("Missing or non-numeric field '" + name + "'");
+    }
+
+    static String string(Map<String, Object> m, String name) {
+        Object v = m.get(name);
+        if (v == null || v instanceof String) return (String) v;
+        throw new IllegalArgumentException("Field '" + name + "' must be a string");
+    }
+
+    static boolean bool(Map<String, Object> m, String name) {
+        return Boolean.TRUE.equals(m.get(name));
+    }
+}
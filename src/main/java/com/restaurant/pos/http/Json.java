@@ -0,0 +1,275 @@
+package com.restaurant.pos.http;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the local API. Parsing yields Map (insertion-ordered), List, String, Long or Double,
+ * Boolean and null; {@link Writer} appends values without building an intermediate tree.
+ */
+final class Json {
+    private final String s;
+    private int pos;
+
+    private Json(String s) {
+        this.s = s;
+    }
+
+    static Object parse(String text) {
+        Json p = new Json(text);
+        p.skipWhitespace();
+        Object v = p.value();
+        p.skipWhitespace();
+        if (p.pos != text.length()) throw p.error("Trailing characters");
+        return v;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> object(Object v) {
+        if (v instanceof Map<?, ?> m) return (Map<String, Object>) m;
+        throw new IllegalArgumentException("Expected a JSON object");
+    }
+
+    static List<Object> array(Object v) {
+        if (v instanceof List<?> l) return new ArrayList<>(l);
+        throw new IllegalArgumentException("Expected a JSON array");
+    }
+
+    private Object value() {
+        if (pos >= s.length()) throw error("Unexpected end of input");
+        char c = s.charAt(pos);
+        switch (c) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                return parseString();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return parseNumber();
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> parseObject() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') throw error("Expected a key");
+            String key = parseString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            map.put(key, value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return map;
+            }
+        }
+    }
+
+    private List<Object> parseArray() {
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return list;
+        }
+        while (true) {
+            skipWhitespace();
+            list.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return list;
+            }
+        }
+    }
+
+    private String parseString() {
+        pos++;
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= s.length()) throw error("Unterminated string");
+            char c = s.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(pos++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                    pos += 4;
+                }
+                default -> sb.append(e);
+            }
+        }
+    }
+
+    private Object parseNumber() {
+        int start = pos;
+        boolean integral = true;
+        while (pos < s.length()) {
+            char c = s.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') integral = false;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) break;
+            pos++;
+        }
+        String n = s.substring(start, pos);
+        return integral ? (Object) Long.parseLong(n) : (Object) Double.parseDouble(n);
+    }
+
+    private Object literal(String word, Object v) {
+        if (!s.startsWith(word, pos)) throw error("Unexpected token");
+        pos += word.length();
+        return v;
+    }
+
+    private char peek() {
+        return pos < s.length() ? s.charAt(pos) : '\0';
+    }
+
+    private void expect(char c) {
+        if (peek() != c) throw error("Expected '" + c + "'");
+        pos++;
+    }
+
+    private void skipWhitespace() {
+        while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+
+    // Streaming writer; commas between members and elements are inserted automatically
+    static final class Writer {
+        private final StringBuilder sb = new StringBuilder(256);
+        private boolean needComma;
+
+        Writer beginObject() {
+            comma();
+            sb.append('{');
+            needComma = false;
+            return this;
+        }
+
+        Writer endObject() {
+            sb.append('}');
+            needComma = true;
+            return this;
+        }
+
+        Writer beginArray() {
+            comma();
+            sb.append('[');
+            needComma = false;
+            return this;
+        }
+
+        Writer endArray() {
+            sb.append(']');
+            needComma = true;
+            return this;
+        }
+
+        Writer name(String name) {
+            comma();
+            quote(name);
+            sb.append(':');
+            needComma = false;
+            return this;
+        }
+
+        Writer value(String v) {
+            comma();
+            if (v == null) sb.append("null");
+            else quote(v);
+            needComma = true;
+            return this;
+        }
+
+        Writer value(long v) {
+            comma();
+            sb.append(v);
+            needComma = true;
+            return this;
+        }
+
+        Writer value(double v) {
+            comma();
+            sb.append(v);
+            needComma = true;
+            return this;
+        }
+
+        Writer value(boolean v) {
+            comma();
+            sb.append(v);
+            needComma = true;
+            return this;
+        }
+
+        Writer nullValue() {
+            comma();
+            sb.append("null");
+            needComma = true;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+
+        private void comma() {
+            if (needComma) sb.append(',');
+        }
+
+        private void quote(String v) {
+            sb.append('"');
+            for (int i = 0; i < v.length(); i++) {
+                char c = v.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
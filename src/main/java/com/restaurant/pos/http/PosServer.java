@@ -0,0 +1,423 @@
+package com.restaurant.pos.http;
+
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.metrics.Metrics;
+import com.restaurant.pos.service.AsyncServices;
+import com.restaurant.pos.service.BackgroundJobs;
+import com.restaurant.pos.service.ForecastService;
+import com.restaurant.pos.service.JobControl;
+import com.restaurant.pos.service.JobScheduler;
+import com.restaurant.pos.service.MenuCatalog;
+import com.restaurant.pos.service.MenuService;
+import com.restaurant.pos.service.OrderHistoryService;
+import com.restaurant.pos.service.OrderJournal;
+import com.restaurant.pos.service.OrderService;
+import com.restaurant.pos.service.PromoPricing;
+import com.restaurant.pos.service.SalesFacts;
+import com.restaurant.pos.service.SalesRollupService;
+import com.restaurant.pos.service.StockProjection;
+import com.restaurant.pos.tools.Args;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless order engine: owns the database, the in-memory catalog, stock projection and promo index, the group-commit
+ * writer and the background jobs, and serves them to any number of terminals over a small JSON API. Every exchange
+ * runs on its own virtual thread, so concurrent checkouts meet in the group-commit queue rather than in a thread pool.
+ *
+ * <pre>
+ * java -cp pos.jar com.restaurant.pos.http.PosServer [--port 8085] [--bind 127.0.0.1] [--data-dir DIR]
+ *
+ * GET  /api/menu                      active items; ETag is the catalog version
+ * GET  /api/menu/sku/{sku}
+ * POST /api/cart/price                {"lines":[{"menuItemId":1,"quantity":2}]}
+ * POST /api/orders                    same body plus "paymentMethod"
+ * GET  /api/orders?from&amp;to&amp;minCents&amp;maxCents&amp;afterCreatedMs&amp;afterId&amp;limit
+ * GET  /api/orders/{id}/receipt       text/plain
+ * GET  /api/stock
+ * POST /api/stock/batches             {"menuItemId":1,"quantity":50,"unitCostCents":120,"expiryDate":"2026-01-31"}
+ * GET  /api/promos
+ * GET  /api/promos/pricing            promo index version and live promos; ETag is the version
+ * POST /api/promos/generate?daysBeforeExpiry&amp;discountPercent
+ * GET  /api/forecast?model&amp;historyDays&amp;horizonDays
+ * GET  /api/sales/hourly?from&amp;to          quantity, revenue and discount per hour of the day
+ * </pre>
+ * Prices always come from the server's catalog; a cart only names items and quantities. Errors are
+ * {"error": message} with 400 for bad input, 404 for unknown resources, 409 for stock-outs and 500 otherwise.
+ */
+public final class PosServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PosServer.class);
+
+    public static final int DEFAULT_PORT = 8085;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AsyncServices services;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // The database must already be initialized; services are closed with the server
+    public PosServer(InetSocketAddress address, AsyncServices services) throws IOException {
+        this.services = services;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/api/menu", this::menu);
+        server.createContext("/api/cart/price", this::priceCart);
+        server.createContext("/api/orders", this::orders);
+        server.createContext("/api/stock", this::stock);
+        server.createContext("/api/promos", this::promos);
+        server.createContext("/api/forecast", this::forecast);
+        server.createContext("/api/sales/hourly", this::hourlySales);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        args.applyDataDir();
+        Database.initialize();
+        StockProjection.instance().reload();
+        PromoPricing.instance().current();
+        new SalesRollupService().backfillIfEmpty();
+        OrderJournal.instance().open();
+        SalesFacts.instance().open();
+
+        JobScheduler scheduler = new JobScheduler();
+        BackgroundJobs.registerDefaults(scheduler);
+        scheduler.start();
+        scheduler.runNow(BackgroundJobs.FORECAST);
+
+        InetSocketAddress address = new InetSocketAddress(args.string("bind", "127.0.0.1"),
+                args.intValue("port", DEFAULT_PORT));
+        PosServer server = new PosServer(address, AsyncServices.local());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            scheduler.close();
+            OrderJournal.instance().close();
+            SalesFacts.instance().close();
+            Metrics.logSummary();
+            Database.shutdown();
+        }, "pos-server-shutdown"));
+        server.start();
+    }
+
+    public void start() {
+        server.start();
+        log.info("POS API listening on http://{}:{}/api", server.getAddress().getHostString(), port());
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting requests, gives in-flight exchanges a second, then drains queued checkouts
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        server.stop(1);
+        executor.shutdown();
+        services.close();
+    }
+
+    // ---- handlers ----
+
+    private void menu(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String sub = subPath(ex, "/api/menu");
+            requireMethod(ex, "GET");
+            if (sub.isEmpty()) {
+                MenuCatalog.Snapshot catalog = MenuCatalog.instance().current();
+                String etag = "\"" + catalog.version() + "\"";
+                if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) return Response.notModified(etag);
+                return Response.json(200, ApiCodec.menu(catalog.activeItems())).withETag(etag);
+            }
+            if (sub.startsWith("/sku/")) {
+                MenuService.MenuItem mi = services.findBySku(decode(sub.substring(5)));
+                if (mi == null) throw new NoSuchElementException("No active menu item with SKU " + sub.substring(5));
+                Json.Writer w = new Json.Writer();
+                ApiCodec.write(w, mi);
+                return Response.json(200, w.toString());
+            }
+            throw new NoSuchElementException("Not found: " + ex.getRequestURI().getPath());
+        });
+    }
+
+    private void priceCart(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            requireMethod(ex, "POST");
+            List<OrderService.CartLine> cart = ApiCodec.cartLines(body(ex), catalog());
+            return Response.json(200, ApiCodec.quote(PromoPricing.instance().quote(cart, LocalDate.now())));
+        });
+    }
+
+    private void orders(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String sub = subPath(ex, "/api/orders");
+            if (sub.isEmpty() && ex.getRequestMethod().equals("POST")) {
+                Map<String, Object> body = body(ex);
+                List<OrderService.CartLine> cart = ApiCodec.cartLines(body, catalog());
+                String method = ApiCodec.string(body, "paymentMethod");
+                OrderService.OrderResult result = services.placeOrder(cart, method == null ? "CASH" : method).join();
+                return Response.json(201, ApiCodec.orderResult(result));
+            }
+            requireMethod(ex, "GET");
+            if (sub.isEmpty()) {
+                Map<String, String> q = query(ex);
+                OrderHistoryService.Filter filter = new OrderHistoryService.Filter(date(q, "from"), date(q, "to"),
+                        integer(q, "minCents"), integer(q, "maxCents"));
+                OrderHistoryService.Cursor after = q.containsKey("afterCreatedMs")
+                        ? new OrderHistoryService.Cursor(Long.parseLong(q.get("afterCreatedMs")), Integer.parseInt(q.get("afterId")))
+                        : null;
+                Integer limit = integer(q, "limit");
+                int pageSize = Math.min(MAX_PAGE_SIZE, Math.max(1, limit == null ? DEFAULT_PAGE_SIZE : limit));
+                return Response.json(200, ApiCodec.page(services.orderHistoryPage(filter, after, pageSize).join()));
+            }
+            if (sub.endsWith("/receipt")) {
+                int orderId = Integer.parseInt(sub.substring(1, sub.length() - "/receipt".length()));
+                String receipt = services.loadReceipt(orderId).join();
+                if (receipt == null) throw new NoSuchElementException("No receipt for order " + orderId);
+                return Response.text(200, receipt);
+            }
+            throw new NoSuchElementException("Not found: " + ex.getRequestURI().getPath());
+        });
+    }
+
+    private void stock(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String sub = subPath(ex, "/api/stock");
+            if (sub.isEmpty()) {
+                requireMethod(ex, "GET");
+                return Response.json(200, ApiCodec.stockLevels(services.getStockLevels().join()));
+            }
+            if (sub.equals("/batches")) {
+                requireMethod(ex, "POST");
+                Map<String, Object> b = body(ex);
+                int itemId = ApiCodec.intField(b, "menuItemId");
+                int quantity = ApiCodec.intField(b, "quantity");
+                if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive");
+                if (catalog().byId(itemId) == null) throw new IllegalArgumentException("Unknown menu item " + itemId);
+                String expiry = ApiCodec.string(b, "expiryDate");
+                services.addStockBatch(itemId, quantity, ApiCodec.intField(b, "unitCostCents"),
+                        expiry == null ? null : LocalDate.parse(expiry)).join();
+                return Response.empty(204);
+            }
+            throw new NoSuchElementException("Not found: " + ex.getRequestURI().getPath());
+        });
+    }
+
+    private void promos(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            String sub = subPath(ex, "/api/promos");
+            if (sub.isEmpty()) {
+                requireMethod(ex, "GET");
+                return Response.json(200, ApiCodec.promos(services.listActivePromos().join()));
+            }
+            if (sub.equals("/pricing")) {
+                requireMethod(ex, "GET");
+                PromoPricing.Snapshot pricing = services.promoPricing();
+                String etag = "\"" + pricing.version() + "\"";
+                if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) return Response.notModified(etag);
+                return Response.json(200, ApiCodec.pricing(pricing)).withETag(etag);
+            }
+            if (sub.equals("/generate")) {
+                requireMethod(ex, "POST");
+                Map<String, String> q = query(ex);
+                Integer days = integer(q, "daysBeforeExpiry");
+                String pct = q.get("discountPercent");
+                return Response.json(200, ApiCodec.promoRunReport(services.generateExpiryBasedPromos(
+                        days == null ? BackgroundJobs.PROMO_DAYS_BEFORE_EXPIRY : days,
+                        pct == null ? BackgroundJobs.PROMO_DISCOUNT_PERCENT : Double.parseDouble(pct)).join()));
+            }
+            throw new NoSuchElementException("Not found: " + ex.getRequestURI().getPath());
+        });
+    }
+
+    private void forecast(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            requireMethod(ex, "GET");
+            Map<String, String> q = query(ex);
+            String model = q.getOrDefault("model", "moving-average");
+            Integer history = integer(q, "historyDays");
+            Integer horizon = integer(q, "horizonDays");
+            AsyncServices.Job<List<ForecastService.Forecast>> job = services.forecast(model,
+                    history == null ? 90 : history, horizon == null ? 30 : horizon, new JobControl());
+            try {
+                return Response.json(200, ApiCodec.forecasts(job.result().get()));
+            } catch (InterruptedException e) {
+                job.cancel();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted", e);
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+        });
+    }
+
+    private void hourlySales(HttpExchange ex) throws IOException {
+        handle(ex, () -> {
+            requireMethod(ex, "GET");
+            Map<String, String> q = query(ex);
+            LocalDate to = date(q, "to");
+            if (to == null) to = LocalDate.now();
+            LocalDate from = date(q, "from");
+            if (from == null) from = to.minusDays(29);
+            if (from.isAfter(to)) throw new IllegalArgumentException("from is after to");
+            return Response.json(200, ApiCodec.hourlySales(services.hourlySales(from, to).join()));
+        });
+    }
+
+    // ---- plumbing ----
+
+    private record Response(int status, String contentType, byte[] body, String etag) {
+        static Response json(int status, String json) {
+            return new Response(status, "application/json; charset=utf-8", json.getBytes(StandardCharsets.UTF_8), null);
+        }
+
+        static Response text(int status, String text) {
+            return new Response(status, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8), null);
+        }
+
+        static Response empty(int status) {
+            return new Response(status, null, null, null);
+        }
+
+        static Response notModified(String etag) {
+            return new Response(304, null, null, etag);
+        }
+
+        Response withETag(String etag) {
+            return new Response(status, contentType, body, etag);
+        }
+    }
+
+    private interface Handler {
+        Response handle() throws Exception;
+    }
+
+    private static void handle(HttpExchange ex, Handler handler) throws IOException {
+        Response r;
+        try {
+            r = handler.handle();
+        } catch (Throwable t) {
+            r = errorResponse(ex, t);
+        }
+        try (ex) {
+            if (r.contentType() != null) ex.getResponseHeaders().set("Content-Type", r.contentType());
+            if (r.etag() != null) ex.getResponseHeaders().set("ETag", r.etag());
+            if (r.body() == null) {
+                ex.sendResponseHeaders(r.status(), -1);
+            } else {
+                ex.sendResponseHeaders(r.status(), r.body().length);
+                try (OutputStream out = ex.getResponseBody()) {
+                    out.write(r.body());
+                }
+            }
+        }
+    }
+
+    private static Response errorResponse(HttpExchange ex, Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        int status;
+        if (t instanceof MethodNotAllowed) status = 405;
+        else if (t instanceof NoSuchElementException) status = 404;
+        else if (t instanceof IllegalArgumentException || t instanceof DateTimeException) status = 400;
+        else if (isStockOut(t)) status = 409;
+        else status = 500;
+        if (status == 500) {
+            log.error("{} {} failed", ex.getRequestMethod(), ex.getRequestURI(), t);
+        } else {
+            log.debug("{} {} -> {}: {}", ex.getRequestMethod(), ex.getRequestURI(), status, t.getMessage());
+        }
+        String message = status == 409 ? stockOutMessage(t) : String.valueOf(t.getMessage());
+        return Response.json(status, ApiCodec.error(message));
+    }
+
+    private static boolean isStockOut(Throwable t) {
+        return stockOutMessage(t) != null;
+    }
+
+    private static String stockOutMessage(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            String msg = t.getMessage();
+            if (msg != null && msg.startsWith("Insufficient stock")) return msg;
+        }
+        return null;
+    }
+
+    private static final class MethodNotAllowed extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        MethodNotAllowed(String method) {
+            super("Method not allowed: " + method);
+        }
+    }
+
+    private static void requireMethod(HttpExchange ex, String method) {
+        if (!ex.getRequestMethod().equals(method)) throw new MethodNotAllowed(ex.getRequestMethod());
+    }
+
+    private static ApiCodec.MenuLookup catalog() {
+        return MenuCatalog.instance().current()::byId;
+    }
+
+    private static String subPath(HttpExchange ex, String context) {
+        String path = ex.getRequestURI().getPath();
+        String sub = path.substring(context.length());
+        return sub.equals("/") ? "" : sub;
+    }
+
+    private static Map<String, Object> body(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return Json.object(Json.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> q = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) q.put(decode(pair), "");
+            else q.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+        }
+        return q;
+    }
+
+    private static String decode(String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDate date(Map<String, String> q, String name) {
+        String v = q.get(name);
+        return v == null || v.isEmpty() ? null : LocalDate.parse(v);
+    }
+
+    private static Integer integer(Map<String, String> q, String name) {
+        String v = q.get(name);
+        return v == null || v.isEmpty() ? null : Integer.valueOf(v);
+    }
+}
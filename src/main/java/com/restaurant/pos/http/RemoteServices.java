@@ -0,0 +1,287 @@
+package com.restaurant.pos.http;
+
+import com.restaurant.pos.service.AsyncServices;
+import com.restaurant.pos.service.ForecastService;
+import com.restaurant.pos.service.InventoryService;
+import com.restaurant.pos.service.JobControl;
+import com.restaurant.pos.service.MenuService;
+import com.restaurant.pos.service.OrderEvents;
+import com.restaurant.pos.service.OrderHistoryService;
+import com.restaurant.pos.service.OrderService;
+import com.restaurant.pos.service.PromoPricing;
+import com.restaurant.pos.service.PromoService;
+import com.restaurant.pos.service.SalesFacts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serial;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link AsyncServices} for a terminal that talks to a {@link PosServer} instead of owning a database. The menu and
+ * the promo index are cached locally so SKU lookups and running cart totals stay in memory; both are revalidated
+ * with ETags at most every {@link #REFRESH_INTERVAL}, in the background, on the first lookup after it lapses.
+ * Checkout is always priced by the server, so a stale cache can only affect the totals shown while building a cart.
+ */
+public final class RemoteServices implements AsyncServices {
+    private static final Logger log = LoggerFactory.getLogger(RemoteServices.class);
+
+    static final Duration REFRESH_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    // A non-2xx reply; the message is the server's error text
+    public static final class ApiException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int status() {
+            return status;
+        }
+    }
+
+    private record Menu(String etag, List<MenuService.MenuItem> items, Map<String, MenuService.MenuItem> bySku) {
+        static Menu of(String etag, List<MenuService.MenuItem> items) {
+            Map<String, MenuService.MenuItem> bySku = new HashMap<>(items.size() * 2);
+            for (MenuService.MenuItem mi : items) {
+                if (mi.sku() != null) bySku.put(mi.sku(), mi);
+            }
+            return new Menu(etag, List.copyOf(items), bySku);
+        }
+    }
+
+    private final URI base;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Menu menu;
+    private volatile PromoPricing.Snapshot pricing;
+    private volatile long refreshedAt;
+
+    // Loads the menu and promo index up front, so an unreachable server fails here rather than mid-order
+    public RemoteServices(URI server) {
+        this.base = server.resolve("/api/");
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        refreshMenu().join();
+        refreshPricing().join();
+        refreshedAt = System.nanoTime();
+    }
+
+    @Override
+    public CompletableFuture<List<MenuService.MenuItem>> listActiveMenuItems() {
+        return refreshMenu().thenApply(Menu::items);
+    }
+
+    @Override
+    public MenuService.MenuItem findBySku(String sku) {
+        refreshIfStale();
+        return menu.bySku().get(sku);
+    }
+
+    @Override
+    public PromoPricing.Snapshot promoPricing() {
+        refreshIfStale();
+        return pricing;
+    }
+
+    @Override
+    public CompletableFuture<OrderService.OrderResult> placeOrder(List<OrderService.CartLine> cart, String paymentMethod) {
+        return send(post("orders", ApiCodec.cart(cart, paymentMethod))).thenApply(ApiCodec::orderResult);
+    }
+
+    @Override
+    public CompletableFuture<OrderHistoryService.Page> orderHistoryPage(OrderHistoryService.Filter filter,
+                                                                     OrderHistoryService.Cursor after, int limit) {
+        Query q = new Query()
+                .add("from", filter.from())
+                .add("to", filter.to())
+                .add("minCents", filter.minTotalCents())
+                .add("maxCents", filter.maxTotalCents())
+                .add("limit", limit);
+        if (after != null) q.add("afterCreatedMs", after.createdMs()).add("afterId", after.id());
+        return send(get("orders" + q)).thenApply(ApiCodec::page);
+    }
+
+    @Override
+    public CompletableFuture<String> loadReceipt(int orderId) {
+        return sendRaw(get("orders/" + orderId + "/receipt"))
+                .thenApply(r -> r.statusCode() == 404 ? null : checked(r).body());
+    }
+
+    // Commits happen in the server process; screens refresh by hand
+    @Override
+    public OrderEvents.Subscription subscribeOrders(String name, OrderEvents.Handler handler) {
+        return OrderEvents.none(name);
+    }
+
+    @Override
+    public CompletableFuture<List<InventoryService.StockLevel>> getStockLevels() {
+        return send(get("stock")).thenApply(ApiCodec::stockLevels);
+    }
+
+    @Override
+    public CompletableFuture<Void> addStockBatch(int menuItemId, int quantity, int unitCostCents, LocalDate expiryDate) {
+        return sendRaw(post("stock/batches", ApiCodec.stockBatch(menuItemId, quantity, unitCostCents, expiryDate)))
+                .thenAccept(RemoteServices::checked);
+    }
+
+    // The server reports no progress; cancelling aborts the request
+    @Override
+    public Job<List<ForecastService.Forecast>> forecast(String model, int historyDays, int horizonDays, JobControl control) {
+        Query q = new Query().add("model", model).add("historyDays", historyDays).add("horizonDays", horizonDays);
+        CompletableFuture<HttpResponse<String>> exchange = sendRaw(get("forecast" + q));
+        CompletableFuture<List<ForecastService.Forecast>> result =
+                exchange.thenApply(r -> ApiCodec.forecasts(Json.parse(checked(r).body())));
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) exchange.cancel(true);
+        });
+        return new Job<>(result, control);
+    }
+
+    // Only the server runs the scheduled forecast
+    @Override
+    public ForecastService.Published publishedForecast() {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<SalesFacts.HourlySales> hourlySales(LocalDate from, LocalDate to) {
+        return send(get("sales/hourly" + new Query().add("from", from).add("to", to))).thenApply(ApiCodec::hourlySales);
+    }
+
+    @Override
+    public CompletableFuture<PromoService.PromoRunReport> generateExpiryBasedPromos(int daysBeforeExpiry, double discountPercent) {
+        Query q = new Query().add("daysBeforeExpiry", daysBeforeExpiry).add("discountPercent", discountPercent);
+        return send(post("promos/generate" + q, "{}"))
+                .thenApply(ApiCodec::promoRunReport)
+                .whenComplete((r, t) -> refreshPricing());
+    }
+
+    @Override
+    public CompletableFuture<List<PromoService.Promo>> listActivePromos() {
+        return send(get("promos")).thenApply(ApiCodec::promos);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // ---- cache ----
+
+    private void refreshIfStale() {
+        if (System.nanoTime() - refreshedAt < REFRESH_INTERVAL.toNanos()) return;
+        if (!refreshing.compareAndSet(false, true)) return;
+        refreshMenu().thenCompose(m -> refreshPricing()).whenComplete((r, t) -> {
+            if (t != null) log.warn("Menu/promo refresh from {} failed: {}", base, t.getMessage());
+            refreshedAt = System.nanoTime();
+            refreshing.set(false);
+        });
+    }
+
+    private CompletableFuture<Menu> refreshMenu() {
+        Menu cached = menu;
+        return sendRaw(conditionalGet("menu", cached == null ? null : cached.etag())).thenApply(r -> {
+            if (r.statusCode() == 304) return cached;
+            Menu fresh = Menu.of(r.headers().firstValue("ETag").orElse(null),
+                    ApiCodec.menuItems(Json.parse(checked(r).body())));
+            menu = fresh;
+            return fresh;
+        });
+    }
+
+    private CompletableFuture<PromoPricing.Snapshot> refreshPricing() {
+        PromoPricing.Snapshot cached = pricing;
+        String etag = cached == null ? null : "\"" + cached.version() + "\"";
+        return sendRaw(conditionalGet("promos/pricing", etag)).thenApply(r -> {
+            if (r.statusCode() == 304) return cached;
+            PromoPricing.Snapshot fresh = ApiCodec.pricing(Json.parse(checked(r).body()));
+            pricing = fresh;
+            return fresh;
+        });
+    }
+
+    // ---- transport ----
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest conditionalGet(String path, String etag) {
+        HttpRequest.Builder b = request(path).GET();
+        if (etag != null) b.header("If-None-Match", etag);
+        return b.build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return request(path)
+                .header("Content-Type", "application/json; charset=utf-8")
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).timeout(REQUEST_TIMEOUT);
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendRaw(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private CompletableFuture<Object> send(HttpRequest request) {
+        return sendRaw(request).thenApply(r -> Json.parse(checked(r).body()));
+    }
+
+    private static HttpResponse<String> checked(HttpResponse<String> r) {
+        if (r.statusCode() / 100 == 2) return r;
+        String message = r.body();
+        try {
+            Object err = Json.object(Json.parse(r.body())).get("error");
+            if (err != null) message = err.toString();
+        } catch (IllegalArgumentException ignored) {
+            // not a JSON error body; keep the raw text
+        }
+        throw new ApiException(r.statusCode(), message);
+    }
+
+    // Query string builder that skips null values
+    private static final class Query {
+        private final StringJoiner joiner = new StringJoiner("&", "?", "").setEmptyValue("");
+
+        Query add(String name, Object value) {
+            if (value != null) {
+                joiner.add(name + "=" + URLEncoder.encode(value.toString(), StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return joiner.toString();
+        }
+    }
+}
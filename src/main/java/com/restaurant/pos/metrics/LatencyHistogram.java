@@ -0,0 +1,91 @@
+package com.restaurant.pos.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in nanoseconds with HDR-style log-linear buckets: every power of two is split into
+ * 32 sub-buckets, so any reported percentile is within about 3% of the true value. Recording is allocation-free
+ * and safe from any thread; values above ~18 minutes land in the top bucket.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) << SUB_BITS;
+
+    public static record Snapshot(long count, double meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {}
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        count.increment();
+        sum.add(nanos);
+        if (nanos > max.get()) max.accumulateAndGet(nanos, Math::max);
+    }
+
+    // For spans: long t0 = System.nanoTime(); ...; histogram.recordSince(t0)
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        if (total == 0) return new Snapshot(0, 0, 0, 0, 0, 0);
+        long m = max.get();
+        return new Snapshot(total, (double) sum.sum() / Math.max(1, count.sum()),
+                Math.min(m, percentile(c, total, 0.50)),
+                Math.min(m, percentile(c, total, 0.99)),
+                Math.min(m, percentile(c, total, 0.999)), m);
+    }
+
+    private static long percentile(long[] c, long total, double q) {
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < c.length; i++) {
+            seen += c[i];
+            if (seen >= rank) return highestEquivalent(i);
+        }
+        return highestEquivalent(c.length - 1);
+    }
+
+    static int indexOf(long v) {
+        if (v < SUB_COUNT) return (int) v;
+        int exp = Math.min(MAX_EXPONENT, 63 - Long.numberOfLeadingZeros(v));
+        int shift = exp - SUB_BITS;
+        int sub = exp == MAX_EXPONENT && v >= (1L << (MAX_EXPONENT + 1)) ? SUB_COUNT - 1 : (int) (v >>> shift) - SUB_COUNT;
+        return ((shift + 1) << SUB_BITS) + sub;
+    }
+
+    // Top of the bucket's value range, so percentiles never under-report
+    static long highestEquivalent(int index) {
+        if (index < SUB_COUNT) return index;
+        int shift = (index >>> SUB_BITS) - 1;
+        long low = (long) ((index & (SUB_COUNT - 1)) + SUB_COUNT) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
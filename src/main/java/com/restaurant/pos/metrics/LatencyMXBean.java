@@ -0,0 +1,16 @@
+package com.restaurant.pos.metrics;
+
+// JMX view of one latency histogram; all times in microseconds
+public interface LatencyMXBean {
+    long getCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
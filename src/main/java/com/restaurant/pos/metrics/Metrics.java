@@ -0,0 +1,112 @@
+package com.restaurant.pos.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of named latency histograms. Look a histogram up once, keep it in a field, and record
+ * into it on the hot path. Each histogram is also exposed over JMX as com.restaurant.pos:type=Latency,name=...
+ * and can be appended to a CSV file with {@link #dumpCsv(Path)}.
+ */
+public final class Metrics {
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    // Bounds memory and JMX clutter if callers ever build names from unbounded input
+    private static final int MAX_HISTOGRAMS = 1024;
+    private static final String OVERFLOW = "other";
+    private static final String CSV_HEADER = "timestamp,name,count,mean_us,p50_us,p99_us,p999_us,max_us";
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram h = histograms.get(name);
+        if (h != null) return h;
+        if (histograms.size() >= MAX_HISTOGRAMS) name = OVERFLOW;
+        return histograms.computeIfAbsent(name, Metrics::create);
+    }
+
+    public static List<LatencyHistogram> all() {
+        List<LatencyHistogram> list = new ArrayList<>(histograms.values());
+        list.sort(Comparator.comparing(LatencyHistogram::name));
+        return list;
+    }
+
+    // Appends one row per non-empty histogram; cumulative since start, so rates come from consecutive dumps
+    public static void dumpCsv(Path file) throws IOException {
+        boolean header = !Files.exists(file);
+        String now = LocalDateTime.now().toString();
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (header) w.write(CSV_HEADER + "\n");
+            for (LatencyHistogram h : all()) {
+                LatencyHistogram.Snapshot s = h.snapshot();
+                if (s.count() == 0) continue;
+                w.write(now + "," + csv(h.name()) + "," + s.count() + "," + micros(s.meanNanos()) + ","
+                        + micros(s.p50Nanos()) + "," + micros(s.p99Nanos()) + "," + micros(s.p999Nanos()) + ","
+                        + micros(s.maxNanos()) + "\n");
+            }
+        }
+    }
+
+    public static void logSummary() {
+        for (LatencyHistogram h : all()) {
+            LatencyHistogram.Snapshot s = h.snapshot();
+            if (s.count() == 0) continue;
+            log.info("{}: n={} p50={}us p99={}us p999={}us max={}us", h.name(), s.count(),
+                    micros(s.p50Nanos()), micros(s.p99Nanos()), micros(s.p999Nanos()), micros(s.maxNanos()));
+        }
+    }
+
+    private static LatencyHistogram create(String name) {
+        LatencyHistogram h = new LatencyHistogram(name);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("com.restaurant.pos:type=Latency,name=" + ObjectName.quote(name));
+            if (!server.isRegistered(on)) server.registerMBean(new Bean(h), on);
+        } catch (Exception e) {
+            log.debug("JMX registration failed for {}", name, e);
+        }
+        return h;
+    }
+
+    private static String micros(double nanos) {
+        return String.format("%.1f", nanos / 1_000.0);
+    }
+
+    private static String csv(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static final class Bean implements LatencyMXBean {
+        private final LatencyHistogram h;
+
+        Bean(LatencyHistogram h) {
+            this.h = h;
+        }
+
+        @Override public long getCount() { return h.count(); }
+        @Override public double getMeanMicros() { return h.snapshot().meanNanos() / 1_000.0; }
+        @Override public double getP50Micros() { return h.snapshot().p50Nanos() / 1_000.0; }
+        @Override public double getP99Micros() { return h.snapshot().p99Nanos() / 1_000.0; }
+        @Override public double getP999Micros() { return h.snapshot().p999Nanos() / 1_000.0; }
+        @Override public double getMaxMicros() { return h.snapshot().maxNanos() / 1_000.0; }
+    }
+}
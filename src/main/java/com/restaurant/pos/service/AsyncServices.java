@@ -0,0 +1,63 @@
+package com.restaurant.pos.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What the UI needs from the back end, without blocking the calling thread. {@link LocalServices} runs everything
+ * in-process against the local database; a thin client implements the same calls over the HTTP API. The two
+ * synchronous lookups are served from in-memory snapshots and never touch the database or the network.
+ */
+public interface AsyncServices extends AutoCloseable {
+    // A cancellable job: result completes exceptionally with CancellationException after cancel()
+    public static record Job<T>(CompletableFuture<T> result, JobControl control) {
+        public void cancel() {
+            control.cancel();
+            result.cancel(true);
+        }
+    }
+
+    static AsyncServices local() {
+        return new LocalServices();
+    }
+
+    CompletableFuture<List<MenuService.MenuItem>> listActiveMenuItems();
+
+    // Active items only; null when no item has the SKU
+    MenuService.MenuItem findBySku(String sku);
+
+    // Current promo index for pricing carts as they are built
+    PromoPricing.Snapshot promoPricing();
+
+    CompletableFuture<OrderService.OrderResult> placeOrder(List<OrderService.CartLine> cart, String paymentMethod);
+
+    CompletableFuture<OrderHistoryService.Page> orderHistoryPage(OrderHistoryService.Filter filter,
+                                                                 OrderHistoryService.Cursor after, int limit);
+
+    CompletableFuture<String> loadReceipt(int orderId);
+
+    // Orders as they commit, delivered on the subscription's own thread; one that never delivers when this client
+    // cannot see commits
+    OrderEvents.Subscription subscribeOrders(String name, OrderEvents.Handler handler);
+
+    CompletableFuture<List<InventoryService.StockLevel>> getStockLevels();
+
+    CompletableFuture<Void> addStockBatch(int menuItemId, int quantity, int unitCostCents, LocalDate expiryDate);
+
+    // model is one of ForecastModel.NAMES
+    Job<List<ForecastService.Forecast>> forecast(String model, int historyDays, int horizonDays, JobControl control);
+
+    // Latest background forecast, or null when none is available
+    ForecastService.Published publishedForecast();
+
+    // Quantity, revenue and discount per hour of the day over [from, to]
+    CompletableFuture<SalesFacts.HourlySales> hourlySales(LocalDate from, LocalDate to);
+
+    CompletableFuture<PromoService.PromoRunReport> generateExpiryBasedPromos(int daysBeforeExpiry, double discountPercent);
+
+    CompletableFuture<List<PromoService.Promo>> listActivePromos();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,118 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Archives;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// The application's standard background jobs. Heavy work prefers the night window or a quiet register.
+public final class BackgroundJobs {
+    public static final String CATALOG_REFRESH = "catalog-refresh";
+    public static final String EXPIRY_PROMOS = "expiry-promos";
+    public static final String FORECAST = "forecast";
+    public static final String WAL_CHECKPOINT = "wal-checkpoint";
+    public static final String OPTIMIZE = "optimize";
+    public static final String ANALYZE = "analyze";
+    public static final String PRUNE_JOB_HISTORY = "prune-job-history";
+    public static final String ARCHIVE_PERIODS = "archive-periods";
+    public static final String STOCK_SNAPSHOT = "stock-snapshot";
+    public static final String SALES_FACTS_CHECKPOINT = "sales-facts-checkpoint";
+    public static final String METRICS_DUMP = "metrics-dump";
+
+    public static final int PROMO_DAYS_BEFORE_EXPIRY = 7;
+    public static final double PROMO_DISCOUNT_PERCENT = 20;
+    public static final int FORECAST_MONTHS = 3;
+    // Closed months kept in the hot database before they move to an archive file
+    public static final int HOT_CLOSED_MONTHS = 1;
+    private static final int JOB_HISTORY_DAYS = 30;
+
+    private static final RunPolicy NIGHT = RunPolicy.offPeak(LocalTime.of(0, 0), LocalTime.of(6, 0));
+
+    private BackgroundJobs() {}
+
+    public static void registerDefaults(JobScheduler scheduler) {
+        PromoService promos = new PromoService();
+        ForecastService forecasts = new ForecastService();
+
+        // Picks up menu and promo edits made outside this process; a no-op read when nothing changed
+        scheduler.register(CATALOG_REFRESH, Schedule.every(Duration.ofSeconds(30)), RunPolicy.ANYTIME, () -> {
+            boolean menu = MenuCatalog.instance().refreshIfChanged();
+            boolean promo = PromoPricing.instance().refreshIfChanged();
+            return menu || promo ? "menu=" + menu + " promos=" + promo : null;
+        });
+        scheduler.register(EXPIRY_PROMOS, Schedule.cron("0 * * * *"), NIGHT.orWhenQuiet(5),
+                () -> promos.generateExpiryBasedPromos(PROMO_DAYS_BEFORE_EXPIRY, PROMO_DISCOUNT_PERCENT));
+        scheduler.register(FORECAST, Schedule.cron("30 2 * * *"), NIGHT.orWhenQuiet(2),
+                () -> forecasts.publishNextMonth(FORECAST_MONTHS));
+
+        scheduler.register(WAL_CHECKPOINT, Schedule.every(Duration.ofMinutes(10)), RunPolicy.whenQuiet(10),
+                BackgroundJobs::checkpoint);
+        scheduler.register(OPTIMIZE, Schedule.every(Duration.ofHours(6)), RunPolicy.whenQuiet(5),
+                () -> execute("PRAGMA optimize"));
+        scheduler.register(ANALYZE, Schedule.cron("0 4 * * 0"), NIGHT, () -> execute("ANALYZE"));
+        scheduler.register(PRUNE_JOB_HISTORY, Schedule.cron("15 3 * * *"), RunPolicy.ANYTIME,
+                BackgroundJobs::pruneJobHistory);
+        // Bounds a point-in-time stock query to four hours of ledger replay; one short write per run
+        scheduler.register(STOCK_SNAPSHOT, Schedule.every(Duration.ofHours(4)), RunPolicy.ANYTIME, () -> {
+            StockHistoryService.Taken t = new StockHistoryService().take();
+            return t.items() + " items, " + t.ledgerRows() + " ledger rows";
+        });
+        // Daily so a missed night catches up; a single registry read when there is nothing to move
+        scheduler.register(ARCHIVE_PERIODS, Schedule.cron("45 3 * * *"), NIGHT, BackgroundJobs::archivePeriods);
+        // Bounds what an unclean shutdown costs the fact store to a minute of re-reading orders
+        scheduler.register(SALES_FACTS_CHECKPOINT, Schedule.every(Duration.ofMinutes(1)), RunPolicy.ANYTIME, () -> {
+            SalesFacts facts = SalesFacts.instance();
+            return facts.checkpoint() ? facts.rows() + " lines" : null;
+        });
+        // Cheap local file append; never recorded in job_run
+        scheduler.register(METRICS_DUMP, Schedule.every(Duration.ofMinutes(1)), RunPolicy.ANYTIME, () -> {
+            Metrics.dumpCsv(Database.dataFile("metrics.csv"));
+            return null;
+        });
+    }
+
+    // PASSIVE never waits on readers; returns null when the WAL had nothing to copy back
+    private static String checkpoint() throws SQLException {
+        try (Connection conn = Database.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA wal_checkpoint(PASSIVE)")) {
+            if (!rs.next() || rs.getInt(3) <= 0) return null;
+            return "busy=" + rs.getInt(1) + " log=" + rs.getInt(2) + " checkpointed=" + rs.getInt(3);
+        }
+    }
+
+    private static String execute(String sql) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = Database.getConnection(); Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+        return (System.nanoTime() - start) / 1_000_000 + " ms";
+    }
+
+    private static String archivePeriods() throws SQLException {
+        // A snapshot first, so the rows it has not yet folded in are all still in the hot ledger
+        new StockHistoryService().take();
+        List<Archives.Period> sealed = Archives.archiveBefore(YearMonth.now().minusMonths(HOT_CLOSED_MONTHS));
+        if (sealed.isEmpty()) return null;
+        return sealed.stream().map(p -> p.month() + " (" + p.orders() + " orders)").collect(Collectors.joining(", "));
+    }
+
+    private static String pruneJobHistory() throws SQLException {
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM job_run WHERE started_at < ?")) {
+            ps.setString(1, LocalDate.now().minusDays(JOB_HISTORY_DAYS).toString());
+            int n = ps.executeUpdate();
+            return n == 0 ? null : n + " rows";
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.restaurant.pos.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Orders committed over the last minute, in one-second buckets; lets background work back off during a rush.
+final class CheckoutActivity {
+    private static final int BUCKETS = 60;
+
+    // Each slot packs (epoch second << 20 | count), so a stale slot is recognised without a sweeper thread
+    private static final AtomicLongArray slots = new AtomicLongArray(BUCKETS);
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private CheckoutActivity() {}
+
+    static void recordOrders(int orders) {
+        long second = System.currentTimeMillis() / 1000;
+        int i = (int) (second % BUCKETS);
+        while (true) {
+            long cur = slots.get(i);
+            long count = (cur >>> COUNT_BITS) == second ? cur & COUNT_MASK : 0;
+            long next = (second << COUNT_BITS) | Math.min(COUNT_MASK, count + orders);
+            if (slots.compareAndSet(i, cur, next)) return;
+        }
+    }
+
+    static int ordersLastMinute() {
+        long now = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long cur = slots.get(i);
+            if (now - (cur >>> COUNT_BITS) < BUCKETS) total += cur & COUNT_MASK;
+        }
+        return (int) total;
+    }
+}
@@ -0,0 +1,106 @@
+package com.restaurant.pos.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set-based FIFO stock deduction. One query computes the consumption plan for every requested item using a
+ * running total over live batches (soonest expiry first); the plan is then applied with batched statements.
+ * Batches that reach zero move to inventory_batch_archive, so the live index only ever holds stock on hand.
+ * An order that was already acknowledged (see OrderJournal) may not fail for lack of stock; allowShort takes
+ * whatever is left instead, and the caller gets back what was actually deducted.
+ */
+final class FifoDeduction {
+    // For each live batch up to the one that covers the request: how much to take from it.
+    // consumed_before is the stock in earlier batches of the same item, in FIFO order. CROSS JOIN keeps the cart as the
+    // outer loop: with the JSON bound as a parameter the planner would otherwise scan every live batch and re-read the
+    // cart for each one, so the cost grew with the stock on hand rather than with the lines ordered.
+    private static final String PLAN_SQL =
+            "WITH wanted(menu_item_id, qty) AS (" +
+            "  SELECT json_extract(value, '$[0]'), json_extract(value, '$[1]') FROM json_each(?)), " +
+            "live AS (" +
+            "  SELECT ib.id, ib.menu_item_id, ib.quantity, w.qty AS wanted, " +
+            "    SUM(ib.quantity) OVER (PARTITION BY ib.menu_item_id ORDER BY ib.expiry_date NULLS LAST, ib.id " +
+            "      ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING) AS consumed_before, " +
+            "    SUM(ib.quantity) OVER (PARTITION BY ib.menu_item_id) AS available " +
+            "  FROM wanted w CROSS JOIN inventory_batch ib ON ib.menu_item_id = w.menu_item_id " +
+            "  WHERE ib.quantity > 0) " +
+            "SELECT id, menu_item_id, quantity, MIN(quantity, wanted - COALESCE(consumed_before, 0)) AS take, available " +
+            "FROM live WHERE COALESCE(consumed_before, 0) < wanted";
+
+    private static final String UPDATE_SQL = "UPDATE inventory_batch SET quantity = quantity - ? WHERE id = ?";
+    private static final String ARCHIVE_SQL =
+            "INSERT INTO inventory_batch_archive(id, menu_item_id, unit_cost_cents, expiry_date, created_at, depleted_at) " +
+            "SELECT id, menu_item_id, unit_cost_cents, expiry_date, created_at, ? FROM inventory_batch WHERE id = ?";
+    private static final String DELETE_SQL = "DELETE FROM inventory_batch WHERE id = ?";
+
+    private FifoDeduction() {}
+
+    static void deduct(Map<Integer, Integer> quantities, Connection conn) throws SQLException {
+        deduct(quantities, conn, false);
+    }
+
+    static Map<Integer, Integer> deduct(Map<Integer, Integer> quantities, Connection conn, boolean allowShort)
+            throws SQLException {
+        Map<Integer, Integer> covered = new HashMap<>();
+        if (quantities.isEmpty()) return covered;
+        try (PreparedStatement plan = conn.prepareStatement(PLAN_SQL);
+             PreparedStatement upd = conn.prepareStatement(UPDATE_SQL);
+             PreparedStatement archive = conn.prepareStatement(ARCHIVE_SQL);
+             PreparedStatement delete = conn.prepareStatement(DELETE_SQL)) {
+            plan.setString(1, toJson(quantities));
+            String now = LocalDateTime.now().toString();
+            int updates = 0, depleted = 0;
+            try (ResultSet rs = plan.executeQuery()) {
+                while (rs.next()) {
+                    int batchId = rs.getInt(1);
+                    int itemId = rs.getInt(2);
+                    int batchQty = rs.getInt(3);
+                    int take = rs.getInt(4);
+                    if (!allowShort && rs.getInt(5) < quantities.get(itemId)) {
+                        throw new SQLException("Insufficient stock for menu_item_id=" + itemId);
+                    }
+                    covered.merge(itemId, take, Integer::sum);
+                    if (take == batchQty) {
+                        archive.setString(1, now);
+                        archive.setInt(2, batchId);
+                        archive.addBatch();
+                        delete.setInt(1, batchId);
+                        delete.addBatch();
+                        depleted++;
+                    } else {
+                        upd.setInt(1, take);
+                        upd.setInt(2, batchId);
+                        upd.addBatch();
+                        updates++;
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                if (!allowShort && e.getValue() > 0 && covered.getOrDefault(e.getKey(), 0) < e.getValue()) {
+                    throw new SQLException("Insufficient stock for menu_item_id=" + e.getKey());
+                }
+            }
+            if (updates > 0) upd.executeBatch();
+            if (depleted > 0) {
+                archive.executeBatch();
+                delete.executeBatch();
+            }
+        }
+        return covered;
+    }
+
+    private static String toJson(Map<Integer, Integer> quantities) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('[').append(e.getKey()).append(',').append(e.getValue()).append(']');
+        }
+        return sb.append(']').toString();
+    }
+}
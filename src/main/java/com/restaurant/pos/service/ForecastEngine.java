@@ -0,0 +1,141 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+
+import java.io.Serial;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads zero-filled daily series from the sales fact store (or sales_daily) into primitive arrays and evaluates a
+ * {@link ForecastModel} for every item on a fork-join pool.
+ */
+public class ForecastEngine {
+    // Items per leaf task; series are short, so amortize fork overhead over a block of items
+    private static final int LEAF_ITEMS = 64;
+
+    // Daily history for a set of items: series[i] belongs to itemIds[i], series[i][0] is firstDay
+    public static record History(LocalDate firstDay, int[] itemIds, int[][] series) {
+        public int days() {
+            return series.length == 0 ? 0 : series[0].length;
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public ForecastEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ForecastEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Items that sold at least once in [from, to]; days without sales are zero. Scans the columnar fact store when
+    // this process has it open, sales_daily otherwise
+    public History loadHistory(LocalDate from, LocalDate to) {
+        int days = (int) (to.toEpochDay() - from.toEpochDay()) + 1;
+        if (days <= 0) return new History(from, new int[0], new int[0][]);
+        SalesFacts facts = SalesFacts.instance();
+        if (facts.isOpen()) return facts.dailyQty(from, to);
+        String sql = "SELECT menu_item_id, CAST(JULIANDAY(day) - JULIANDAY(?) AS INTEGER) AS offset, qty " +
+                "FROM sales_daily WHERE day >= ? AND day <= ?";
+        List<int[]> rows = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = Database.getReadConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, from.toString());
+            ps.setString(2, from.toString());
+            ps.setString(3, to.toString());
+            // Distinct item ids are only known after the scan, so collect in a growable index first
+            Map<Integer, Integer> index = new HashMap<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    Integer row = index.get(id);
+                    if (row == null) {
+                        row = rows.size();
+                        index.put(id, row);
+                        rows.add(new int[days]);
+                        ids.add(id);
+                    }
+                    rows.get(row)[rs.getInt(2)] += rs.getInt(3);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        int[] itemIds = new int[ids.size()];
+        for (int i = 0; i < itemIds.length; i++) itemIds[i] = ids.get(i);
+        return new History(from, itemIds, rows.toArray(new int[0][]));
+    }
+
+    // Forecast total over horizonDays following the history, one value per item in history order
+    public double[] forecast(ForecastModel model, History history, int horizonDays, JobControl control) {
+        int firstDow = history.firstDay().getDayOfWeek().getValue() - 1;
+        return evaluate(model, history.series(), firstDow, horizonDays, control);
+    }
+
+    public double[] evaluate(ForecastModel model, int[][] series, int firstDow, int horizonDays) {
+        return evaluate(model, series, firstDow, horizonDays, null);
+    }
+
+    // control may be null; when set, leaves report progress per item block and stop once it is cancelled
+    public double[] evaluate(ForecastModel model, int[][] series, int firstDow, int horizonDays, JobControl control) {
+        double[] out = new double[series.length];
+        if (control != null) control.start(series.length);
+        pool.invoke(new Slice(model, series, firstDow, horizonDays, out, 0, series.length, control));
+        if (control != null) control.checkCancelled();
+        return out;
+    }
+
+    // Never serialized; RecursiveAction is Serializable only through ForkJoinTask
+    private static final class Slice extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient ForecastModel model;
+        private final int[][] series;
+        private final int firstDow;
+        private final int horizon;
+        private final double[] out;
+        private final int from;
+        private final int to;
+        private final transient JobControl control;
+
+        Slice(ForecastModel model, int[][] series, int firstDow, int horizon, double[] out, int from, int to,
+              JobControl control) {
+            this.model = model;
+            this.series = series;
+            this.firstDow = firstDow;
+            this.horizon = horizon;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+            if (control != null && control.isCancelled()) return;
+            if (to - from <= LEAF_ITEMS) {
+                for (int i = from; i < to; i++) {
+                    out[i] = model.forecast(series[i], firstDow, horizon);
+                }
+                if (control != null) control.advance(to - from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Slice(model, series, firstDow, horizon, out, from, mid, control),
+                    new Slice(model, series, firstDow, horizon, out, mid, to, control));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.restaurant.pos.service;
+
+import java.util.List;
+
+/**
+ * A forecasting model over one item's zero-filled daily sales series (oldest day first). Implementations are
+ * stateless, so the engine can evaluate many items at once.
+ */
+public interface ForecastModel {
+    String name();
+
+    /**
+     * @param series       daily quantities, oldest first, with zeros for days without sales
+     * @param firstDow     day of week of series[0], 0 = Monday .. 6 = Sunday
+     * @param horizonDays  number of days after the series to forecast
+     * @return expected total quantity over the horizon, never negative
+     */
+    double forecast(int[] series, int firstDow, int horizonDays);
+
+    // Keys accepted by named(); the UI and the HTTP API both pick models this way
+    List<String> NAMES = List.of("moving-average", "exponential-smoothing", "holt-winters", "day-of-week");
+
+    // Standard parameters per model; the moving average spans the whole history
+    static ForecastModel named(String key, int historyDays) {
+        return switch (key) {
+            case "moving-average" -> movingAverage(historyDays);
+            case "exponential-smoothing" -> exponentialSmoothing(0.3);
+            case "holt-winters" -> holtWinters(0.3, 0.05, 0.3);
+            case "day-of-week" -> dayOfWeek(8);
+            default -> throw new IllegalArgumentException("Unknown forecast model: " + key);
+        };
+    }
+
+    static ForecastModel movingAverage(int windowDays) {
+        return new MovingAverage(windowDays);
+    }
+
+    static ForecastModel exponentialSmoothing(double alpha) {
+        return new ExponentialSmoothing(alpha);
+    }
+
+    static ForecastModel holtWinters(double alpha, double beta, double gamma) {
+        return new HoltWinters(alpha, beta, gamma);
+    }
+
+    static ForecastModel dayOfWeek(int weeks) {
+        return new DayOfWeek(weeks);
+    }
+
+    // Mean of the last windowDays days, empty days included
+    final class MovingAverage implements ForecastModel {
+        private final int windowDays;
+
+        MovingAverage(int windowDays) {
+            this.windowDays = Math.max(1, windowDays);
+        }
+
+        @Override public String name() { return "moving-average(" + windowDays + "d)"; }
+
+        @Override
+        public double forecast(int[] series, int firstDow, int horizonDays) {
+            int n = Math.min(windowDays, series.length);
+            if (n == 0) return 0;
+            long sum = 0;
+            for (int i = series.length - n; i < series.length; i++) sum += series[i];
+            return (double) sum / n * horizonDays;
+        }
+    }
+
+    // Simple exponential smoothing: flat forecast at the smoothed level
+    final class ExponentialSmoothing implements ForecastModel {
+        private final double alpha;
+
+        ExponentialSmoothing(double alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override public String name() { return "exp-smoothing(" + alpha + ")"; }
+
+        @Override
+        public double forecast(int[] series, int firstDow, int horizonDays) {
+            return Math.max(0, level(series, alpha) * horizonDays);
+        }
+
+        static double level(int[] series, double alpha) {
+            if (series.length == 0) return 0;
+            double level = series[0];
+            for (int i = 1; i < series.length; i++) {
+                level = alpha * series[i] + (1 - alpha) * level;
+            }
+            return level;
+        }
+    }
+
+    // Additive Holt-Winters with a weekly season; falls back to exponential smoothing below two full weeks
+    final class HoltWinters implements ForecastModel {
+        private static final int PERIOD = 7;
+        private final double alpha;
+        private final double beta;
+        private final double gamma;
+
+        HoltWinters(double alpha, double beta, double gamma) {
+            this.alpha = alpha;
+            this.beta = beta;
+            this.gamma = gamma;
+        }
+
+        @Override public String name() { return "holt-winters(" + alpha + "," + beta + "," + gamma + ")"; }
+
+        @Override
+        public double forecast(int[] series, int firstDow, int horizonDays) {
+            int n = series.length;
+            if (n < 2 * PERIOD) {
+                return Math.max(0, ExponentialSmoothing.level(series, alpha) * horizonDays);
+            }
+            double mean1 = 0, mean2 = 0;
+            for (int i = 0; i < PERIOD; i++) {
+                mean1 += series[i];
+                mean2 += series[i + PERIOD];
+            }
+            mean1 /= PERIOD;
+            mean2 /= PERIOD;
+            double level = mean1;
+            double trend = (mean2 - mean1) / PERIOD;
+            // Seasonal offsets indexed by position in the series modulo the period; fixed size, no allocation
+            double s0 = series[0] - mean1, s1 = series[1] - mean1, s2 = series[2] - mean1, s3 = series[3] - mean1,
+                    s4 = series[4] - mean1, s5 = series[5] - mean1, s6 = series[6] - mean1;
+            for (int t = PERIOD; t < n; t++) {
+                int k = t % PERIOD;
+                double season = switch (k) {
+                    case 0 -> s0; case 1 -> s1; case 2 -> s2; case 3 -> s3; case 4 -> s4; case 5 -> s5; default -> s6;
+                };
+                double x = series[t];
+                double prevLevel = level;
+                level = alpha * (x - season) + (1 - alpha) * (level + trend);
+                trend = beta * (level - prevLevel) + (1 - beta) * trend;
+                double updated = gamma * (x - level) + (1 - gamma) * season;
+                switch (k) {
+                    case 0 -> s0 = updated; case 1 -> s1 = updated; case 2 -> s2 = updated; case 3 -> s3 = updated;
+                    case 4 -> s4 = updated; case 5 -> s5 = updated; default -> s6 = updated;
+                }
+            }
+            double total = 0;
+            for (int h = 1; h <= horizonDays; h++) {
+                int k = (n - 1 + h) % PERIOD;
+                double season = switch (k) {
+                    case 0 -> s0; case 1 -> s1; case 2 -> s2; case 3 -> s3; case 4 -> s4; case 5 -> s5; default -> s6;
+                };
+                total += Math.max(0, level + h * trend + season);
+            }
+            return total;
+        }
+    }
+
+    // Per-weekday mean over the last N weeks, summed over the weekdays in the horizon
+    final class DayOfWeek implements ForecastModel {
+        private final int weeks;
+
+        DayOfWeek(int weeks) {
+            this.weeks = Math.max(1, weeks);
+        }
+
+        @Override public String name() { return "day-of-week(" + weeks + "w)"; }
+
+        @Override
+        public double forecast(int[] series, int firstDow, int horizonDays) {
+            int n = series.length;
+            int span = Math.min(n, weeks * 7);
+            if (span == 0) return 0;
+            long[] sums = new long[7];
+            int[] counts = new int[7];
+            for (int i = n - span; i < n; i++) {
+                int dow = (firstDow + i) % 7;
+                sums[dow] += series[i];
+                counts[dow]++;
+            }
+            double total = 0;
+            for (int h = 0; h < horizonDays; h++) {
+                int dow = (firstDow + n + h) % 7;
+                if (counts[dow] > 0) total += (double) sums[dow] / counts[dow];
+            }
+            return total;
+        }
+    }
+}
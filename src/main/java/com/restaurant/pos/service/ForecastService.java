@@ -1,48 +1,71 @@
 package com.restaurant.pos.service;
 
-import com.restaurant.pos.db.Database;
-
-import java.sql.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.*;
 
 public class ForecastService {
     public static record Forecast(int menuItemId, String name, int forecastQty) {}
 
-    // Simple forecasting: moving average of last N months order quantities per item
-    public List<Forecast> forecastNextMonthSales(int monthsWindow) {
-        Map<Integer, String> idToName = new HashMap<>();
-        Map<Integer, List<Integer>> itemToMonthlyQty = new HashMap<>();
-
-        String sql = "SELECT mi.id, mi.name, STRFTIME('%Y-%m', o.created_at) AS ym, SUM(oi.quantity) AS qty " +
-                "FROM orders o JOIN order_item oi ON o.id = oi.order_id JOIN menu_item mi ON mi.id = oi.menu_item_id " +
-                "WHERE DATE(o.created_at) >= DATE('now', ?) " +
-                "GROUP BY mi.id, mi.name, ym";
-        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            YearMonth startYm = YearMonth.now().minusMonths(monthsWindow);
-            ps.setString(1, String.format("-%d months", monthsWindow));
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    int id = rs.getInt(1);
-                    idToName.put(id, rs.getString(2));
-                    int qty = rs.getInt(4);
-                    itemToMonthlyQty.computeIfAbsent(id, k -> new ArrayList<>()).add(qty);
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+    // Default next-month forecast computed in the background, so opening analytics does not pay for it
+    public static record Published(int monthsWindow, LocalDateTime computedAt, List<Forecast> forecasts) {
+        @Override
+        public String toString() {
+            return forecasts.size() + " items over " + monthsWindow + " months";
         }
+    }
+
+    private static volatile Published published;
+
+    private final ForecastEngine engine = new ForecastEngine();
+    private final MenuCatalog catalog = MenuCatalog.instance();
+
+    // Next calendar month from a zero-filled daily moving average over the last N months
+    public List<Forecast> forecastNextMonthSales(int monthsWindow) {
+        int historyDays = historyDaysFor(monthsWindow);
+        return forecast(ForecastModel.movingAverage(historyDays), historyDays, nextMonthDays());
+    }
+
+    public Published publishNextMonth(int monthsWindow) {
+        Published p = new Published(monthsWindow, LocalDateTime.now(), List.copyOf(forecastNextMonthSales(monthsWindow)));
+        published = p;
+        return p;
+    }
+
+    // Latest background forecast, or null before the first run
+    public static Published published() {
+        return published;
+    }
+
+    public static int historyDaysFor(int monthsWindow) {
+        LocalDate today = LocalDate.now();
+        return (int) (today.toEpochDay() - today.minusMonths(monthsWindow).toEpochDay());
+    }
+
+    public static int nextMonthDays() {
+        return YearMonth.now().plusMonths(1).lengthOfMonth();
+    }
+
+    public List<Forecast> forecast(ForecastModel model, int historyDays, int horizonDays) {
+        return forecast(model, historyDays, horizonDays, null);
+    }
+
+    // Runs any model over the last historyDays complete days (today excluded) for items that sold in that window.
+    // control may be null; cancelling it ends the job with a CancellationException.
+    public List<Forecast> forecast(ForecastModel model, int historyDays, int horizonDays, JobControl control) {
+        LocalDate to = LocalDate.now().minusDays(1);
+        ForecastEngine.History history = engine.loadHistory(to.minusDays(historyDays - 1L), to);
+        if (control != null) control.checkCancelled();
+        double[] predicted = engine.forecast(model, history, horizonDays, control);
 
-        List<Forecast> forecasts = new ArrayList<>();
-        for (Map.Entry<Integer, List<Integer>> e : itemToMonthlyQty.entrySet()) {
-            int id = e.getKey();
-            List<Integer> q = e.getValue();
-            int sum = q.stream().mapToInt(Integer::intValue).sum();
-            int avg = (int) Math.round(sum / Math.max(1.0, q.size()));
-            forecasts.add(new Forecast(id, idToName.getOrDefault(id, "Item " + id), avg));
+        List<Forecast> forecasts = new ArrayList<>(predicted.length);
+        int[] ids = history.itemIds();
+        for (int i = 0; i < ids.length; i++) {
+            MenuService.MenuItem mi = catalog.current().byId(ids[i]);
+            forecasts.add(new Forecast(ids[i], mi != null ? mi.name() : "Item " + ids[i], (int) Math.round(predicted[i])));
         }
         forecasts.sort(Comparator.comparingInt((Forecast f) -> -f.forecastQty));
         return forecasts;
     }
-}
\ No newline at end of file
+}
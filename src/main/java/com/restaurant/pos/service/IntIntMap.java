@@ -0,0 +1,52 @@
+package com.restaurant.pos.service;
+
+import java.util.Arrays;
+
+// Open-addressing int -> int map without boxing. Built once and then only read.
+final class IntIntMap {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    IntIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        mask = cap - 1;
+        Arrays.fill(keys, FREE);
+    }
+
+    void put(int key, int value) {
+        if (key == FREE) throw new IllegalArgumentException("Unsupported key " + key);
+        if (size * 2 >= keys.length) throw new IllegalStateException("IntIntMap is full");
+        int i = mix(key) & mask;
+        while (keys[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == FREE) size++;
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    int get(int key, int missing) {
+        int i = mix(key) & mask;
+        while (true) {
+            int k = keys[i];
+            if (k == key) return values[i];
+            if (k == FREE) return missing;
+            i = (i + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,59 +1,82 @@
 package com.restaurant.pos.service;
 
-import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
 
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class InventoryService {
     public static record StockLevel(int menuItemId, String name, int totalQuantity) {}
 
+    private static final String INSERT_BATCH = "INSERT INTO inventory_batch(menu_item_id, quantity, unit_cost_cents, expiry_date, created_at) VALUES (?,?,?,?,?)";
+    private static final String INSERT_LEDGER = "INSERT INTO inventory_ledger(menu_item_id, quantity_change, reason, ref_type, ref_id, created_at, created_ms) VALUES (?,?,?,?,?,?,?)";
+
+    private final StockProjection projection = StockProjection.instance();
+
+    // Served from the in-memory projection; no SQL after the first load
     public List<StockLevel> getStockLevels() {
-        String sql = "SELECT mi.id, mi.name, COALESCE(SUM(ib.quantity),0) AS qty " +
-                "FROM menu_item mi LEFT JOIN inventory_batch ib ON mi.id = ib.menu_item_id " +
-                "GROUP BY mi.id, mi.name ORDER BY mi.name";
-        List<StockLevel> levels = new ArrayList<>();
-        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                levels.add(new StockLevel(rs.getInt(1), rs.getString(2), rs.getInt(3)));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        return levels;
+        return projection.levels();
+    }
+
+    public List<StockProjection.Drift> checkStockProjection() {
+        return projection.check();
     }
 
     public void deductInventoryFIFO(int menuItemId, int quantity, Connection conn) throws SQLException {
-        String select = "SELECT id, quantity FROM inventory_batch WHERE menu_item_id = ? AND quantity > 0 ORDER BY expiry_date NULLS LAST, id";
-        try (PreparedStatement ps = conn.prepareStatement(select, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE)) {
-            ps.setInt(1, menuItemId);
-            try (ResultSet rs = ps.executeQuery()) {
-                int remaining = quantity;
-                while (remaining > 0 && rs.next()) {
-                    int batchQty = rs.getInt("quantity");
-                    int consume = Math.min(batchQty, remaining);
-                    rs.updateInt("quantity", batchQty - consume);
-                    rs.updateRow();
-                    remaining -= consume;
-                }
-                if (remaining > 0) {
-                    throw new SQLException("Insufficient stock for menu_item_id=" + menuItemId);
-                }
-            }
+        deductInventoryFIFO(Map.of(menuItemId, quantity), conn);
+    }
+
+    // Deducts several items in one set-based pass; see FifoDeduction
+    public void deductInventoryFIFO(Map<Integer, Integer> quantities, Connection conn) throws SQLException {
+        FifoDeduction.deduct(quantities, conn);
+    }
+
+    // Call after the transaction holding a deduction has committed, before releasing the writer connection
+    void onDeductionCommitted(Map<Integer, Integer> quantities, Connection conn) throws SQLException {
+        Map<Integer, Integer> deltas = new HashMap<>();
+        for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+            deltas.put(e.getKey(), -e.getValue());
         }
+        projection.applyCommitted(deltas, conn);
     }
 
+    // The delivery goes into the ledger with the batch, so replaying the ledger sees stock coming in as well as out
     public void addStockBatch(int menuItemId, int quantity, int unitCostCents, LocalDate expiryDate) {
-        String sql = "INSERT INTO inventory_batch(menu_item_id, quantity, unit_cost_cents, expiry_date, created_at) VALUES (?,?,?,?,?)";
-        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, menuItemId);
-            ps.setInt(2, quantity);
-            ps.setInt(3, unitCostCents);
-            ps.setString(4, expiryDate != null ? expiryDate.toString() : null);
-            ps.setString(5, LocalDate.now().toString());
-            ps.executeUpdate();
+        try {
+            Transactions.write(conn -> {
+                Instant instant = Instant.now();
+                LocalDateTime ts = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+                long batchId;
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_BATCH, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, menuItemId);
+                    ps.setInt(2, quantity);
+                    ps.setInt(3, unitCostCents);
+                    ps.setString(4, expiryDate != null ? expiryDate.toString() : null);
+                    ps.setString(5, ts.toLocalDate().toString());
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (!keys.next()) throw new SQLException("No batch id generated");
+                        batchId = keys.getLong(1);
+                    }
+                }
+                try (PreparedStatement led = conn.prepareStatement(INSERT_LEDGER)) {
+                    led.setInt(1, menuItemId);
+                    led.setInt(2, quantity);
+                    led.setString(3, "delivery");
+                    led.setString(4, "batch");
+                    led.setLong(5, batchId);
+                    led.setString(6, ts.toString());
+                    led.setLong(7, instant.toEpochMilli());
+                    led.executeUpdate();
+                }
+                return batchId;
+            }, (batchId, conn) -> projection.applyCommitted(Map.of(menuItemId, quantity), conn));
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,50 @@
+package com.restaurant.pos.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleConsumer;
+
+// Progress and cancellation shared between a long-running job and whoever started it
+public final class JobControl {
+    private final AtomicLong done = new AtomicLong();
+    private final DoubleConsumer listener;
+    private volatile long total;
+    private volatile boolean cancelled;
+
+    public JobControl() {
+        this(p -> {});
+    }
+
+    // listener receives progress in [0, 1] from the worker thread
+    public JobControl(DoubleConsumer listener) {
+        this.listener = listener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public double progress() {
+        long t = total;
+        return t <= 0 ? 0 : Math.min(1.0, (double) done.get() / t);
+    }
+
+    void start(long totalUnits) {
+        done.set(0);
+        total = totalUnits;
+        listener.accept(0);
+    }
+
+    void advance(long units) {
+        done.addAndGet(units);
+        listener.accept(progress());
+    }
+
+    void checkCancelled() {
+        if (cancelled) throw new CancellationException("Job cancelled");
+    }
+}
@@ -0,0 +1,216 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process scheduler for background work. One timer thread decides when jobs are due; they run on a small
+ * bounded pool so they can never crowd out checkout. A job never overlaps itself: an occurrence that comes due
+ * while the previous run is still going is skipped. Due jobs whose {@link RunPolicy} does not allow them yet
+ * are re-checked every minute until the next occurrence. Every run is written to job_run; a task returning
+ * null means it found nothing to do, and such runs are not recorded.
+ */
+public final class JobScheduler implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(JobScheduler.class);
+
+    public static record JobRun(long id, String job, String startedAt, String finishedAt, String status, String detail) {}
+
+    private static final int WORKERS = 2;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final Duration DEFER_POLL = Duration.ofMinutes(1);
+    private static final int DETAIL_MAX = 500;
+
+    private static final String INSERT_RUN = "INSERT INTO job_run(job_name, started_at, finished_at, status, detail) VALUES (?,?,?,?,?)";
+    private static final String RECENT_RUNS = "SELECT id, job_name, started_at, finished_at, status, detail FROM job_run ORDER BY id DESC LIMIT ?";
+
+    private static final class Job {
+        final String name;
+        final Schedule schedule;
+        final RunPolicy policy;
+        final Callable<?> task;
+        final AtomicBoolean running = new AtomicBoolean();
+        // Only touched by the timer thread
+        ZonedDateTime due;
+
+        Job(String name, Schedule schedule, RunPolicy policy, Callable<?> task) {
+            this.name = name;
+            this.schedule = schedule;
+            this.policy = policy;
+            this.task = task;
+        }
+    }
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor workers;
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    public JobScheduler() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "job-scheduler"));
+        AtomicInteger n = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> daemon(r, "job-worker-" + n.incrementAndGet()));
+    }
+
+    public void register(String name, Schedule schedule, RunPolicy policy, Callable<?> task) {
+        Job job = new Job(name, schedule, policy, task);
+        if (jobs.putIfAbsent(name, job) != null) throw new IllegalArgumentException("Job already registered: " + name);
+        if (started) timer.execute(() -> arm(job, ZonedDateTime.now()));
+    }
+
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        ZonedDateTime now = ZonedDateTime.now();
+        for (Job job : jobs.values()) {
+            timer.execute(() -> arm(job, now));
+        }
+    }
+
+    // Runs the job right away regardless of its policy; still refuses to overlap a run already in progress
+    public CompletableFuture<Object> runNow(String name) {
+        Job job = jobs.get(name);
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        if (job == null) {
+            result.completeExceptionally(new IllegalArgumentException("Unknown job: " + name));
+        } else {
+            launch(job, result);
+        }
+        return result;
+    }
+
+    public List<JobRun> recentRuns(int limit) {
+        List<JobRun> runs = new ArrayList<>();
+        try (Connection conn = Database.getReadConnection(); PreparedStatement ps = conn.prepareStatement(RECENT_RUNS)) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    runs.add(new JobRun(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                            rs.getString(5), rs.getString(6)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return runs;
+    }
+
+    // Stops scheduling and waits briefly for running jobs to finish
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Background jobs still running at shutdown");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void arm(Job job, ZonedDateTime after) {
+        job.due = job.schedule.next(after);
+        fireAt(job, job.due);
+    }
+
+    private void fireAt(Job job, ZonedDateTime at) {
+        if (closed) return;
+        long delay = Math.max(0, Duration.between(ZonedDateTime.now(), at).toMillis());
+        timer.schedule(() -> fire(job), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void fire(Job job) {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime next = job.schedule.next(job.due);
+        if (!next.isAfter(now)) next = job.schedule.next(now); // missed occurrences are not replayed
+        if (!job.policy.allows(now.toLocalTime(), CheckoutActivity.ordersLastMinute())) {
+            ZonedDateTime retry = now.plus(DEFER_POLL);
+            if (retry.isBefore(next)) {
+                fireAt(job, retry);
+                return;
+            }
+            record(job.name, LocalDateTime.now(), "SKIPPED", "Deferred past next occurrence");
+        } else {
+            launch(job, null);
+        }
+        job.due = next;
+        fireAt(job, next);
+    }
+
+    private void launch(Job job, CompletableFuture<Object> result) {
+        if (!job.running.compareAndSet(false, true)) {
+            record(job.name, LocalDateTime.now(), "SKIPPED", "Previous run still in progress");
+            if (result != null) result.completeExceptionally(new IllegalStateException(job.name + " is already running"));
+            return;
+        }
+        try {
+            workers.execute(() -> execute(job, result));
+        } catch (RejectedExecutionException e) {
+            job.running.set(false);
+            record(job.name, LocalDateTime.now(), "SKIPPED", "Job executor saturated");
+            if (result != null) result.completeExceptionally(e);
+        }
+    }
+
+    private void execute(Job job, CompletableFuture<Object> result) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        try {
+            Object out = job.task.call();
+            if (out != null) record(job.name, startedAt, "OK", out.toString());
+            if (result != null) result.complete(out);
+        } catch (Throwable t) {
+            log.error("Background job {} failed", job.name, t);
+            record(job.name, startedAt, "FAILED", String.valueOf(t));
+            if (result != null) result.completeExceptionally(t);
+        } finally {
+            job.running.set(false);
+        }
+    }
+
+    private void record(String name, LocalDateTime startedAt, String status, String detail) {
+        if (detail != null && detail.length() > DETAIL_MAX) detail = detail.substring(0, DETAIL_MAX);
+        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(INSERT_RUN)) {
+            ps.setString(1, name);
+            ps.setString(2, startedAt.toString());
+            ps.setString(3, LocalDateTime.now().toString());
+            ps.setString(4, status);
+            ps.setString(5, detail);
+            ps.executeUpdate();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Could not record {} run of {}", status, name, e);
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
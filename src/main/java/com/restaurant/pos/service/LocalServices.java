@@ -0,0 +1,138 @@
+package com.restaurant.pos.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * In-process {@link AsyncServices} over the local database. Every call runs on a virtual thread, so a slow disk or a
+ * locked database only delays the returned future, never the calling thread.
+ */
+public final class LocalServices implements AsyncServices {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final MenuService menuService = new MenuService();
+    private final OrderService orderService = new OrderService();
+    private final InventoryService inventoryService = new InventoryService();
+    private final ForecastService forecastService = new ForecastService();
+    private final PromoService promoService = new PromoService();
+    private final OrderHistoryService orderHistoryService = new OrderHistoryService();
+    private final List<OrderEvents.Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompletableFuture<List<MenuService.MenuItem>> listActiveMenuItems() {
+        return supply(menuService::listActiveMenuItems);
+    }
+
+    @Override
+    public MenuService.MenuItem findBySku(String sku) {
+        return menuService.findBySku(sku);
+    }
+
+    @Override
+    public PromoPricing.Snapshot promoPricing() {
+        return PromoPricing.instance().current();
+    }
+
+    // Goes through the group-commit writer, so concurrent checkouts share commits
+    @Override
+    public CompletableFuture<OrderService.OrderResult> placeOrder(List<OrderService.CartLine> cart, String paymentMethod) {
+        return orderService.submitOrder(cart, paymentMethod);
+    }
+
+    @Override
+    public CompletableFuture<OrderHistoryService.Page> orderHistoryPage(OrderHistoryService.Filter filter,
+                                                                     OrderHistoryService.Cursor after, int limit) {
+        return supply(() -> orderHistoryService.page(filter, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<String> loadReceipt(int orderId) {
+        return supply(() -> orderService.loadReceipt(orderId));
+    }
+
+    // DROP, so a busy screen can never hold back checkouts; a lapped subscriber reloads instead
+    @Override
+    public OrderEvents.Subscription subscribeOrders(String name, OrderEvents.Handler handler) {
+        OrderEvents.Subscription s = OrderEvents.instance().subscribe(name, OrderEvents.Overflow.DROP, handler);
+        subscriptions.add(s);
+        return s;
+    }
+
+    @Override
+    public CompletableFuture<List<InventoryService.StockLevel>> getStockLevels() {
+        return supply(inventoryService::getStockLevels);
+    }
+
+    @Override
+    public CompletableFuture<Void> addStockBatch(int menuItemId, int quantity, int unitCostCents, LocalDate expiryDate) {
+        return run(() -> inventoryService.addStockBatch(menuItemId, quantity, unitCostCents, expiryDate));
+    }
+
+    @Override
+    public Job<List<ForecastService.Forecast>> forecast(String model, int historyDays, int horizonDays, JobControl control) {
+        ForecastModel m = ForecastModel.named(model, historyDays);
+        return job(control, () -> forecastService.forecast(m, historyDays, horizonDays, control));
+    }
+
+    @Override
+    public ForecastService.Published publishedForecast() {
+        return ForecastService.published();
+    }
+
+    @Override
+    public CompletableFuture<SalesFacts.HourlySales> hourlySales(LocalDate from, LocalDate to) {
+        return supply(() -> SalesFacts.instance().hourly(from, to));
+    }
+
+    @Override
+    public CompletableFuture<PromoService.PromoRunReport> generateExpiryBasedPromos(int daysBeforeExpiry, double discountPercent) {
+        return supply(() -> promoService.generateExpiryBasedPromos(daysBeforeExpiry, discountPercent));
+    }
+
+    @Override
+    public CompletableFuture<List<PromoService.Promo>> listActivePromos() {
+        return supply(promoService::listActivePromos);
+    }
+
+    // Drains queued checkouts, then stops accepting work and event delivery
+    @Override
+    public void close() {
+        orderService.shutdown();
+        for (OrderEvents.Subscription s : subscriptions) {
+            s.close();
+        }
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, executor);
+    }
+
+    private CompletableFuture<Void> run(Runnable work) {
+        return CompletableFuture.runAsync(work, executor);
+    }
+
+    private <T> Job<T> job(JobControl control, Supplier<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(work.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        // Interrupts the worker if the caller cancels the future directly
+        result.whenComplete((r, t) -> {
+            if (result.isCancelled()) {
+                control.cancel();
+                task.cancel(true);
+            }
+        });
+        return new Job<>(result, control);
+    }
+}
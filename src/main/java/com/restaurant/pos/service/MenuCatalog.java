@@ -0,0 +1,129 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, versioned snapshot of menu_item. Lookups by id or SKU and the sorted menu view never touch the
+ * database; the snapshot is rebuilt and swapped in one volatile write when menu_version (bumped by triggers
+ * on menu_item) moves.
+ */
+public final class MenuCatalog {
+    private static final Logger log = LoggerFactory.getLogger(MenuCatalog.class);
+
+    private static final MenuCatalog INSTANCE = new MenuCatalog();
+
+    // Load order is category, name, which the active view keeps
+    private static final String LOAD_SQL = "SELECT id, name, category, price_cents, sku, active FROM menu_item ORDER BY category, name";
+    private static final String VERSION_SQL = "SELECT version FROM menu_version WHERE id = 1";
+
+    public static final class Snapshot {
+        private final long version;
+        private final MenuService.MenuItem[] items;
+        private final IntIntMap indexById;
+        private final Map<String, Integer> indexBySku;
+        private final List<MenuService.MenuItem> active;
+
+        private Snapshot(long version, List<MenuService.MenuItem> loaded) {
+            this.version = version;
+            this.items = loaded.toArray(new MenuService.MenuItem[0]);
+            this.indexById = new IntIntMap(items.length);
+            this.indexBySku = new HashMap<>(items.length * 2);
+            List<MenuService.MenuItem> act = new ArrayList<>();
+            for (int i = 0; i < items.length; i++) {
+                MenuService.MenuItem mi = items[i];
+                indexById.put(mi.id(), i);
+                if (mi.active()) {
+                    act.add(mi);
+                    if (mi.sku() != null) indexBySku.put(mi.sku(), i);
+                }
+            }
+            this.active = List.copyOf(act);
+        }
+
+        public long version() {
+            return version;
+        }
+
+        // Includes inactive items so historical orders still resolve
+        public MenuService.MenuItem byId(int id) {
+            int i = indexById.get(id, -1);
+            return i < 0 ? null : items[i];
+        }
+
+        // Active items only
+        public MenuService.MenuItem bySku(String sku) {
+            Integer i = indexBySku.get(sku);
+            return i == null ? null : items[i];
+        }
+
+        // Active items ordered by category, name
+        public List<MenuService.MenuItem> activeItems() {
+            return active;
+        }
+    }
+
+    private volatile Snapshot snapshot;
+
+    private MenuCatalog() {}
+
+    public static MenuCatalog instance() {
+        return INSTANCE;
+    }
+
+    public Snapshot current() {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        synchronized (this) {
+            if (snapshot == null) refresh(true);
+            return snapshot;
+        }
+    }
+
+    // One single-row read; rebuilds only when menu_item has changed since the current snapshot
+    public synchronized boolean refreshIfChanged() {
+        return refresh(false);
+    }
+
+    private boolean refresh(boolean force) {
+        try (Connection conn = Database.getReadConnection()) {
+            // Version and rows come from the same read transaction, so they always match
+            conn.setAutoCommit(false);
+            try {
+                long version = readVersion(conn);
+                Snapshot s = snapshot;
+                if (!force && s != null && s.version == version) return false;
+                List<MenuService.MenuItem> loaded = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL); ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        loaded.add(new MenuService.MenuItem(rs.getInt(1), rs.getString(2), rs.getString(3),
+                                rs.getInt(4), rs.getString(5), rs.getInt(6) == 1));
+                    }
+                }
+                snapshot = new Snapshot(version, loaded);
+                log.debug("Menu catalog v{} loaded with {} items", version, loaded.size());
+                return true;
+            } finally {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long readVersion(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(VERSION_SQL); ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -1,34 +1,27 @@
 package com.restaurant.pos.service;
 
-import java.sql.*;
-import java.util.ArrayList;
 import java.util.List;
 
-import com.restaurant.pos.db.Database;
-
 public class MenuService {
     public static record MenuItem(int id, String name, String category, int priceCents, String sku, boolean active) {}
 
+    private final MenuCatalog catalog = MenuCatalog.instance();
+
+    // Served from the catalog snapshot; call refreshCatalog() to pick up menu_item edits
     public List<MenuItem> listActiveMenuItems() {
-        List<MenuItem> items = new ArrayList<>();
-        try (Connection conn = Database.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "SELECT id, name, category, price_cents, sku, active FROM menu_item WHERE active = 1 ORDER BY category, name")) {
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    items.add(new MenuItem(
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getString("category"),
-                            rs.getInt("price_cents"),
-                            rs.getString("sku"),
-                            rs.getInt("active") == 1
-                    ));
-                }
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-        return items;
+        return catalog.current().activeItems();
+    }
+
+    public MenuItem findById(int id) {
+        return catalog.current().byId(id);
+    }
+
+    // For barcode scans; returns null for unknown or inactive SKUs
+    public MenuItem findBySku(String sku) {
+        return catalog.current().bySku(sku);
+    }
+
+    public boolean refreshCatalog() {
+        return catalog.refreshIfChanged();
     }
 }
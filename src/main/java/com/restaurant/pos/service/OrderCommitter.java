@@ -0,0 +1,173 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Transactions;
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Single writer thread that drains submitted orders and commits them in groups, one transaction per group.
+final class OrderCommitter {
+    private static final Logger log = LoggerFactory.getLogger(OrderCommitter.class);
+
+    private record Pending(List<OrderService.CartLine> cart, String paymentMethod,
+                           CompletableFuture<OrderService.OrderResult> future, long submittedNanos) {}
+
+    private static final Pending POISON = new Pending(List.of(), "", null, 0);
+
+    private static final LatencyHistogram QUEUE_WAIT = Metrics.histogram("checkout.queue_wait");
+    private static final LatencyHistogram GROUP_COMMIT = Metrics.histogram("checkout.group_commit");
+    private static final LatencyHistogram SUBMIT_TO_RESULT = Metrics.histogram("checkout.submit_to_result");
+
+    private final OrderService orders;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean accepting = true;
+
+    OrderCommitter(OrderService orders, int maxBatchSize, long maxLingerMillis) {
+        this.orders = orders;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLingerMillis));
+        this.thread = new Thread(this::run, "order-committer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    CompletableFuture<OrderService.OrderResult> submit(List<OrderService.CartLine> cart, String paymentMethod) {
+        CompletableFuture<OrderService.OrderResult> future = new CompletableFuture<>();
+        if (!accepting) {
+            future.completeExceptionally(new IllegalStateException("Order committer is shut down"));
+            return future;
+        }
+        queue.add(new Pending(cart, paymentMethod, future, System.nanoTime()));
+        return future;
+    }
+
+    void shutdown() {
+        accepting = false;
+        queue.add(POISON);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                Pending first = queue.take();
+                if (first == POISON) break;
+                batch.add(first);
+                // Orders queued behind a commit in flight join the next one for free; once the queue is drained the
+                // writer only lingers while orders keep arriving, for one inter-arrival gap, never past maxLinger
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll();
+                    if (next == null) {
+                        int n = batch.size();
+                        if (n < 2) break;
+                        long gap = batch.get(n - 1).submittedNanos() - batch.get(n - 2).submittedNanos();
+                        long wait = Math.min(gap, deadline - System.nanoTime());
+                        if (wait <= 0) break;
+                        next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                    }
+                    if (next == POISON) {
+                        stop = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop = true;
+            } finally {
+                batch.clear();
+            }
+        }
+        // Anything left after shutdown still gets committed
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.remove(POISON);
+        for (int i = 0; i < rest.size(); i += maxBatchSize) {
+            commit(rest.subList(i, Math.min(rest.size(), i + maxBatchSize)));
+        }
+    }
+
+    // Outcome of one attempt at a batch: per order, either the written rows or the failure that rolled them back
+    private record Attempt(OrderService.WrittenOrder[] results, Exception[] failures, long commitStart) {}
+
+    private void commit(List<Pending> batch) {
+        long start = System.nanoTime();
+        for (Pending p : batch) {
+            QUEUE_WAIT.record(start - p.submittedNanos());
+        }
+        Attempt done;
+        // Set once the batch has committed; from then on its orders are stored whatever fails afterwards
+        Attempt[] committed = new Attempt[1];
+        try {
+            // A busy database reruns the whole batch; per-order failures are only final once it commits
+            done = Transactions.write(conn -> {
+                OrderService.WrittenOrder[] results = new OrderService.WrittenOrder[batch.size()];
+                Exception[] failures = new Exception[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending p = batch.get(i);
+                    Savepoint sp = conn.setSavepoint();
+                    try {
+                        results[i] = orders.writeOrder(conn, p.cart(), p.paymentMethod());
+                        conn.releaseSavepoint(sp);
+                    } catch (Exception e) {
+                        // Only a busy database reruns the batch; anything else fails just this order
+                        if (e instanceof SQLException se && Transactions.isBusy(se)) throw se;
+                        conn.rollback(sp);
+                        conn.releaseSavepoint(sp);
+                        failures[i] = e;
+                    }
+                }
+                return new Attempt(results, failures, System.nanoTime());
+            }, (attempt, conn) -> {
+                committed[0] = attempt;
+                GROUP_COMMIT.recordSince(attempt.commitStart());
+                // Never throws: a committed order must not be reported as failed, or it gets rung up again
+                orders.afterCommit(Arrays.asList(attempt.results()), conn);
+            });
+        } catch (Exception e) {
+            if (committed[0] != null) {
+                log.error("Group commit of {} orders failed after committing; the orders are stored", batch.size(), e);
+                done = committed[0];
+            } else {
+                log.error("Group commit of {} orders failed", batch.size(), e);
+                for (Pending p : batch) {
+                    p.future().completeExceptionally(e);
+                }
+                return;
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Exception failure = done.failures()[i];
+            if (failure != null) {
+                batch.get(i).future().completeExceptionally(
+                        failure instanceof RuntimeException ? failure : new RuntimeException(failure));
+            } else {
+                batch.get(i).future().complete(done.results()[i].result());
+            }
+            SUBMIT_TO_RESULT.recordSince(batch.get(i).submittedNanos());
+        }
+    }
+}
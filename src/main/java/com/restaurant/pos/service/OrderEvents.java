@@ -0,0 +1,294 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Committed orders as an in-process event stream. Every order is published once its transaction has committed, in
+ * commit order, into a preallocated ring of {@value #CAPACITY} slots; each subscriber has its own thread and its own
+ * sequence into the ring and drains whatever has been published since it last looked, up to a batch at a time.
+ * Publishing takes no lock: it claims a sequence, fills the slot, advances the cursor and wakes subscribers that are
+ * parked waiting for it.
+ * <p>
+ * A {@link Overflow#BLOCK} subscriber applies backpressure: the publisher waits rather than overwrite an event that
+ * subscriber has not read, and since orders are published while the writer connection is held, a slow BLOCK handler
+ * holds up checkouts. A {@link Overflow#DROP} subscriber never holds the publisher back; when it falls a whole ring
+ * behind it is told how many events it missed and should reload from the database. Handlers must not place orders.
+ * <p>
+ * Only orders committed by this process are published; another process sharing the database is not seen here.
+ */
+public final class OrderEvents {
+    private static final Logger log = LoggerFactory.getLogger(OrderEvents.class);
+
+    /**
+     * One committed order. sequence is the position in the stream, so a subscriber can tell a gap; deducted is the
+     * quantity taken from stock per menu item, which may be less than the lines for an order sold short.
+     */
+    public static record OrderEvent(long sequence, int orderId, String createdAt, long createdMs,
+                                    int subtotalCents, int discountCents, int taxCents, int totalCents,
+                                    List<OrderService.CartLine> lines, Map<Integer, Integer> deducted) {}
+
+    public enum Overflow { BLOCK, DROP }
+
+    public interface Handler {
+        // Called on the subscriber's thread with events in sequence order; the list may be kept
+        void onEvents(List<OrderEvent> batch) throws Exception;
+
+        // A DROP subscriber was lapped and missed count events between two batches
+        default void onMissed(long count) {}
+    }
+
+    // lag is how many published events the subscriber has not yet handled
+    public static record SubscriberStats(String name, Overflow overflow, long sequence, long lag,
+                                         long delivered, long batches, long missed) {}
+
+    public static final int CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    private static final int MASK = CAPACITY - 1;
+    // Parked subscribers are woken by the publisher; the timeout only bounds a missed wakeup
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long BACKPRESSURE_WARN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final LatencyHistogram BACKPRESSURE = Metrics.histogram("order_events.backpressure");
+
+    private static final OrderEvents INSTANCE = new OrderEvents();
+
+    private final OrderEvent[] ring = new OrderEvent[CAPACITY];
+    private final long[] publishedNanos = new long[CAPACITY];
+    // Highest sequence handed to a publisher, and highest one whose slot is filled and visible to subscribers
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong cursor = new AtomicLong(-1);
+    // Replaced, never mutated, so the publisher iterates it without a lock
+    private volatile Subscriber[] subscribers = new Subscriber[0];
+
+    private OrderEvents() {}
+
+    public static OrderEvents instance() {
+        return INSTANCE;
+    }
+
+    public Subscription subscribe(String name, Overflow overflow, Handler handler) {
+        return subscribe(name, overflow, DEFAULT_MAX_BATCH, handler);
+    }
+
+    // Starts after the newest event published so far
+    public synchronized Subscription subscribe(String name, Overflow overflow, int maxBatch, Handler handler) {
+        Subscriber s = new Subscriber(name, overflow, Math.max(1, Math.min(CAPACITY, maxBatch)), handler);
+        s.sequence = cursor.get();
+        Subscriber[] next = Arrays.copyOf(subscribers, subscribers.length + 1);
+        next[next.length - 1] = s;
+        subscribers = next;
+        s.thread.start();
+        return new Subscription(name, s);
+    }
+
+    // For a client that cannot see commits: nothing is ever delivered and closing it does nothing
+    public static Subscription none(String name) {
+        return INSTANCE.new Subscription(name, null);
+    }
+
+    public List<SubscriberStats> stats() {
+        long published = cursor.get();
+        List<SubscriberStats> stats = new ArrayList<>();
+        for (Subscriber s : subscribers) {
+            long seq = s.sequence;
+            stats.add(new SubscriberStats(s.name, s.overflow, seq, published - seq, s.delivered, s.batches, s.missed));
+        }
+        return stats;
+    }
+
+    public void logSummary() {
+        for (SubscriberStats s : stats()) {
+            log.info("Order events to {} ({}): {} delivered in {} batches, {} missed, {} behind",
+                    s.name(), s.overflow(), s.delivered(), s.batches(), s.missed(), s.lag());
+        }
+    }
+
+    // Called after commit with the writer connection still held, which keeps events in commit order
+    void publish(OrderService.WrittenOrder written) {
+        OrderService.OrderResult r = written.result();
+        long seq = claimed.incrementAndGet();
+        awaitCapacity(seq);
+        int slot = (int) (seq & MASK);
+        ring[slot] = new OrderEvent(seq, r.orderId, written.createdAt(), written.createdMs(), r.subtotalCents,
+                r.discountCents, r.taxCents, r.totalCents, written.lines(), Map.copyOf(written.deducted()));
+        publishedNanos[slot] = System.nanoTime();
+        // Publishers only overlap if someone publishes outside the writer; even then the cursor moves in order
+        while (cursor.get() != seq - 1) Thread.onSpinWait();
+        cursor.set(seq);
+        for (Subscriber s : subscribers) {
+            if (s.waiting) LockSupport.unpark(s.thread);
+        }
+    }
+
+    // Waits until no BLOCK subscriber still needs the event that seq would overwrite
+    private void awaitCapacity(long seq) {
+        long wrap = seq - CAPACITY;
+        if (wrap < 0) return;
+        long start = 0;
+        boolean warned = false;
+        while (true) {
+            Subscriber slowest = null;
+            for (Subscriber s : subscribers) {
+                if (s.overflow == Overflow.BLOCK && s.sequence < wrap && (slowest == null || s.sequence < slowest.sequence)) {
+                    slowest = s;
+                }
+            }
+            if (slowest == null) break;
+            if (start == 0) start = System.nanoTime();
+            if (!warned && System.nanoTime() - start > BACKPRESSURE_WARN_NANOS) {
+                log.warn("Order events are waiting on subscriber {}, {} events behind", slowest.name, seq - slowest.sequence);
+                warned = true;
+            }
+            LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+        }
+        if (start != 0) BACKPRESSURE.recordSince(start);
+    }
+
+    private synchronized void remove(Subscriber s) {
+        List<Subscriber> next = new ArrayList<>(Arrays.asList(subscribers));
+        next.remove(s);
+        subscribers = next.toArray(new Subscriber[0]);
+    }
+
+    public final class Subscription implements AutoCloseable {
+        private final String name;
+        // null for a subscription that never delivers anything
+        private final Subscriber subscriber;
+
+        private Subscription(String name, Subscriber subscriber) {
+            this.name = name;
+            this.subscriber = subscriber;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        // Stops delivery after the batch in progress; events not yet handled are dropped
+        @Override
+        public void close() {
+            Subscriber s = subscriber;
+            if (s == null || !s.running) return;
+            s.running = false;
+            remove(s);
+            LockSupport.unpark(s.thread);
+            if (Thread.currentThread() != s.thread) {
+                try {
+                    s.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private final class Subscriber implements Runnable {
+        final String name;
+        final Overflow overflow;
+        final int maxBatch;
+        final Handler handler;
+        final Thread thread;
+        // Publish-to-handler delay; together with lag in stats() shows how far behind the subscriber runs
+        final LatencyHistogram delay;
+
+        // Last sequence handled or skipped; written only by this subscriber's thread
+        volatile long sequence;
+        volatile boolean waiting;
+        volatile boolean running = true;
+        volatile long delivered;
+        volatile long batches;
+        volatile long missed;
+
+        Subscriber(String name, Overflow overflow, int maxBatch, Handler handler) {
+            this.name = name;
+            this.overflow = overflow;
+            this.maxBatch = maxBatch;
+            this.handler = handler;
+            this.delay = Metrics.histogram("order_events." + name + ".delay");
+            this.thread = new Thread(this, "order-events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<OrderEvent> batch = new ArrayList<>(maxBatch);
+            while (running) {
+                long next = sequence + 1;
+                long available = cursor.get();
+                if (available < next) {
+                    await(next);
+                    continue;
+                }
+                long end = Math.min(available, next + maxBatch - 1);
+                long lapped = -1;
+                long now = System.nanoTime();
+                for (long seq = next; seq <= end; seq++) {
+                    int slot = (int) (seq & MASK);
+                    OrderEvent e = ring[slot];
+                    long publishedAt = publishedNanos[slot];
+                    // Overwritten by a newer event: only a DROP subscriber, or one registering mid-wrap, gets here
+                    if (e == null || e.sequence() != seq) {
+                        lapped = seq;
+                        break;
+                    }
+                    batch.add(e);
+                    delay.record(now - publishedAt);
+                }
+                if (!batch.isEmpty()) deliver(batch);
+                if (lapped >= 0) {
+                    // Resume half a ring behind the publisher so the next read is not overwritten straight away
+                    long resume = Math.max(lapped, cursor.get() - CAPACITY / 2);
+                    skip(resume - lapped);
+                    sequence = resume - 1;
+                } else {
+                    sequence = end;
+                }
+            }
+        }
+
+        private void deliver(List<OrderEvent> batch) {
+            try {
+                handler.onEvents(List.copyOf(batch));
+            } catch (Exception e) {
+                log.error("Order event subscriber {} failed on events {}..{}", name,
+                        batch.get(0).sequence(), batch.get(batch.size() - 1).sequence(), e);
+            }
+            delivered += batch.size();
+            batches++;
+            batch.clear();
+        }
+
+        private void skip(long count) {
+            missed += count;
+            log.warn("Order event subscriber {} fell behind and missed {} events", name, count);
+            try {
+                handler.onMissed(count);
+            } catch (Exception e) {
+                log.error("Order event subscriber {} failed to resync", name, e);
+            }
+        }
+
+        // The publisher reads waiting after moving the cursor, so re-checking the cursor here cannot miss a wakeup
+        private void await(long next) {
+            waiting = true;
+            try {
+                if (running && cursor.get() < next) LockSupport.parkNanos(this, PARK_NANOS);
+            } finally {
+                waiting = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Archives;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Timestamps;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyset-paginated order history, newest first. Each page continues strictly after the (created_ms, id) of the
+ * last row of the previous page, so page cost does not depend on how deep the caller has scrolled. Pages run on
+ * from the hot database into archived months, attaching only the months the date filter and cursor still cover.
+ */
+public class OrderHistoryService {
+    public static record OrderSummary(int id, String createdAt, int totalCents) {}
+
+    // Any field may be null; from/to are inclusive days, totals are in cents
+    public static record Filter(LocalDate from, LocalDate to, Integer minTotalCents, Integer maxTotalCents) {
+        public static final Filter NONE = new Filter(null, null, null, null);
+
+        // The same test page() applies in SQL, for orders that arrive as events
+        public boolean matches(long createdMs, int totalCents) {
+            if (from != null && createdMs < Timestamps.startOfDay(from)) return false;
+            if (to != null && createdMs >= Timestamps.startOfDay(to.plusDays(1))) return false;
+            if (minTotalCents != null && totalCents < minTotalCents) return false;
+            return maxTotalCents == null || totalCents <= maxTotalCents;
+        }
+    }
+
+    // Position after the last row of a page; null starts from the newest order
+    public static record Cursor(long createdMs, int id) {}
+
+    public static record Page(List<OrderSummary> rows, Cursor next) {
+        public boolean last() {
+            return next == null;
+        }
+    }
+
+    // The hot read inserts its lower bound right after this, ahead of the other conditions
+    private static final String WHERE = " WHERE 1=1";
+
+    public Page page(Filter filter, Cursor after, int limit) {
+        StringBuilder where = new StringBuilder(WHERE);
+        List<Object> args = new ArrayList<>();
+        long fromMs = Long.MIN_VALUE;
+        long untilMs = Long.MAX_VALUE;
+        if (after != null) {
+            where.append(" AND (created_ms, id) < (?, ?)");
+            args.add(after.createdMs());
+            args.add(after.id());
+        }
+        if (filter.from() != null) {
+            fromMs = Timestamps.startOfDay(filter.from());
+            where.append(" AND created_ms >= ?");
+            args.add(fromMs);
+        }
+        if (filter.to() != null) {
+            untilMs = Timestamps.startOfDay(filter.to().plusDays(1));
+            where.append(" AND created_ms < ?");
+            args.add(untilMs);
+        }
+        if (filter.minTotalCents() != null) {
+            where.append(" AND total_cents >= ?");
+            args.add(filter.minTotalCents());
+        }
+        if (filter.maxTotalCents() != null) {
+            where.append(" AND total_cents <= ?");
+            args.add(filter.maxTotalCents());
+        }
+        where.append(" ORDER BY created_ms DESC, id DESC LIMIT ?");
+
+        List<OrderSummary> rows = new ArrayList<>(limit);
+        long lastCreatedMs = 0;
+        try (Connection conn = Database.getReadConnection()) {
+            List<Archives.Period> sealed;
+            // Registry and hot rows from one snapshot, so a month sealed meanwhile is read from exactly one place
+            conn.setAutoCommit(false);
+            try {
+                sealed = Archives.sealed(conn);
+                // Hot rows of sealed months are either being copied or arrived late; the archive has the first and
+                // the next archive run moves the second, and reading them here would repeat rows or break the order
+                long hotFromMs = sealed.isEmpty() ? Long.MIN_VALUE : sealed.get(0).untilMs();
+                StringBuilder hot = new StringBuilder(where).insert(WHERE.length(), " AND created_ms >= ?");
+                List<Object> hotArgs = new ArrayList<>(args.size() + 1);
+                hotArgs.add(hotFromMs);
+                hotArgs.addAll(args);
+                lastCreatedMs = read(conn, "main", hot, hotArgs, limit, rows, lastCreatedMs);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            // Archived months are older than anything hot; attach only those the filter and cursor still reach
+            for (Archives.Period p : sealed) {
+                if (rows.size() == limit || p.untilMs() <= fromMs) break;
+                if (p.orders() == 0 || !p.overlaps(fromMs, untilMs)) continue;
+                if (after != null && p.fromMs() > after.createdMs()) continue;
+                Archives.attach(conn, p);
+                try {
+                    lastCreatedMs = read(conn, Archives.ALIAS, where, args, limit - rows.size(), rows, lastCreatedMs);
+                } finally {
+                    Archives.detach(conn);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        Cursor next = null;
+        if (rows.size() == limit) {
+            OrderSummary lastRow = rows.get(rows.size() - 1);
+            next = new Cursor(lastCreatedMs, lastRow.id());
+        }
+        return new Page(rows, next);
+    }
+
+    // Appends up to limit rows from schema's orders; returns created_ms of the last row read
+    private static long read(Connection conn, String schema, CharSequence where, List<Object> args, int limit,
+                             List<OrderSummary> rows, long lastCreatedMs) throws SQLException {
+        String sql = "SELECT id, created_at, total_cents, created_ms FROM " + schema + ".orders" + where;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            ps.setInt(args.size() + 1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new OrderSummary(rs.getInt(1), rs.getString(2), rs.getInt(3)));
+                    lastCreatedMs = rs.getLong(4);
+                }
+            }
+        }
+        return lastCreatedMs;
+    }
+}
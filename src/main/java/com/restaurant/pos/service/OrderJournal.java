@@ -0,0 +1,768 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Archives;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal for checkouts. An order is priced, given its id and appended to a memory-mapped segment under
+ * data/journal, and acknowledged as soon as that append is forced to disk; a materializer thread then writes the
+ * journaled orders to SQLite in groups, in journal order. Checkout latency is one sequential append and an msync
+ * shared by everyone appending at the same time, and a locked or slow database only delays materializing.
+ *
+ * <p>Entries are [length, CRC32C, payload]; a torn or corrupt tail ends a segment. Materializing is idempotent: an
+ * order already stored under its id with the same time and total, in the hot database or a sealed month's archive,
+ * is skipped, so on open every entry left in the journal is simply applied again, and segments are deleted once
+ * everything in them is in the database. Under synchronous=NORMAL a
+ * WAL commit only reaches the disk at a checkpoint, so "in the database" means a FULL checkpoint has completed after
+ * the commit; segments stay until one has.
+ *
+ * <p>Order ids are handed out at acknowledgement from blocks reserved by moving the orders AUTOINCREMENT counter,
+ * which other processes writing straight to the database then skip. Stock is checked against the projection less
+ * what journaled orders have yet to deduct; an order that was acknowledged is never rejected later, it deducts what
+ * stock is left. Only the process holding the lock on data/journal/lock journals; others commit directly.
+ */
+public final class OrderJournal {
+    private static final Logger log = LoggerFactory.getLogger(OrderJournal.class);
+
+    private static final OrderJournal INSTANCE = new OrderJournal();
+
+    static final int SEGMENT_BYTES = 4 << 20;
+    private static final int MAGIC = 0x4F4A524E;
+    private static final int FORMAT = 1;
+    // Segment header: magic, format, segment number
+    private static final int HEADER_BYTES = 16;
+    // Entry header: payload length, CRC32C of the payload
+    private static final int ENTRY_HEADER = 8;
+    private static final int ID_BLOCK = 256;
+    private static final int MAX_BATCH = 64;
+    private static final long RETRY_MILLIS = 1000;
+    // A checkout waits for ids no longer than a direct commit would retry a busy database
+    private static final long ID_WAIT_NANOS = Transactions.RetryPolicy.DEFAULT.deadline().toNanos();
+
+    private static final String BUMP_SEQUENCE =
+            "UPDATE sqlite_sequence SET seq = MAX(seq, (SELECT COALESCE(MAX(id), 0) FROM orders)) + ? WHERE name = 'orders'";
+    private static final String INSERT_SEQUENCE =
+            "INSERT INTO sqlite_sequence(name, seq) SELECT 'orders', COALESCE(MAX(id), 0) + ? FROM orders";
+    private static final String READ_SEQUENCE = "SELECT seq FROM sqlite_sequence WHERE name = 'orders'";
+    // An id alone does not say the order is this one: another writer may have taken it
+    private static final String STORED_ORDER = "SELECT created_ms, total_cents FROM %sorders WHERE id = ?";
+    // Changes with every seal, including a re-seal that moves late rows of an archived month
+    private static final String LAST_SEAL = "SELECT COALESCE(MAX(sealed_ms), 0) FROM archive_period WHERE status = 'sealed'";
+
+    private static final LatencyHistogram APPEND = Metrics.histogram("checkout.journal_append");
+    private static final LatencyHistogram SYNC = Metrics.histogram("checkout.journal_sync");
+    private static final LatencyHistogram MATERIALIZE = Metrics.histogram("journal.materialize");
+
+    // position and end are journal offsets: segment number * SEGMENT_BYTES + offset in the segment
+    private record Entry(long position, long end, OrderService.PricedOrder order) {}
+
+    private static final Entry STOP = new Entry(-1, -1, null);
+
+    private final OrderService orders = new OrderService();
+    private final StockProjection projection = StockProjection.instance();
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    // Appending: the open segment and the write offset; guarded by this
+    private Path dir;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private MappedByteBuffer segment;
+    private long segmentNo;
+    private int offset;
+    private ExecutorService appenders;
+    private Thread materializer;
+    private volatile boolean open;
+
+    // Highest journal offset known to be on disk; guarded by syncLock
+    private final Object syncLock = new Object();
+    private long synced;
+
+    // Ids, stock reservations and entries not yet in the database; guarded by state. Taken while holding the
+    // writer connection, so nothing holding state may wait for the database
+    private final Object state = new Object();
+    private int nextId;
+    private int idEnd;
+    private int spareId;
+    private int spareEnd;
+    private int reserving;
+    private boolean refilling;
+    private final Map<Integer, Integer> reserved = new HashMap<>();
+    private final ArrayDeque<Integer> pendingIds = new ArrayDeque<>();
+    private long oldestSegment;
+    private long keepFrom = Long.MAX_VALUE;
+    private volatile int horizon = Integer.MAX_VALUE;
+
+    private OrderJournal() {}
+
+    public static OrderJournal instance() {
+        return INSTANCE;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Lowest order id that may still be committed after higher ones are visible: the oldest journaled order not yet
+     * materialized, or else the next id to be handed out. Readers that track "every order up to N" (SalesFacts)
+     * stop below it. Integer.MAX_VALUE when the journal is closed.
+     */
+    int horizon() {
+        return horizon;
+    }
+
+    /**
+     * Applies whatever a previous run left in the journal, then starts journaling. Call after Database.initialize()
+     * and before SalesFacts.open(), whose catch-up then sees the re-applied orders in id order. Does nothing but log
+     * when another process holds the journal.
+     */
+    public synchronized void open() {
+        if (open) return;
+        Path d = Database.dataFile("journal");
+        try {
+            Files.createDirectories(d);
+            FileChannel ch = FileChannel.open(d.resolve("lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock l = ch.tryLock();
+            if (l == null) {
+                ch.close();
+                log.warn("Order journal {} is open in another process; orders commit directly", d);
+                return;
+            }
+            dir = d;
+            lockChannel = ch;
+            lock = l;
+
+            long t0 = System.nanoTime();
+            List<Long> numbers = segmentNumbers();
+            segmentNo = numbers.isEmpty() ? 1 : numbers.get(numbers.size() - 1) + 1;
+            oldestSegment = numbers.isEmpty() ? segmentNo : numbers.get(0);
+            keepFrom = Long.MAX_VALUE;
+            List<Entry> left = new ArrayList<>();
+            // Everything found is already on disk
+            synced = Long.MAX_VALUE;
+            for (long n : numbers) {
+                left.addAll(scan(n));
+            }
+            int applied = 0;
+            for (int i = 0; i < left.size(); i += MAX_BATCH) {
+                int n = apply(left.subList(i, Math.min(left.size(), i + MAX_BATCH)));
+                if (n < 0) throw new IllegalStateException("Cannot apply journaled orders; the journal is left as it is");
+                applied += n;
+            }
+            // Same rule as while running: a segment holding an order that failed stays, and so does everything after it
+            deleteAppliedSegments(segmentNo);
+            if (!left.isEmpty()) {
+                log.info("Journal held {} orders in {} segments, {} of them not yet in the database; applied in {} ms",
+                        left.size(), numbers.size(), applied, (System.nanoTime() - t0) / 1_000_000);
+            }
+            if (keepFrom != Long.MAX_VALUE) {
+                log.error("Journal segments from {} on hold orders that could not be written; they are kept and retried "
+                        + "at the next start", keepFrom);
+            }
+
+            newSegment();
+            synced = position();
+            reserveBlock(true);
+            // Loaded here, so append() only ever reads it from memory
+            projection.levels();
+            appenders = Executors.newVirtualThreadPerTaskExecutor();
+            materializer = new Thread(this::materialize, "order-materializer");
+            materializer.setDaemon(true);
+            materializer.start();
+            open = true;
+            log.info("Order journal open in {}", dir);
+        } catch (IOException | SQLException | RuntimeException e) {
+            closeFiles();
+            throw new RuntimeException("Cannot open order journal in " + d, e);
+        }
+    }
+
+    // Stops taking orders and waits until every journaled order is in the database
+    public void close() {
+        Thread m;
+        synchronized (this) {
+            if (!open) return;
+            open = false;
+            queue.add(STOP);
+            m = materializer;
+        }
+        try {
+            m.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appenders.close();
+        synchronized (this) {
+            segment.force();
+            closeFiles();
+        }
+        synchronized (state) {
+            nextId = idEnd = spareId = spareEnd = 0;
+            reserved.clear();
+            pendingIds.clear();
+            updateHorizon();
+            state.notifyAll();
+        }
+    }
+
+    // Completes once the order is on disk in the journal, with the receipt the database will store
+    CompletableFuture<OrderService.OrderResult> submit(List<OrderService.CartLine> cart, String paymentMethod) {
+        ExecutorService ex = appenders;
+        if (ex == null) return CompletableFuture.failedFuture(new IllegalStateException("Order journal is closed"));
+        return CompletableFuture.supplyAsync(() -> append(cart, paymentMethod), ex);
+    }
+
+    // Nothing under the journal monitor touches the database: ids come from blocks reserved in the background and
+    // stock from the in-memory projection
+    OrderService.OrderResult append(List<OrderService.CartLine> cart, String paymentMethod) {
+        long t0 = System.nanoTime();
+        Map<Integer, Integer> wanted = new HashMap<>();
+        for (OrderService.CartLine line : cart) {
+            wanted.merge(line.menuItemId(), line.quantity(), Integer::sum);
+        }
+        Entry entry = null;
+        while (entry == null) {
+            awaitIds();
+            synchronized (this) {
+                if (!open) throw new IllegalStateException("Order journal is closed");
+                for (Map.Entry<Integer, Integer> w : wanted.entrySet()) {
+                    int onHand = projection.quantityOf(w.getKey());
+                    int available;
+                    synchronized (state) {
+                        available = onHand - reserved.getOrDefault(w.getKey(), 0);
+                    }
+                    if (available < w.getValue()) {
+                        throw new IllegalStateException("Insufficient stock for menu_item_id=" + w.getKey());
+                    }
+                }
+                // Other checkouts may have used the ids awaitIds() saw; wait again without the monitor
+                int orderId = takeId();
+                if (orderId == 0) continue;
+                OrderService.PricedOrder order = OrderService.price(orderId, cart, paymentMethod);
+                byte[] payload = encode(order);
+                long position = write(payload);
+                entry = new Entry(position, position + ENTRY_HEADER + payload.length, order);
+                synchronized (state) {
+                    wanted.forEach((id, qty) -> reserved.merge(id, qty, Integer::sum));
+                    pendingIds.addLast(order.orderId());
+                    updateHorizon();
+                }
+                // Queued in id order; the materializer waits for the entry to be durable before applying it
+                queue.add(entry);
+            }
+        }
+        APPEND.recordSince(t0);
+        long t1 = System.nanoTime();
+        awaitDurable(entry.end());
+        SYNC.recordSince(t1);
+        OrderService.PricedOrder o = entry.order();
+        return new OrderService.OrderResult(o.orderId(), o.subtotalCents(), o.discountCents(), o.taxCents(),
+                o.totalCents(), o.receipt().render());
+    }
+
+    // Takes an id from the current block, then the spare one; 0 when both are used up
+    private int takeId() {
+        synchronized (state) {
+            if (nextId == idEnd && spareId < spareEnd) {
+                nextId = spareId;
+                idEnd = spareEnd;
+                spareId = spareEnd = 0;
+            }
+            if (nextId == idEnd) return 0;
+            int id = nextId++;
+            refillIfLow();
+            return id;
+        }
+    }
+
+    // Blocks, holding neither the monitor nor state, until an id is free; fails the checkout if none come in time
+    private void awaitIds() {
+        long deadline = System.nanoTime() + ID_WAIT_NANOS;
+        synchronized (state) {
+            while (nextId == idEnd && spareId == spareEnd) {
+                refillIfLow();
+                long left = deadline - System.nanoTime();
+                if (!open || left <= 0) throw new IllegalStateException("No order ids available; the database is busy");
+                try {
+                    state.wait(Math.max(1, left / 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for order ids", e);
+                }
+            }
+        }
+    }
+
+    // Called with state held; starts reserving a spare block in the background once half the current one is used
+    private void refillIfLow() {
+        ExecutorService ex = appenders;
+        if (refilling || spareEnd != 0 || idEnd - nextId >= ID_BLOCK / 2 || ex == null) return;
+        refilling = true;
+        ex.execute(this::refill);
+    }
+
+    private void refill() {
+        try {
+            while (open) {
+                try {
+                    reserveBlock(false);
+                    return;
+                } catch (SQLException | RuntimeException e) {
+                    log.warn("Could not reserve order ids; retrying", e);
+                }
+                Thread.sleep(RETRY_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (state) {
+                refilling = false;
+                state.notifyAll();
+            }
+        }
+    }
+
+    // Reserves ID_BLOCK ids as the current block or as the spare and wakes checkouts waiting for them; the horizon
+    // stays at 0 until they are installed
+    private void reserveBlock(boolean current) throws SQLException {
+        synchronized (state) {
+            reserving++;
+            updateHorizon();
+        }
+        int first = 0;
+        try {
+            first = Transactions.write(OrderJournal::reserveIds);
+        } finally {
+            synchronized (state) {
+                reserving--;
+                if (first > 0) {
+                    if (current) {
+                        nextId = first;
+                        idEnd = first + ID_BLOCK;
+                    } else if (spareEnd == 0) {
+                        spareId = first;
+                        spareEnd = first + ID_BLOCK;
+                    }
+                }
+                updateHorizon();
+                state.notifyAll();
+            }
+        }
+    }
+
+    // Moves the AUTOINCREMENT counter past ID_BLOCK ids; returns the first of them
+    private static int reserveIds(Connection conn) throws SQLException {
+        try (PreparedStatement bump = conn.prepareStatement(BUMP_SEQUENCE)) {
+            bump.setInt(1, ID_BLOCK);
+            if (bump.executeUpdate() == 0) {
+                try (PreparedStatement ins = conn.prepareStatement(INSERT_SEQUENCE)) {
+                    ins.setInt(1, ID_BLOCK);
+                    ins.executeUpdate();
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(READ_SEQUENCE);
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) throw new SQLException("No orders sequence");
+            return rs.getInt(1) - ID_BLOCK + 1;
+        }
+    }
+
+    private void updateHorizon() {
+        Integer first = pendingIds.peekFirst();
+        if (reserving > 0) horizon = 0;
+        else if (first != null) horizon = first;
+        else if (nextId < idEnd) horizon = nextId;
+        else if (spareId < spareEnd) horizon = spareId;
+        else horizon = Integer.MAX_VALUE;
+    }
+
+    // Called with this held; starts a new segment when the entry does not fit, forcing the full one first
+    private long write(byte[] payload) {
+        if (ENTRY_HEADER + payload.length > SEGMENT_BYTES - HEADER_BYTES) {
+            throw new IllegalArgumentException("Order too large for the journal: " + payload.length + " bytes");
+        }
+        try {
+            if (offset + ENTRY_HEADER + payload.length > SEGMENT_BYTES) {
+                segment.force();
+                segmentNo++;
+                newSegment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long position = position();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        segment.putInt(offset + 4, (int) crc.getValue());
+        segment.put(offset + ENTRY_HEADER, payload);
+        // Length last: a zero length is where a reader stops
+        segment.putInt(offset, payload.length);
+        offset += ENTRY_HEADER + payload.length;
+        return position;
+    }
+
+    // Everyone waiting here shares one force of the open segment; earlier segments were forced when they filled
+    private void awaitDurable(long end) {
+        synchronized (syncLock) {
+            if (synced >= end) return;
+            MappedByteBuffer seg;
+            long target;
+            synchronized (this) {
+                seg = segment;
+                target = position();
+            }
+            seg.force();
+            synced = target;
+        }
+    }
+
+    private long position() {
+        return segmentNo * SEGMENT_BYTES + offset;
+    }
+
+    private void newSegment() throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentFile(segmentNo),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        }
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, FORMAT);
+        segment.putLong(8, segmentNo);
+        segment.force();
+        offset = HEADER_BYTES;
+    }
+
+    private void materialize() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                Entry first = queue.take();
+                if (first == STOP) break;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                stop = batch.remove(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            while (apply(batch) < 0) {
+                if (stop || !open) {
+                    // Left in the journal; the next open applies it
+                    log.error("Giving up on {} journaled orders until the next start", batch.size() + queue.size());
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private enum Stored { ABSENT, SAME, OTHER }
+
+    // Outcome of one attempt at a batch: per entry the written rows, or null when skipped or failed
+    private record Applied(OrderService.WrittenOrder[] written, boolean[] failed) {}
+
+    // Writes a batch in one transaction, each order under its own savepoint; returns how many orders were written,
+    // not counting those already in the database, or -1 if the transaction failed
+    private int apply(List<Entry> batch) {
+        awaitDurable(batch.get(batch.size() - 1).end());
+        long start = System.nanoTime();
+        // Orders of a sealed month may already have moved to its archive, which can only be attached outside a
+        // transaction; checked on a reader first, and the batch retried if another seal lands in between
+        long lastSeal;
+        boolean[] archived;
+        try (Connection conn = Database.getReadConnection()) {
+            lastSeal = lastSeal(conn);
+            archived = archived(conn, batch);
+        } catch (SQLException e) {
+            log.error("Checking {} journaled orders against the archives failed", batch.size(), e);
+            return -1;
+        }
+        Applied done;
+        try {
+            done = Transactions.write(conn -> {
+                if (lastSeal(conn) != lastSeal) throw new SQLException("A month was archived while the batch was checked");
+                OrderService.WrittenOrder[] written = new OrderService.WrittenOrder[batch.size()];
+                boolean[] failed = new boolean[batch.size()];
+                try (PreparedStatement stored = conn.prepareStatement(String.format(STORED_ORDER, ""))) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (archived[i]) continue;
+                        OrderService.PricedOrder order = batch.get(i).order();
+                        Stored as = stored(stored, order);
+                        if (as == Stored.SAME) continue;
+                        if (as == Stored.OTHER) {
+                            // Not dropped: the sale happened, only the receipt's number no longer matches
+                            log.error("Journaled order {} finds its id taken by another order; it is stored under a new id",
+                                    order.orderId());
+                            order = order.withOrderId(0);
+                        }
+                        Savepoint sp = conn.setSavepoint();
+                        try {
+                            written[i] = orders.writeOrder(conn, order, true);
+                            conn.releaseSavepoint(sp);
+                        } catch (Exception e) {
+                            if (e instanceof SQLException se && Transactions.isBusy(se)) throw se;
+                            conn.rollback(sp);
+                            conn.releaseSavepoint(sp);
+                            failed[i] = true;
+                            log.error("Journaled order {} could not be written; it stays in the journal", order.orderId(), e);
+                        }
+                    }
+                }
+                return new Applied(written, failed);
+            }, (applied, conn) -> {
+                // Ids first, so the fact store takes every order of the batch; stock once the projection has it,
+                // which afterCommit guarantees by reloading it if any order's bookkeeping fails
+                committed(batch, applied);
+                orders.afterCommit(Arrays.asList(applied.written()), conn);
+                release(batch);
+            });
+        } catch (SQLException | RuntimeException e) {
+            log.error("Materializing {} journaled orders failed", batch.size(), e);
+            return -1;
+        }
+        MATERIALIZE.recordSince(start);
+        deleteAppliedSegments(batch.get(batch.size() - 1).position() / SEGMENT_BYTES);
+        int written = 0;
+        for (OrderService.WrittenOrder w : done.written()) {
+            if (w != null) written++;
+        }
+        return written;
+    }
+
+    private static long lastSeal(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(LAST_SEAL); ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Per entry, whether a sealed month's archive already holds the order; only the periods whose month and id
+    // range could hold one of the batch's orders are attached
+    private static boolean[] archived(Connection conn, List<Entry> batch) throws SQLException {
+        boolean[] out = new boolean[batch.size()];
+        for (Archives.Period period : Archives.sealed(conn)) {
+            List<Integer> candidates = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                OrderService.PricedOrder order = batch.get(i).order();
+                long ms = order.createdAt().toEpochMilli();
+                if (period.overlaps(ms, ms + 1) && period.mayHoldOrder(order.orderId())) candidates.add(i);
+            }
+            if (candidates.isEmpty()) continue;
+            Archives.attach(conn, period);
+            try (PreparedStatement ps = conn.prepareStatement(String.format(STORED_ORDER, Archives.ALIAS + "."))) {
+                for (int i : candidates) out[i] = stored(ps, batch.get(i).order()) == Stored.SAME;
+            } finally {
+                Archives.detach(conn);
+            }
+        }
+        return out;
+    }
+
+    private static Stored stored(PreparedStatement ps, OrderService.PricedOrder order) throws SQLException {
+        ps.setInt(1, order.orderId());
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return Stored.ABSENT;
+            boolean same = rs.getLong(1) == order.createdAt().toEpochMilli() && rs.getInt(2) == order.totalCents();
+            return same ? Stored.SAME : Stored.OTHER;
+        }
+    }
+
+    // The batch's ids are in the database (or failed and stay in the journal) and no longer hold the horizon back
+    private void committed(List<Entry> batch, Applied applied) {
+        synchronized (state) {
+            for (int i = 0; i < batch.size(); i++) {
+                Entry e = batch.get(i);
+                pendingIds.remove(e.order().orderId());
+                if (applied.failed()[i]) keepFrom = Math.min(keepFrom, e.position() / SEGMENT_BYTES);
+            }
+            updateHorizon();
+        }
+    }
+
+    // Drops the batch's stock reservations; the projection now holds its deductions
+    private void release(List<Entry> batch) {
+        synchronized (state) {
+            for (Entry e : batch) {
+                for (OrderService.CartLine line : e.order().cart()) {
+                    reserved.computeIfPresent(line.menuItemId(), (id, q) -> q > line.quantity() ? q - line.quantity() : null);
+                }
+            }
+        }
+    }
+
+    // Everything before the segment the last applied entry is in has been committed; deleted once that is on disk
+    private void deleteAppliedSegments(long lastApplied) {
+        long upTo;
+        synchronized (state) {
+            upTo = Math.min(lastApplied, keepFrom);
+        }
+        if (oldestSegment >= upTo || !checkpointed()) return;
+        while (oldestSegment < upTo) {
+            try {
+                Files.deleteIfExists(segmentFile(oldestSegment));
+            } catch (IOException e) {
+                log.warn("Could not delete applied journal segment {}", oldestSegment, e);
+                return;
+            }
+            oldestSegment++;
+        }
+    }
+
+    // FULL waits out readers, copies every committed frame into the database file and syncs it; false when another
+    // connection kept it from finishing, in which case the segments wait for the next attempt
+    private static boolean checkpointed() {
+        try (Connection conn = Database.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA wal_checkpoint(FULL)")) {
+            if (rs.next() && rs.getInt(1) == 0) return true;
+            log.warn("Checkpoint before deleting journal segments did not complete; they are kept for now");
+        } catch (SQLException e) {
+            log.warn("Checkpoint before deleting journal segments failed; they are kept for now", e);
+        }
+        return false;
+    }
+
+    // Entries of one segment up to the first empty, torn or corrupt one
+    private List<Entry> scan(long n) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(segmentFile(n)));
+        if (buf.limit() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != FORMAT) {
+            log.warn("Journal segment {} has no valid header; skipped", n);
+            return entries;
+        }
+        int at = HEADER_BYTES;
+        while (at + ENTRY_HEADER <= buf.limit()) {
+            int length = buf.getInt(at);
+            if (length <= 0 || at + ENTRY_HEADER + length > buf.limit()) break;
+            CRC32C crc = new CRC32C();
+            crc.update(buf.array(), at + ENTRY_HEADER, length);
+            if ((int) crc.getValue() != buf.getInt(at + 4)) {
+                log.warn("Journal segment {} ends in a torn entry at offset {}", n, at);
+                break;
+            }
+            byte[] payload = new byte[length];
+            buf.get(at + ENTRY_HEADER, payload);
+            long position = n * SEGMENT_BYTES + at;
+            entries.add(new Entry(position, position + ENTRY_HEADER + length, decode(payload)));
+            at += ENTRY_HEADER + length;
+        }
+        return entries;
+    }
+
+    private List<Long> segmentNumbers() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith("orders-") && name.endsWith(".log"))
+                    .map(name -> Long.parseLong(name.substring(7, name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentFile(long n) {
+        return dir.resolve(String.format("orders-%012d.log", n));
+    }
+
+    private void closeFiles() {
+        try {
+            if (lock != null) lock.release();
+            if (lockChannel != null) lockChannel.close();
+        } catch (IOException e) {
+            log.warn("Closing the order journal failed", e);
+        }
+        lock = null;
+        lockChannel = null;
+        segment = null;
+        appenders = null;
+        materializer = null;
+    }
+
+    private static byte[] encode(OrderService.PricedOrder order) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + order.cart().size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(order.orderId());
+            out.writeLong(order.createdAt().getEpochSecond());
+            out.writeInt(order.createdAt().getNano());
+            out.writeUTF(order.paymentMethod());
+            out.writeInt(order.subtotalCents());
+            out.writeInt(order.discountCents());
+            out.writeInt(order.taxCents());
+            out.writeInt(order.totalCents());
+            out.writeShort(order.cart().size());
+            for (OrderService.CartLine line : order.cart()) {
+                out.writeInt(line.menuItemId());
+                out.writeUTF(line.name());
+                out.writeInt(line.quantity());
+                out.writeInt(line.unitPriceCents());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static OrderService.PricedOrder decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int orderId = in.readInt();
+            Instant createdAt = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            String paymentMethod = in.readUTF();
+            int subtotal = in.readInt();
+            int discount = in.readInt();
+            int tax = in.readInt();
+            int total = in.readInt();
+            int n = in.readUnsignedShort();
+            List<OrderService.CartLine> cart = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                cart.add(new OrderService.CartLine(in.readInt(), in.readUTF(), in.readInt(), in.readInt()));
+            }
+            return new OrderService.PricedOrder(orderId, createdAt, cart, paymentMethod, subtotal, discount, tax, total);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,12 +1,25 @@
 package com.restaurant.pos.service;
 
+import com.restaurant.pos.db.Archives;
 import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class OrderService {
+    private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+
     public static record CartLine(int menuItemId, String name, int quantity, int unitPriceCents) {}
 
     public static final double TAX_RATE = 0.07; // 7%
@@ -29,111 +42,327 @@ public class OrderService {
         }
     }
 
+    private static final String INSERT_ORDER = "INSERT INTO orders(id, created_at, subtotal_cents, discount_cents, tax_cents, total_cents, payment_method, status, created_ms) VALUES (?,?,?,?,?,?,?,?,?)";
+    private static final String INSERT_ITEM = "INSERT INTO order_item(order_id, menu_item_id, quantity, unit_price_cents, line_total_cents) VALUES (?,?,?,?,?)";
+    private static final String INSERT_LEDGER = "INSERT INTO inventory_ledger(menu_item_id, quantity_change, reason, ref_type, ref_id, created_at, created_ms) VALUES (?,?,?,?,?,?,?)";
+    private static final String INSERT_PAYMENT = "INSERT INTO payment(order_id, amount_cents, method, created_at, created_ms) VALUES (?,?,?,?,?)";
+    private static final String INSERT_RECEIPT = "INSERT INTO order_receipt_data(order_id, data) VALUES (?,?)";
+    // %s is the schema: main, or an attached archive
+    private static final String SELECT_RECEIPT_DATA = "SELECT data FROM %s.order_receipt_data WHERE order_id = ?";
+    private static final String SELECT_LEGACY_RECEIPT = "SELECT content FROM %s.order_receipt WHERE order_id = ?";
+
+    // Checkout phase spans; SQL statements and commits are timed separately by the connection pool
+    private static final LatencyHistogram PLACE_ORDER = Metrics.histogram("checkout.place_order");
+    private static final LatencyHistogram WRITE = Metrics.histogram("checkout.write");
+    private static final LatencyHistogram PRICE = Metrics.histogram("checkout.price");
+    private static final LatencyHistogram INSERT_ORDER_ROW = Metrics.histogram("checkout.insert_order");
+    private static final LatencyHistogram FIFO = Metrics.histogram("checkout.fifo");
+    private static final LatencyHistogram LINES = Metrics.histogram("checkout.lines");
+    private static final LatencyHistogram ROLLUP = Metrics.histogram("checkout.rollup");
+    private static final LatencyHistogram PAYMENT = Metrics.histogram("checkout.payment");
+    private static final LatencyHistogram RECEIPT = Metrics.histogram("checkout.receipt");
+    private static final LatencyHistogram COMMIT = Metrics.histogram("checkout.commit");
+    private static final LatencyHistogram POST_COMMIT = Metrics.histogram("checkout.post_commit");
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    public static final long DEFAULT_MAX_LINGER_MILLIS = 5;
+
+    private final InventoryService inventoryService = new InventoryService();
+    private final SalesRollupService salesRollup = new SalesRollupService();
+    private final int maxBatchSize;
+    private final long maxLingerMillis;
+    private OrderCommitter committer;
+
+    public OrderService() {
+        this(DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LINGER_MILLIS);
+    }
+
+    // maxBatchSize/maxLingerMillis tune the group commit behind submitOrder
+    public OrderService(int maxBatchSize, long maxLingerMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerMillis = maxLingerMillis;
+    }
+
     public OrderResult placeOrder(List<CartLine> cart, String paymentMethod) {
-        try (Connection conn = Database.getConnection()) {
-            conn.setAutoCommit(false);
-
-            int subtotal = cart.stream().mapToInt(l -> l.unitPriceCents * l.quantity).sum();
-            int discount = 0; // promo will adjust later
-            int tax = (int) Math.round(subtotal * TAX_RATE);
-            int total = subtotal - discount + tax;
-
-            int orderId;
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "INSERT INTO orders(created_at, subtotal_cents, discount_cents, tax_cents, total_cents, payment_method, status) VALUES (?,?,?,?,?,?,?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
-                ps.setString(1, LocalDateTime.now().toString());
-                ps.setInt(2, subtotal);
-                ps.setInt(3, discount);
-                ps.setInt(4, tax);
-                ps.setInt(5, total);
-                ps.setString(6, paymentMethod);
-                ps.setString(7, "PAID");
-                ps.executeUpdate();
-                try (ResultSet keys = ps.getGeneratedKeys()) {
-                    if (!keys.next()) throw new SQLException("No order id generated");
-                    orderId = keys.getInt(1);
-                }
+        long t0 = System.nanoTime();
+        long[] commitStart = new long[1];
+        try {
+            // BEGIN IMMEDIATE, rerun from scratch if another process holds the database
+            return Transactions.write(conn -> {
+                WrittenOrder written = writeOrder(conn, cart, paymentMethod);
+                commitStart[0] = System.nanoTime();
+                return written;
+            }, (written, conn) -> {
+                COMMIT.recordSince(commitStart[0]);
+                // The order is stored from here on; bookkeeping failures are logged, never reported as a failed checkout
+                afterCommit(List.of(written), conn);
+            }).result();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            PLACE_ORDER.recordSince(t0);
+        }
+    }
+
+    /**
+     * Queues the order for the group-commit writer. Several pending orders share one transaction;
+     * each runs under its own savepoint, so a failing order only fails its own future. While this process
+     * holds the order journal the order is journaled instead and completes once it is on disk there.
+     */
+    public CompletableFuture<OrderResult> submitOrder(List<CartLine> cart, String paymentMethod) {
+        OrderJournal journal = OrderJournal.instance();
+        if (journal.isOpen()) return journal.submit(List.copyOf(cart), paymentMethod);
+        return committer().submit(List.copyOf(cart), paymentMethod);
+    }
+
+    // Stops the group-commit writer after draining orders that are already queued
+    public void shutdown() {
+        OrderCommitter c;
+        synchronized (this) {
+            c = committer;
+            committer = null;
+        }
+        if (c != null) c.shutdown();
+    }
+
+    private synchronized OrderCommitter committer() {
+        if (committer == null) {
+            committer = new OrderCommitter(this, maxBatchSize, maxLingerMillis);
+        }
+        return committer;
+    }
+
+    // Result of writeOrder plus what post-commit bookkeeping needs: per-item quantities deducted, timestamps and lines
+    record WrittenOrder(OrderResult result, Map<Integer, Integer> deducted, String createdAt, long createdMs,
+                        List<CartLine> lines) {}
+
+    /**
+     * Post-commit bookkeeping for orders already committed on conn, which must still be the writer lease they
+     * committed on; null entries are skipped. Never throws: the orders are stored whatever happens here, so each
+     * failure is logged, and if any order failed the stock projection, which later checkouts act on, is reloaded
+     * from what was committed.
+     */
+    void afterCommit(List<WrittenOrder> written, Connection conn) {
+        boolean failed = false;
+        for (WrittenOrder w : written) {
+            if (w == null) continue;
+            try {
+                onCommitted(w, conn);
+            } catch (Exception e) {
+                failed = true;
+                log.error("Post-commit bookkeeping for order {} failed; the order is committed", w.result().orderId, e);
             }
+        }
+        if (!failed) return;
+        try {
+            StockProjection.instance().reload(conn);
+        } catch (Exception e) {
+            log.error("Reloading the stock projection after failed bookkeeping failed", e);
+        }
+    }
+
+    // Must run after commit while the writer connection is still held
+    void onCommitted(WrittenOrder written, Connection conn) throws SQLException {
+        long t0 = System.nanoTime();
+        inventoryService.onDeductionCommitted(written.deducted(), conn);
+        OrderResult r = written.result();
+        SalesFacts.instance().append(conn, r.orderId, written.createdMs(), written.lines(), r.subtotalCents, r.discountCents);
+        CheckoutActivity.recordOrders(1);
+        OrderEvents.instance().publish(written);
+        POST_COMMIT.recordSince(t0);
+    }
+
+    /**
+     * An order priced and timestamped before any SQL runs. orderId is 0 when the database assigns it; a journaled
+     * order carries the id, time and prices it was acknowledged with, so writing it later changes none of them.
+     */
+    record PricedOrder(int orderId, Instant createdAt, List<CartLine> cart, String paymentMethod,
+                       int subtotalCents, int discountCents, int taxCents, int totalCents) {
+        String localCreatedAt() {
+            return LocalDateTime.ofInstant(createdAt, ZoneId.systemDefault()).toString();
+        }
+
+        Receipt receipt() {
+            return Receipt.of(orderId, localCreatedAt(), cart, subtotalCents, discountCents, taxCents, totalCents);
+        }
 
-            // Insert items and deduct inventory FIFO
-            InventoryService inventoryService = new InventoryService();
+        // 0 lets the database pick the id
+        PricedOrder withOrderId(int id) {
+            return new PricedOrder(id, createdAt, cart, paymentMethod, subtotalCents, discountCents, taxCents, totalCents);
+        }
+    }
+
+    // Priced from the in-memory promo index; the same quote the cart showed at the register
+    static PricedOrder price(int orderId, List<CartLine> cart, String paymentMethod) {
+        long start = System.nanoTime();
+        Instant instant = Instant.now();
+        PromoPricing.Quote quote = PromoPricing.instance().quote(cart,
+                LocalDateTime.ofInstant(instant, ZoneId.systemDefault()).toLocalDate());
+        PRICE.recordSince(start);
+        return new PricedOrder(orderId, instant, cart, paymentMethod, quote.subtotalCents(), quote.discountCents(),
+                quote.taxCents(), quote.totalCents());
+    }
+
+    // Writes all rows for one order on a connection that is already inside a transaction; does not commit.
+    WrittenOrder writeOrder(Connection conn, List<CartLine> cart, String paymentMethod) throws SQLException {
+        return writeOrder(conn, price(0, cart, paymentMethod), false);
+    }
+
+    // allowShort deducts what stock there is instead of failing; for orders that were already acknowledged
+    WrittenOrder writeOrder(Connection conn, PricedOrder order, boolean allowShort) throws SQLException {
+        long start = System.nanoTime();
+        long t = start;
+        List<CartLine> cart = order.cart();
+        // One timestamp for every row written by this order, as local text and as epoch millis
+        LocalDateTime ts = LocalDateTime.ofInstant(order.createdAt(), ZoneId.systemDefault());
+        String now = ts.toString();
+        long nowMs = order.createdAt().toEpochMilli();
+        int subtotal = order.subtotalCents();
+        int discount = order.discountCents();
+        int tax = order.taxCents();
+        int total = order.totalCents();
+        String paymentMethod = order.paymentMethod();
+
+        int orderId;
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_ORDER, Statement.RETURN_GENERATED_KEYS)) {
+            if (order.orderId() > 0) ps.setInt(1, order.orderId());
+            else ps.setNull(1, Types.INTEGER);
+            ps.setString(2, now);
+            ps.setInt(3, subtotal);
+            ps.setInt(4, discount);
+            ps.setInt(5, tax);
+            ps.setInt(6, total);
+            ps.setString(7, paymentMethod);
+            ps.setString(8, "PAID");
+            ps.setLong(9, nowMs);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("No order id generated");
+                orderId = keys.getInt(1);
+            }
+        }
+        t = lap(INSERT_ORDER_ROW, t);
+
+        // Items and ledger rows go out as one batch each; FIFO deduction is a single pass over the whole cart
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        Map<Integer, Integer> deducted = quantities;
+        try (PreparedStatement item = conn.prepareStatement(INSERT_ITEM);
+             PreparedStatement led = conn.prepareStatement(INSERT_LEDGER)) {
             for (CartLine line : cart) {
-                try (PreparedStatement item = conn.prepareStatement(
-                        "INSERT INTO order_item(order_id, menu_item_id, quantity, unit_price_cents, line_total_cents) VALUES (?,?,?,?,?)")) {
-                    item.setInt(1, orderId);
-                    item.setInt(2, line.menuItemId());
-                    item.setInt(3, line.quantity());
-                    item.setInt(4, line.unitPriceCents());
-                    item.setInt(5, line.unitPriceCents() * line.quantity());
-                    item.executeUpdate();
-                }
-                inventoryService.deductInventoryFIFO(line.menuItemId(), line.quantity(), conn);
-                try (PreparedStatement led = conn.prepareStatement(
-                        "INSERT INTO inventory_ledger(menu_item_id, quantity_change, reason, ref_type, ref_id, created_at) VALUES (?,?,?,?,?,?)")) {
-                    led.setInt(1, line.menuItemId());
-                    led.setInt(2, -line.quantity());
-                    led.setString(3, "sale");
-                    led.setString(4, "order");
-                    led.setInt(5, orderId);
-                    led.setString(6, LocalDateTime.now().toString());
-                    led.executeUpdate();
+                item.setInt(1, orderId);
+                item.setInt(2, line.menuItemId());
+                item.setInt(3, line.quantity());
+                item.setInt(4, line.unitPriceCents());
+                item.setInt(5, line.unitPriceCents() * line.quantity());
+                item.addBatch();
+
+                led.setInt(1, line.menuItemId());
+                led.setInt(2, -line.quantity());
+                led.setString(3, "sale");
+                led.setString(4, "order");
+                led.setInt(5, orderId);
+                led.setString(6, now);
+                led.setLong(7, nowMs);
+                led.addBatch();
+
+                quantities.merge(line.menuItemId(), line.quantity(), Integer::sum);
+            }
+            long tf = System.nanoTime();
+            if (allowShort) {
+                deducted = FifoDeduction.deduct(quantities, conn, true);
+                if (!deducted.equals(quantities)) {
+                    log.warn("Order {} sold more than the stock on hand: wanted {}, deducted {}", orderId, quantities, deducted);
+                    // The sale rows above record what was sold; a shortfall row per item gives back what no batch
+                    // held, so the ledger still sums to the change in inventory_batch
+                    for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+                        int missing = e.getValue() - deducted.getOrDefault(e.getKey(), 0);
+                        if (missing <= 0) continue;
+                        led.setInt(1, e.getKey());
+                        led.setInt(2, missing);
+                        led.setString(3, "shortfall");
+                        led.setString(4, "order");
+                        led.setInt(5, orderId);
+                        led.setString(6, now);
+                        led.setLong(7, nowMs);
+                        led.addBatch();
+                    }
                 }
+            } else {
+                inventoryService.deductInventoryFIFO(quantities, conn);
             }
+            FIFO.recordSince(tf);
+            item.executeBatch();
+            led.executeBatch();
+        }
+        t = lap(LINES, t);
+        salesRollup.recordSale(conn, ts.toLocalDate().toString(), cart);
+        t = lap(ROLLUP, t);
 
-            try (PreparedStatement pay = conn.prepareStatement(
-                    "INSERT INTO payment(order_id, amount_cents, method, created_at) VALUES (?,?,?,?)")) {
-                pay.setInt(1, orderId);
-                pay.setInt(2, total);
-                pay.setString(3, paymentMethod);
-                pay.setString(4, LocalDateTime.now().toString());
-                pay.executeUpdate();
-            }
+        try (PreparedStatement pay = conn.prepareStatement(INSERT_PAYMENT)) {
+            pay.setInt(1, orderId);
+            pay.setInt(2, total);
+            pay.setString(3, paymentMethod);
+            pay.setString(4, now);
+            pay.setLong(5, nowMs);
+            pay.executeUpdate();
+        }
+        t = lap(PAYMENT, t);
 
-            String receipt = generateReceipt(conn, orderId);
-            try (PreparedStatement rec = conn.prepareStatement(
-                    "INSERT INTO order_receipt(order_id, content) VALUES (?,?)")) {
-                rec.setInt(1, orderId);
-                rec.setString(2, receipt);
-                rec.executeUpdate();
-            }
+        // Built from the cart and the totals above, so the receipt can never disagree with the order row
+        Receipt receipt = Receipt.of(orderId, now, cart, subtotal, discount, tax, total);
+        try (PreparedStatement rec = conn.prepareStatement(INSERT_RECEIPT)) {
+            rec.setInt(1, orderId);
+            rec.setBytes(2, receipt.encode());
+            rec.executeUpdate();
+        }
+        String rendered = receipt.render();
+        lap(RECEIPT, t);
+        WRITE.recordSince(start);
+
+        return new WrittenOrder(new OrderResult(orderId, subtotal, discount, tax, total, rendered), deducted, now, nowMs, cart);
+    }
+
+    // Records the phase that started at `since` and returns the start of the next one
+    private static long lap(LatencyHistogram phase, long since) {
+        long now = System.nanoTime();
+        phase.record(now - since);
+        return now;
+    }
 
-            conn.commit();
-            return new OrderResult(orderId, subtotal, discount, tax, total, receipt);
+    // Renders the stored receipt for an order: structured form first, legacy TEXT receipts second, archived months last
+    public String loadReceipt(int orderId) {
+        try (Connection conn = Database.getReadConnection()) {
+            String receipt = readReceipt(conn, "main", orderId);
+            if (receipt != null) return receipt;
+            // Order ids grow with time, so the id ranges narrow an archived order down to its month
+            for (Archives.Period p : Archives.sealed(conn)) {
+                if (!p.mayHoldOrder(orderId)) continue;
+                Archives.attach(conn, p);
+                try {
+                    receipt = readReceipt(conn, Archives.ALIAS, orderId);
+                } finally {
+                    Archives.detach(conn);
+                }
+                if (receipt != null) return receipt;
+            }
+            return null;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String generateReceipt(Connection conn, int orderId) throws SQLException {
-        StringBuilder sb = new StringBuilder();
-        sb.append("=== Restaurant Receipt ===\n");
-        sb.append("Order #").append(orderId).append("\n");
-        sb.append("Date: ").append(LocalDateTime.now()).append("\n\n");
-        sb.append(String.format("%-20s %5s %8s\n", "Item", "Qty", "Total"));
-        sb.append("----------------------------------------\n");
-
-        String sql = "SELECT mi.name, oi.quantity, oi.line_total_cents FROM order_item oi JOIN menu_item mi ON mi.id = oi.menu_item_id WHERE oi.order_id = ?";
-        int subtotal = 0;
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    private static String readReceipt(Connection conn, String schema, int orderId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_RECEIPT_DATA.formatted(schema))) {
             ps.setInt(1, orderId);
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String name = rs.getString(1);
-                    int qty = rs.getInt(2);
-                    int lineTotal = rs.getInt(3);
-                    subtotal += lineTotal;
-                    sb.append(String.format("%-20s %5d %8.2f\n", name, qty, lineTotal / 100.0));
-                }
+                if (rs.next()) return Receipt.decode(rs.getBytes(1)).render();
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SELECT_LEGACY_RECEIPT.formatted(schema))) {
+            ps.setInt(1, orderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
             }
         }
-        int tax = (int) Math.round(subtotal * TAX_RATE);
-        int total = subtotal + tax;
-        sb.append("----------------------------------------\n");
-        sb.append(String.format("%-20s %13.2f\n", "Subtotal:", subtotal / 100.0));
-        sb.append(String.format("%-20s %13.2f\n", "Tax:", tax / 100.0));
-        sb.append(String.format("%-20s %13.2f\n", "Total:", total / 100.0));
-        sb.append("\nThank you!\n");
-        return sb.toString();
     }
 }
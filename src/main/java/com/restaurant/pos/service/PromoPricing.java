@@ -0,0 +1,182 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Interval index of live promos keyed by menu item id, used to price carts without touching the database.
+ * Like {@link MenuCatalog}, the index is an immutable snapshot swapped in when promo_version (bumped by
+ * triggers on promo) moves. Discounts are whole cents: each line gets the best promo covering the day.
+ */
+public final class PromoPricing {
+    private static final Logger log = LoggerFactory.getLogger(PromoPricing.class);
+
+    private static final PromoPricing INSTANCE = new PromoPricing();
+
+    private static final String LOAD_SQL =
+            "SELECT id, menu_item_id, discount_percent, start_date, end_date, reason, auto_generated FROM promo " +
+            "WHERE retired = 0 AND end_date >= ?";
+    private static final String VERSION_SQL = "SELECT version FROM promo_version WHERE id = 1";
+
+    public static record Quote(int subtotalCents, int discountCents, int taxCents, int totalCents) {
+        public static Quote of(int subtotalCents, int discountCents) {
+            int tax = (int) Math.round((subtotalCents - discountCents) * OrderService.TAX_RATE);
+            return new Quote(subtotalCents, discountCents, tax, subtotalCents - discountCents + tax);
+        }
+    }
+
+    public static final class Snapshot {
+        private final long version;
+        private final List<PromoService.Promo> promos;
+        // Item i owns promo slots [offsets[i], offsets[i + 1]), sorted by start day
+        private final IntIntMap slotById;
+        private final int[] offsets;
+        private final long[] startDay;
+        private final long[] endDay;
+        private final int[] basisPoints;
+
+        private Snapshot(long version, List<PromoService.Promo> promos) {
+            this.version = version;
+            List<PromoService.Promo> sorted = new ArrayList<>(promos);
+            sorted.sort(Comparator.comparingInt(PromoService.Promo::menuItemId).thenComparing(PromoService.Promo::startDate));
+            this.promos = List.copyOf(sorted);
+            int n = sorted.size();
+            this.startDay = new long[n];
+            this.endDay = new long[n];
+            this.basisPoints = new int[n];
+            int items = 0;
+            for (int i = 0; i < n; i++) {
+                if (i == 0 || sorted.get(i).menuItemId() != sorted.get(i - 1).menuItemId()) items++;
+            }
+            this.slotById = new IntIntMap(items);
+            this.offsets = new int[items + 1];
+            int slot = -1;
+            for (int i = 0; i < n; i++) {
+                PromoService.Promo p = sorted.get(i);
+                if (i == 0 || p.menuItemId() != sorted.get(i - 1).menuItemId()) {
+                    slotById.put(p.menuItemId(), ++slot);
+                    offsets[slot] = i;
+                }
+                startDay[i] = p.startDate().toEpochDay();
+                endDay[i] = p.endDate().toEpochDay();
+                basisPoints[i] = (int) Math.max(0, Math.min(10_000, Math.round(p.discountPercent() * 100)));
+            }
+            offsets[items] = n;
+        }
+
+        // For callers that receive live promos from elsewhere, e.g. a thin client
+        public static Snapshot of(long version, List<PromoService.Promo> promos) {
+            return new Snapshot(version, promos);
+        }
+
+        // The live promos this snapshot was built from, by item and start date
+        public List<PromoService.Promo> promos() {
+            return promos;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        // Best discount for the item on the given day in basis points (1/100 of a percent), 0 if none applies
+        public int basisPoints(int menuItemId, LocalDate day) {
+            int slot = slotById.get(menuItemId, -1);
+            if (slot < 0) return 0;
+            long d = day.toEpochDay();
+            int best = 0;
+            for (int i = offsets[slot], end = offsets[slot + 1]; i < end && startDay[i] <= d; i++) {
+                if (endDay[i] >= d && basisPoints[i] > best) best = basisPoints[i];
+            }
+            return best;
+        }
+
+        // Rounded half-up to the cent; never more than the line itself
+        public int lineDiscount(int menuItemId, int lineCents, LocalDate day) {
+            int bp = basisPoints(menuItemId, day);
+            if (bp == 0 || lineCents <= 0) return 0;
+            return (int) Math.min(lineCents, ((long) lineCents * bp + 5_000) / 10_000);
+        }
+
+        public Quote quote(List<OrderService.CartLine> cart, LocalDate day) {
+            int subtotal = 0;
+            int discount = 0;
+            for (OrderService.CartLine line : cart) {
+                int lineCents = line.unitPriceCents() * line.quantity();
+                subtotal += lineCents;
+                discount += lineDiscount(line.menuItemId(), lineCents, day);
+            }
+            return Quote.of(subtotal, discount);
+        }
+    }
+
+    private volatile Snapshot snapshot;
+
+    private PromoPricing() {}
+
+    public static PromoPricing instance() {
+        return INSTANCE;
+    }
+
+    public Snapshot current() {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        synchronized (this) {
+            if (snapshot == null) refresh(true);
+            return snapshot;
+        }
+    }
+
+    public Quote quote(List<OrderService.CartLine> cart, LocalDate day) {
+        return current().quote(cart, day);
+    }
+
+    // One single-row read; rebuilds only when promo has changed since the current snapshot
+    public synchronized boolean refreshIfChanged() {
+        return refresh(false);
+    }
+
+    private boolean refresh(boolean force) {
+        try (Connection conn = Database.getReadConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long version = readVersion(conn);
+                Snapshot s = snapshot;
+                if (!force && s != null && s.version == version) return false;
+                List<PromoService.Promo> live = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL)) {
+                    ps.setString(1, LocalDate.now().toString());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            live.add(new PromoService.Promo(rs.getInt(1), rs.getInt(2), rs.getDouble(3),
+                                    LocalDate.parse(rs.getString(4)), LocalDate.parse(rs.getString(5)),
+                                    rs.getString(6), rs.getInt(7) == 1));
+                        }
+                    }
+                }
+                snapshot = new Snapshot(version, live);
+                log.debug("Promo pricing v{} loaded with {} promos", version, live.size());
+                return true;
+            } finally {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long readVersion(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(VERSION_SQL); ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
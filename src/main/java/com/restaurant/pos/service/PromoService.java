@@ -1,6 +1,7 @@
 package com.restaurant.pos.service;
 
 import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
 
 import java.sql.*;
 import java.time.LocalDate;
@@ -10,70 +11,81 @@ import java.util.List;
 public class PromoService {
     public static record Promo(int id, int menuItemId, double discountPercent, LocalDate startDate, LocalDate endDate, String reason, boolean autoGenerated) {}
 
-    public void generateExpiryBasedPromos(int daysBeforeExpiry, double discountPercent) {
-        String expiringSql = "SELECT DISTINCT menu_item_id, MIN(expiry_date) AS expiry FROM inventory_batch WHERE expiry_date IS NOT NULL AND DATE(expiry_date) <= DATE('now', ?) AND quantity > 0 GROUP BY menu_item_id";
-        try (Connection conn = Database.getConnection()) {
-            conn.setAutoCommit(false);
-            try (PreparedStatement ps = conn.prepareStatement(expiringSql)) {
-                ps.setString(1, "+" + daysBeforeExpiry + " day");
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        int menuItemId = rs.getInt("menu_item_id");
-                        LocalDate today = LocalDate.now();
-                        LocalDate end = today.plusDays(daysBeforeExpiry);
-                        upsertPromo(conn, menuItemId, discountPercent, today, end, "Expiry-based promo", true);
+    // Outcome of one generation run; retired counts expired auto promos taken out of the live set
+    public static record PromoRunReport(int created, int updated, int retired) {}
+
+    // Items with live stock expiring on or before the cutoff; a plain range on idx_inventory_live_expiry
+    private static final String EXPIRING =
+            "SELECT DISTINCT menu_item_id FROM inventory_batch WHERE expiry_date IS NOT NULL AND expiry_date <= ? AND quantity > 0";
+
+    private static final String RETIRE_EXPIRED =
+            "UPDATE promo SET retired = 1 WHERE auto_generated = 1 AND retired = 0 AND end_date < ?";
+
+    private static final String COUNT_EXISTING =
+            "SELECT COUNT(*) FROM promo WHERE auto_generated = 1 AND retired = 0 AND menu_item_id IN (" + EXPIRING + ")";
+
+    // One statement for every expiring item; conflicts land on ux_promo_auto_live
+    private static final String UPSERT =
+            "INSERT INTO promo(menu_item_id, discount_percent, start_date, end_date, reason, auto_generated) " +
+            "SELECT menu_item_id, ?, ?, ?, ?, 1 FROM (" + EXPIRING + ") WHERE true " +
+            "ON CONFLICT(menu_item_id) WHERE auto_generated = 1 AND retired = 0 DO UPDATE SET " +
+            "discount_percent = excluded.discount_percent, start_date = excluded.start_date, " +
+            "end_date = excluded.end_date, reason = excluded.reason";
+
+    public PromoRunReport generateExpiryBasedPromos(int daysBeforeExpiry, double discountPercent) {
+        LocalDate today = LocalDate.now();
+        String cutoff = today.plusDays(daysBeforeExpiry).toString();
+        try {
+            PromoRunReport report = Transactions.write(conn -> {
+                int retired;
+                try (PreparedStatement ps = conn.prepareStatement(RETIRE_EXPIRED)) {
+                    ps.setString(1, today.toString());
+                    retired = ps.executeUpdate();
+                }
+                int existing;
+                try (PreparedStatement ps = conn.prepareStatement(COUNT_EXISTING)) {
+                    ps.setString(1, cutoff);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        existing = rs.next() ? rs.getInt(1) : 0;
                     }
                 }
-            }
-            conn.commit();
+                int affected;
+                try (PreparedStatement ps = conn.prepareStatement(UPSERT)) {
+                    ps.setDouble(1, discountPercent);
+                    ps.setString(2, today.toString());
+                    ps.setString(3, cutoff);
+                    ps.setString(4, "Expiry-based promo");
+                    ps.setString(5, cutoff);
+                    affected = ps.executeUpdate();
+                }
+                return new PromoRunReport(affected - existing, existing, retired);
+            });
+            PromoPricing.instance().refreshIfChanged();
+            return report;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void upsertPromo(Connection conn, int menuItemId, double discountPercent, LocalDate start, LocalDate end, String reason, boolean auto) throws SQLException {
-        String exists = "SELECT id FROM promo WHERE menu_item_id = ? AND auto_generated = 1 AND DATE(end_date) >= DATE('now')";
-        try (PreparedStatement ps = conn.prepareStatement(exists)) {
-            ps.setInt(1, menuItemId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    int id = rs.getInt(1);
-                    try (PreparedStatement upd = conn.prepareStatement("UPDATE promo SET discount_percent=?, start_date=?, end_date=?, reason=? WHERE id=?")) {
-                        upd.setDouble(1, discountPercent);
-                        upd.setString(2, start.toString());
-                        upd.setString(3, end.toString());
-                        upd.setString(4, reason);
-                        upd.setInt(5, id);
-                        upd.executeUpdate();
-                    }
-                } else {
-                    try (PreparedStatement ins = conn.prepareStatement("INSERT INTO promo(menu_item_id, discount_percent, start_date, end_date, reason, auto_generated) VALUES (?,?,?,?,?,1)")) {
-                        ins.setInt(1, menuItemId);
-                        ins.setDouble(2, discountPercent);
-                        ins.setString(3, start.toString());
-                        ins.setString(4, end.toString());
-                        ins.setString(5, reason);
-                        ins.executeUpdate();
-                    }
-                }
-            }
-        }
-    }
-
     public List<Promo> listActivePromos() {
-        String sql = "SELECT id, menu_item_id, discount_percent, start_date, end_date, reason, auto_generated FROM promo WHERE DATE(start_date) <= DATE('now') AND DATE(end_date) >= DATE('now') ORDER BY end_date";
+        String sql = "SELECT id, menu_item_id, discount_percent, start_date, end_date, reason, auto_generated FROM promo WHERE start_date <= ? AND end_date >= ? ORDER BY end_date";
         List<Promo> promos = new ArrayList<>();
-        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                promos.add(new Promo(
-                        rs.getInt(1),
-                        rs.getInt(2),
-                        rs.getDouble(3),
-                        LocalDate.parse(rs.getString(4)),
-                        LocalDate.parse(rs.getString(5)),
-                        rs.getString(6),
-                        rs.getInt(7) == 1
-                ));
+        String today = LocalDate.now().toString();
+        try (Connection conn = Database.getReadConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, today);
+            ps.setString(2, today);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    promos.add(new Promo(
+                            rs.getInt(1),
+                            rs.getInt(2),
+                            rs.getDouble(3),
+                            LocalDate.parse(rs.getString(4)),
+                            LocalDate.parse(rs.getString(5)),
+                            rs.getString(6),
+                            rs.getInt(7) == 1
+                    ));
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -0,0 +1,152 @@
+package com.restaurant.pos.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Structured receipt captured at checkout. Stored compactly in order_receipt_data and rendered to the fixed-width
+ * text layout on demand, so checkout neither re-reads the order nor formats text inside its transaction.
+ */
+public record Receipt(int orderId, String createdAt, List<Line> lines,
+                      int subtotalCents, int discountCents, int taxCents, int totalCents) {
+    public static record Line(String name, int quantity, int lineTotalCents) {}
+
+    private static final int FORMAT_V1 = 1;
+
+    // Layout: item column, qty column, total column, separated by single spaces (40 chars wide)
+    private static final int NAME_W = 20;
+    private static final int QTY_W = 5;
+    private static final int MONEY_W = 8;
+    private static final int LABEL_W = 20;
+    private static final int SUMMARY_W = 13;
+    private static final String RULE = "----------------------------------------\n";
+    private static final String HEADER = "=== Restaurant Receipt ===\n";
+    private static final String COLUMNS = pad("Item", NAME_W) + ' ' + leftPad("Qty", QTY_W) + ' ' + leftPad("Total", MONEY_W) + '\n';
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    static Receipt of(int orderId, String createdAt, List<OrderService.CartLine> cart,
+                      int subtotalCents, int discountCents, int taxCents, int totalCents) {
+        List<Line> lines = new ArrayList<>(cart.size());
+        for (OrderService.CartLine c : cart) {
+            lines.add(new Line(c.name(), c.quantity(), c.unitPriceCents() * c.quantity()));
+        }
+        return new Receipt(orderId, createdAt, lines, subtotalCents, discountCents, taxCents, totalCents);
+    }
+
+    public String render() {
+        StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        sb.append(HEADER);
+        sb.append("Order #").append(orderId).append('\n');
+        sb.append("Date: ").append(createdAt).append("\n\n");
+        sb.append(COLUMNS).append(RULE);
+        for (Line l : lines) {
+            appendPadded(sb, l.name(), NAME_W);
+            sb.append(' ');
+            appendLeftPadded(sb, Integer.toString(l.quantity()), QTY_W);
+            sb.append(' ');
+            appendMoney(sb, l.lineTotalCents(), MONEY_W);
+            sb.append('\n');
+        }
+        sb.append(RULE);
+        appendSummary(sb, "Subtotal:", subtotalCents);
+        if (discountCents != 0) appendSummary(sb, "Discount:", -discountCents);
+        appendSummary(sb, "Tax:", taxCents);
+        appendSummary(sb, "Total:", totalCents);
+        sb.append("\nThank you!\n");
+        return sb.toString();
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + lines.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_V1);
+            out.writeInt(orderId);
+            out.writeUTF(createdAt);
+            out.writeShort(lines.size());
+            for (Line l : lines) {
+                out.writeUTF(l.name());
+                out.writeInt(l.quantity());
+                out.writeInt(l.lineTotalCents());
+            }
+            out.writeInt(subtotalCents);
+            out.writeInt(discountCents);
+            out.writeInt(taxCents);
+            out.writeInt(totalCents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Receipt decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int format = in.readUnsignedByte();
+            if (format != FORMAT_V1) throw new IllegalArgumentException("Unknown receipt format " + format);
+            int orderId = in.readInt();
+            String createdAt = in.readUTF();
+            int n = in.readUnsignedShort();
+            List<Line> lines = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                lines.add(new Line(in.readUTF(), in.readInt(), in.readInt()));
+            }
+            return new Receipt(orderId, createdAt, lines, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void appendSummary(StringBuilder sb, String label, int cents) {
+        appendPadded(sb, label, LABEL_W);
+        sb.append(' ');
+        appendMoney(sb, cents, SUMMARY_W);
+        sb.append('\n');
+    }
+
+    // Writes cents as d.dd right-aligned in width, without going through String.format
+    private static void appendMoney(StringBuilder sb, int cents, int width) {
+        long abs = Math.abs((long) cents);
+        long whole = abs / 100;
+        int frac = (int) (abs % 100);
+        int len = Long.toString(whole).length() + 3 + (cents < 0 ? 1 : 0);
+        for (int i = len; i < width; i++) sb.append(' ');
+        if (cents < 0) sb.append('-');
+        sb.append(whole).append('.');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+
+    // Left-aligned and cut to width so long names cannot break the columns
+    private static void appendPadded(StringBuilder sb, String s, int width) {
+        if (s.length() >= width) {
+            sb.append(s, 0, width);
+            return;
+        }
+        sb.append(s);
+        for (int i = s.length(); i < width; i++) sb.append(' ');
+    }
+
+    private static void appendLeftPadded(StringBuilder sb, String s, int width) {
+        for (int i = s.length(); i < width; i++) sb.append(' ');
+        sb.append(s);
+    }
+
+    private static String pad(String s, int width) {
+        StringBuilder sb = new StringBuilder(width);
+        appendPadded(sb, s, width);
+        return sb.toString();
+    }
+
+    private static String leftPad(String s, int width) {
+        StringBuilder sb = new StringBuilder(width);
+        appendLeftPadded(sb, s, width);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.restaurant.pos.service;
+
+import java.time.LocalTime;
+
+/**
+ * When a due job may actually start. A job is eligible inside its off-peak window, or whenever checkout
+ * volume is below quietBelowOrdersPerMinute; with neither set it always runs on time. The window may wrap
+ * midnight (22:00-06:00).
+ */
+public record RunPolicy(LocalTime offPeakStart, LocalTime offPeakEnd, int quietBelowOrdersPerMinute) {
+    public static final RunPolicy ANYTIME = new RunPolicy(null, null, 0);
+
+    public static RunPolicy offPeak(LocalTime start, LocalTime end) {
+        return new RunPolicy(start, end, 0);
+    }
+
+    public static RunPolicy whenQuiet(int belowOrdersPerMinute) {
+        return new RunPolicy(null, null, belowOrdersPerMinute);
+    }
+
+    public RunPolicy orWhenQuiet(int belowOrdersPerMinute) {
+        return new RunPolicy(offPeakStart, offPeakEnd, belowOrdersPerMinute);
+    }
+
+    boolean unrestricted() {
+        return offPeakStart == null && quietBelowOrdersPerMinute <= 0;
+    }
+
+    boolean allows(LocalTime now, int ordersPerMinute) {
+        if (unrestricted()) return true;
+        if (quietBelowOrdersPerMinute > 0 && ordersPerMinute < quietBelowOrdersPerMinute) return true;
+        if (offPeakStart == null) return false;
+        return offPeakStart.isBefore(offPeakEnd)
+                ? !now.isBefore(offPeakStart) && now.isBefore(offPeakEnd)
+                : !now.isBefore(offPeakStart) || now.isBefore(offPeakEnd);
+    }
+}
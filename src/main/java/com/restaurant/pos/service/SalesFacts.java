@@ -0,0 +1,526 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Archives;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Timestamps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only columnar copy of every order line for analytics scans: epoch_day, hour, menu_item_id, qty,
+ * revenue_cents and discount_cents, one fixed-width little-endian file per column under data/facts, memory-mapped in
+ * chunks of {@link #CHUNK_ROWS} rows. Scans are primitive loops over the mapped pages that allocate nothing per row;
+ * every chunk keeps the smallest and largest day it holds, so a date range only reads the chunks that can match.
+ *
+ * <p>SQLite stays the source of truth and the store can always be rebuilt from it, archived months included. Committed
+ * orders are appended by the process holding the lock on data/facts/meta; orders committed by other processes are
+ * picked up by id before each scan. Writers serialize on the database, so ids are handed out in commit order and "every
+ * order up to lastOrderId" is a complete high-water mark. The one exception is the order journal, whose ids are handed
+ * out before their orders commit; the high-water mark never passes its horizon. discount_cents is the order discount
+ * spread over its lines in proportion to their totals, which a rebuild from order_item reproduces exactly.
+ *
+ * <p>Pages reach the disk when the OS writes them back or at a checkpoint, which forces the columns and records how
+ * many rows are durable. After an unclean shutdown the store falls back to the last checkpoint and catches up.
+ */
+public final class SalesFacts {
+    private static final Logger log = LoggerFactory.getLogger(SalesFacts.class);
+
+    private static final SalesFacts INSTANCE = new SalesFacts();
+
+    static final int CHUNK_SHIFT = 18;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int MAX_CHUNKS = 1 << 12;
+
+    // Meta file: format header, the live high-water mark and the last checkpoint with its check word
+    private static final int MAGIC = 0x53414C46;
+    private static final int FORMAT = 1;
+    private static final int META_BYTES = 64;
+    private static final int MAGIC_AT = 0;
+    private static final int FORMAT_AT = 4;
+    private static final int CLEAN_AT = 8;
+    private static final int ROWS_AT = 16;
+    private static final int LAST_ORDER_AT = 24;
+    private static final int CHECKPOINT_ROWS_AT = 32;
+    private static final int CHECKPOINT_ORDER_AT = 40;
+    private static final int CHECKPOINT_CHECK_AT = 48;
+
+    // %s is the schema: main, or an attached archive. Orders without lines still move the high-water mark
+    private static final String LINES_SQL =
+            "SELECT o.id, o.created_ms, o.subtotal_cents, o.discount_cents, oi.menu_item_id, oi.quantity, oi.line_total_cents " +
+            "FROM %1$s.orders o LEFT JOIN %1$s.order_item oi ON oi.order_id = o.id " +
+            "WHERE o.id > ? AND o.id < ? ORDER BY o.id, oi.id";
+    private static final String MAX_ORDER_SQL = "SELECT MAX(id) FROM orders";
+    // Only the hot database, for a process that does not own the store
+    private static final String HOURLY_SQL =
+            "SELECT CAST(SUBSTR(o.created_at, 12, 2) AS INTEGER), SUM(oi.quantity), SUM(oi.line_total_cents), " +
+            "SUM(oi.line_total_cents * o.discount_cents / MAX(o.subtotal_cents, 1)) " +
+            "FROM orders o JOIN order_item oi ON oi.order_id = o.id WHERE o.created_ms >= ? AND o.created_ms < ? GROUP BY 1";
+
+    // Totals per hour of the day (index 0-23) over [from, to]
+    public static record HourlySales(LocalDate from, LocalDate to, long[] qty, long[] revenueCents, long[] discountCents) {}
+
+    private static final class Column {
+        private final FileChannel channel;
+        private final int width;
+        private final ByteBuffer[] bytes = new ByteBuffer[MAX_CHUNKS];
+        private final IntBuffer[] ints = new IntBuffer[MAX_CHUNKS];
+
+        Column(Path file, int width) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.width = width;
+        }
+
+        // Extends the file as needed; mappings stay valid after the channel is closed
+        void map(int chunk) throws IOException {
+            if (bytes[chunk] != null) return;
+            long size = (long) CHUNK_ROWS * width;
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, chunk * size, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (width == Integer.BYTES) ints[chunk] = buf.asIntBuffer();
+            bytes[chunk] = buf;
+        }
+
+        void force() {
+            for (ByteBuffer b : bytes) {
+                if (b == null) break;
+                ((MappedByteBuffer) b).force();
+            }
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private FileChannel metaChannel;
+    private FileLock lock;
+    private volatile MappedByteBuffer meta;
+    private Column day;
+    private Column hour;
+    private Column item;
+    private Column qty;
+    private Column revenue;
+    private Column discount;
+    private List<Column> columns;
+
+    // rows is the publication point: column writes and zone maps below it are visible to any scan that reads it
+    private volatile int rows;
+    private volatile int lastOrderId;
+    private int checkpointedRows = -1;
+    private final int[] minDay = new int[MAX_CHUNKS];
+    private final int[] maxDay = new int[MAX_CHUNKS];
+    private int maxItemId;
+
+    private SalesFacts() {}
+
+    public static SalesFacts instance() {
+        return INSTANCE;
+    }
+
+    // False when another process owns the files (or before open()); scans then fall back to SQLite
+    public boolean isOpen() {
+        return meta != null;
+    }
+
+    /**
+     * Maps the store and brings it up to date with the database, building it from scratch on first use. Call after
+     * Database.initialize(). Does nothing but log when another process already has the store open.
+     */
+    public synchronized void open() {
+        if (meta != null) return;
+        Path dir = Database.dataFile("facts");
+        try {
+            Files.createDirectories(dir);
+            FileChannel ch = FileChannel.open(dir.resolve("meta"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock l = ch.tryLock();
+            if (l == null) {
+                ch.close();
+                log.warn("Sales fact store {} is open in another process; analytics read SQLite instead", dir);
+                return;
+            }
+            metaChannel = ch;
+            lock = l;
+            day = new Column(dir.resolve("epoch_day.i32"), Integer.BYTES);
+            hour = new Column(dir.resolve("hour.i8"), Byte.BYTES);
+            item = new Column(dir.resolve("menu_item_id.i32"), Integer.BYTES);
+            qty = new Column(dir.resolve("qty.i32"), Integer.BYTES);
+            revenue = new Column(dir.resolve("revenue_cents.i32"), Integer.BYTES);
+            discount = new Column(dir.resolve("discount_cents.i32"), Integer.BYTES);
+            columns = List.of(day, hour, item, qty, revenue, discount);
+
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_WRITE, 0, META_BYTES);
+            m.order(ByteOrder.LITTLE_ENDIAN);
+            long startRows = 0;
+            long startOrder = 0;
+            if (m.getInt(MAGIC_AT) == MAGIC && m.getInt(FORMAT_AT) == FORMAT) {
+                if (m.getInt(CLEAN_AT) == 1) {
+                    startRows = m.getLong(ROWS_AT);
+                    startOrder = m.getLong(LAST_ORDER_AT);
+                } else if (m.getLong(CHECKPOINT_CHECK_AT) == check(m.getLong(CHECKPOINT_ROWS_AT), m.getLong(CHECKPOINT_ORDER_AT))) {
+                    startRows = m.getLong(CHECKPOINT_ROWS_AT);
+                    startOrder = m.getLong(CHECKPOINT_ORDER_AT);
+                    log.info("Sales fact store was not closed cleanly; resuming from checkpoint at order {}", startOrder);
+                }
+            }
+            m.putInt(MAGIC_AT, MAGIC);
+            m.putInt(FORMAT_AT, FORMAT);
+            m.putInt(CLEAN_AT, 0);
+            meta = m;
+            restore((int) startRows, (int) startOrder);
+            long t0 = System.nanoTime();
+            catchUp();
+            checkpoint();
+            log.info("Sales fact store open: {} lines up to order {} (caught up in {} ms)",
+                    rows, lastOrderId, (System.nanoTime() - t0) / 1_000_000);
+        } catch (IOException | SQLException | RuntimeException e) {
+            closeQuietly();
+            throw new RuntimeException("Cannot open sales fact store in " + dir, e);
+        }
+    }
+
+    // Forces everything to disk and marks the store clean, so the next open starts from the live high-water mark
+    public synchronized void close() {
+        if (meta == null) return;
+        checkpoint();
+        meta.putInt(CLEAN_AT, 1);
+        meta.force();
+        closeQuietly();
+    }
+
+    // Returns false when nothing was appended since the previous checkpoint
+    public synchronized boolean checkpoint() {
+        MappedByteBuffer m = meta;
+        if (m == null || checkpointedRows == rows) return false;
+        for (Column c : columns) c.force();
+        int r = rows;
+        int last = lastOrderId;
+        m.putLong(CHECKPOINT_ROWS_AT, r);
+        m.putLong(CHECKPOINT_ORDER_AT, last);
+        m.putLong(CHECKPOINT_CHECK_AT, check(r, last));
+        m.force();
+        checkpointedRows = r;
+        return true;
+    }
+
+    // Drops every line and reads them all back from the database, archives included
+    public synchronized void rebuild() {
+        if (meta == null) return;
+        try {
+            publish(0, 0);
+            catchUp();
+            checkpoint();
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Rebuilt sales fact store with {} lines up to order {}", rows, lastOrderId);
+    }
+
+    /**
+     * Appends a just-committed order; runs on the writer connection after the commit. Orders already in the store
+     * are ignored, and any gap below this one (orders committed by other processes) is read from the database first.
+     * Never fails the checkout: on error the order is left for the next catch-up.
+     */
+    synchronized void append(Connection conn, int orderId, long createdMs, List<OrderService.CartLine> lines,
+                             int subtotalCents, int discountCents) {
+        if (meta == null || orderId <= lastOrderId || orderId > OrderJournal.instance().horizon()) return;
+        try {
+            if (orderId > lastOrderId + 1) appendFrom(conn, "main", lastOrderId, orderId);
+            int[] dayHour = dayHour(createdMs);
+            int row = rows;
+            long cumulative = 0;
+            int allocated = 0;
+            for (OrderService.CartLine line : lines) {
+                int lineCents = line.unitPriceCents() * line.quantity();
+                cumulative += lineCents;
+                int share = share(cumulative, subtotalCents, discountCents) - allocated;
+                allocated += share;
+                put(row++, dayHour[0], dayHour[1], line.menuItemId(), line.quantity(), lineCents, share);
+            }
+            publish(row, orderId);
+        } catch (SQLException | IOException | RuntimeException e) {
+            log.warn("Sales fact append failed for order {}; it is picked up by the next catch-up", orderId, e);
+        }
+    }
+
+    // Quantity per item per day over [from, to], zero-filled, for items that sold at least once in the range
+    public ForecastEngine.History dailyQty(LocalDate from, LocalDate to) {
+        int days = (int) (to.toEpochDay() - from.toEpochDay()) + 1;
+        if (days <= 0) return new ForecastEngine.History(from, new int[0], new int[0][]);
+        catchUpIfBehind();
+        int n = rows;
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int[] slotOf = new int[maxItemId + 1];
+        Arrays.fill(slotOf, -1);
+        int[] ids = new int[64];
+        int[][] series = new int[64][];
+        int items = 0;
+        for (int c = 0, chunks = chunks(n); c < chunks; c++) {
+            if (maxDay[c] < fromDay || minDay[c] > toDay) continue;
+            IntBuffer d = day.ints[c];
+            IntBuffer it = item.ints[c];
+            IntBuffer q = qty.ints[c];
+            for (int i = 0, len = Math.min(CHUNK_ROWS, n - (c << CHUNK_SHIFT)); i < len; i++) {
+                int dd = d.get(i);
+                if (dd < fromDay || dd > toDay) continue;
+                int id = it.get(i);
+                int slot = slotOf[id];
+                if (slot < 0) {
+                    if (items == ids.length) {
+                        ids = Arrays.copyOf(ids, items * 2);
+                        series = Arrays.copyOf(series, items * 2);
+                    }
+                    slot = items++;
+                    slotOf[id] = slot;
+                    ids[slot] = id;
+                    series[slot] = new int[days];
+                }
+                series[slot][dd - fromDay] += q.get(i);
+            }
+        }
+        return new ForecastEngine.History(from, Arrays.copyOf(ids, items), Arrays.copyOf(series, items));
+    }
+
+    // From the store when this process owns it, otherwise from the hot database only
+    public HourlySales hourly(LocalDate from, LocalDate to) {
+        long[] q = new long[24];
+        long[] rev = new long[24];
+        long[] disc = new long[24];
+        if (meta == null) {
+            hourlyFromDatabase(from, to, q, rev, disc);
+            return new HourlySales(from, to, q, rev, disc);
+        }
+        catchUpIfBehind();
+        int n = rows;
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        for (int c = 0, chunks = chunks(n); c < chunks; c++) {
+            if (maxDay[c] < fromDay || minDay[c] > toDay) continue;
+            IntBuffer d = day.ints[c];
+            ByteBuffer h = hour.bytes[c];
+            IntBuffer qt = qty.ints[c];
+            IntBuffer rv = revenue.ints[c];
+            IntBuffer ds = discount.ints[c];
+            for (int i = 0, len = Math.min(CHUNK_ROWS, n - (c << CHUNK_SHIFT)); i < len; i++) {
+                int dd = d.get(i);
+                if (dd < fromDay || dd > toDay) continue;
+                int hh = h.get(i);
+                q[hh] += qt.get(i);
+                rev[hh] += rv.get(i);
+                disc[hh] += ds.get(i);
+            }
+        }
+        return new HourlySales(from, to, q, rev, disc);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    // One indexed read when nothing new was committed elsewhere
+    private void catchUpIfBehind() {
+        try (Connection conn = Database.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(MAX_ORDER_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next() || rs.getInt(1) <= lastOrderId) return;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        synchronized (this) {
+            try {
+                if (meta != null) catchUp();
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /*
+     * Reads every order above the high-water mark: archived months oldest first, then the hot database. The registry
+     * is re-read in the same snapshot as the hot rows, so a month sealed meanwhile is read from its archive instead.
+     */
+    private void catchUp() throws SQLException, IOException {
+        try (Connection conn = Database.getReadConnection()) {
+            while (true) {
+                Archives.Period pending = null;
+                conn.setAutoCommit(false);
+                try {
+                    for (Archives.Period p : Archives.sealed(conn)) {
+                        if (p.orders() > 0 && p.lastOrderId() > lastOrderId) pending = p;
+                    }
+                    if (pending == null) {
+                        appendFrom(conn, "main", lastOrderId, OrderJournal.instance().horizon());
+                        return;
+                    }
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                Archives.attach(conn, pending);
+                try {
+                    appendFrom(conn, Archives.ALIAS, lastOrderId, Integer.MAX_VALUE);
+                } finally {
+                    Archives.detach(conn);
+                }
+                if (lastOrderId < pending.lastOrderId()) publish(rows, pending.lastOrderId());
+            }
+        }
+    }
+
+    // Orders in (afterId, beforeId) from one schema, published an order at a time
+    private void appendFrom(Connection conn, String schema, int afterId, int beforeId) throws SQLException, IOException {
+        try (PreparedStatement ps = conn.prepareStatement(LINES_SQL.formatted(schema))) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, beforeId);
+            try (ResultSet rs = ps.executeQuery()) {
+                int row = rows;
+                int current = -1;
+                int[] dayHour = null;
+                int subtotal = 0;
+                int orderDiscount = 0;
+                long cumulative = 0;
+                int allocated = 0;
+                while (rs.next()) {
+                    int orderId = rs.getInt(1);
+                    if (orderId != current) {
+                        if (current >= 0) publish(row, current);
+                        current = orderId;
+                        dayHour = dayHour(rs.getLong(2));
+                        subtotal = rs.getInt(3);
+                        orderDiscount = rs.getInt(4);
+                        cumulative = 0;
+                        allocated = 0;
+                    }
+                    int itemId = rs.getInt(5);
+                    if (rs.wasNull()) continue;
+                    int lineCents = rs.getInt(7);
+                    cumulative += lineCents;
+                    int share = share(cumulative, subtotal, orderDiscount) - allocated;
+                    allocated += share;
+                    put(row++, dayHour[0], dayHour[1], itemId, rs.getInt(6), lineCents, share);
+                }
+                if (current >= 0) publish(row, current);
+            }
+        }
+    }
+
+    // Discount owed by the lines so far, rounded half up; the last line of an order therefore takes the remainder
+    private static int share(long cumulativeCents, int subtotalCents, int discountCents) {
+        if (subtotalCents <= 0) return 0;
+        return (int) ((cumulativeCents * discountCents * 2 + subtotalCents) / (2L * subtotalCents));
+    }
+
+    // Writes one line; scans only see it once publish() moves rows past it
+    private void put(int row, int epochDay, int hourOfDay, int itemId, int quantity, int revenueCents, int discountCents)
+            throws IOException {
+        int c = row >>> CHUNK_SHIFT;
+        int i = row & (CHUNK_ROWS - 1);
+        if (c >= MAX_CHUNKS) throw new IOException("Sales fact store is full");
+        for (Column col : columns) col.map(c);
+        day.ints[c].put(i, epochDay);
+        hour.bytes[c].put(i, (byte) hourOfDay);
+        item.ints[c].put(i, itemId);
+        qty.ints[c].put(i, quantity);
+        revenue.ints[c].put(i, revenueCents);
+        discount.ints[c].put(i, discountCents);
+        if (i == 0 || epochDay < minDay[c]) minDay[c] = epochDay;
+        if (i == 0 || epochDay > maxDay[c]) maxDay[c] = epochDay;
+        if (itemId > maxItemId) maxItemId = itemId;
+    }
+
+    private void publish(int newRows, int orderId) {
+        MappedByteBuffer m = meta;
+        m.putLong(ROWS_AT, newRows);
+        m.putLong(LAST_ORDER_AT, orderId);
+        lastOrderId = orderId;
+        rows = newRows;
+    }
+
+    // Maps the surviving rows and rebuilds the zone maps and item bound from them
+    private void restore(int startRows, int startOrder) throws IOException {
+        maxItemId = 0;
+        for (int c = 0, chunks = chunks(startRows); c < chunks; c++) {
+            for (Column col : columns) col.map(c);
+            int lo = Integer.MAX_VALUE;
+            int hi = Integer.MIN_VALUE;
+            IntBuffer d = day.ints[c];
+            IntBuffer it = item.ints[c];
+            for (int i = 0, len = Math.min(CHUNK_ROWS, startRows - (c << CHUNK_SHIFT)); i < len; i++) {
+                int dd = d.get(i);
+                lo = Math.min(lo, dd);
+                hi = Math.max(hi, dd);
+                maxItemId = Math.max(maxItemId, it.get(i));
+            }
+            minDay[c] = lo;
+            maxDay[c] = hi;
+        }
+        publish(startRows, startOrder);
+    }
+
+    private static int[] dayHour(long epochMillis) {
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        long localSeconds = instant.getEpochSecond() + ZoneId.systemDefault().getRules().getOffset(instant).getTotalSeconds();
+        return new int[]{(int) Math.floorDiv(localSeconds, 86_400L), (int) (Math.floorMod(localSeconds, 86_400L) / 3_600)};
+    }
+
+    private static int chunks(int rows) {
+        return (rows + CHUNK_ROWS - 1) >>> CHUNK_SHIFT;
+    }
+
+    private static long check(long rows, long orderId) {
+        return (rows * 31 + orderId) ^ 0x5A5A5A5A5A5A5A5AL;
+    }
+
+    private static void hourlyFromDatabase(LocalDate from, LocalDate to, long[] q, long[] rev, long[] disc) {
+        try (Connection conn = Database.getReadConnection(); PreparedStatement ps = conn.prepareStatement(HOURLY_SQL)) {
+            ps.setLong(1, Timestamps.startOfDay(from));
+            ps.setLong(2, Timestamps.startOfDay(to.plusDays(1)));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int h = rs.getInt(1);
+                    q[h] = rs.getLong(2);
+                    rev[h] = rs.getLong(3);
+                    disc[h] = rs.getLong(4);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void closeQuietly() {
+        meta = null;
+        try {
+            if (columns != null) {
+                for (Column c : columns) c.close();
+            }
+            if (lock != null) lock.release();
+            if (metaChannel != null) metaChannel.close();
+        } catch (IOException e) {
+            log.warn("Closing sales fact store failed", e);
+        }
+        columns = null;
+        lock = null;
+        metaChannel = null;
+        checkpointedRows = -1;
+    }
+}
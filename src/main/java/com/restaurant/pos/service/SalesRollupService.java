@@ -0,0 +1,87 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Archives;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Timestamps;
+import com.restaurant.pos.db.Transactions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains sales_daily(menu_item_id, day, qty, revenue_cents). Checkout adds to it inside its own transaction,
+ * so analytics can read per-day totals with an index range scan instead of aggregating the order history.
+ */
+public class SalesRollupService {
+    private static final Logger log = LoggerFactory.getLogger(SalesRollupService.class);
+
+    private static final String UPSERT_SQL = "INSERT INTO sales_daily(menu_item_id, day, qty, revenue_cents) VALUES (?,?,?,?) " +
+            "ON CONFLICT(menu_item_id, day) DO UPDATE SET qty = qty + excluded.qty, revenue_cents = revenue_cents + excluded.revenue_cents";
+
+    private static final String REBUILD_SQL = "INSERT INTO sales_daily(menu_item_id, day, qty, revenue_cents) " +
+            "SELECT oi.menu_item_id, SUBSTR(o.created_at, 1, 10), SUM(oi.quantity), SUM(oi.line_total_cents) " +
+            "FROM orders o JOIN order_item oi ON o.id = oi.order_id WHERE o.created_ms >= ? " +
+            "GROUP BY oi.menu_item_id, SUBSTR(o.created_at, 1, 10)";
+
+    // Adds one order's lines to the rollup; runs on the checkout connection, inside its transaction
+    void recordSale(Connection conn, String day, List<OrderService.CartLine> cart) throws SQLException {
+        Map<Integer, long[]> perItem = new LinkedHashMap<>();
+        for (OrderService.CartLine line : cart) {
+            long[] acc = perItem.computeIfAbsent(line.menuItemId(), k -> new long[2]);
+            acc[0] += line.quantity();
+            acc[1] += (long) line.unitPriceCents() * line.quantity();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(UPSERT_SQL)) {
+            for (Map.Entry<Integer, long[]> e : perItem.entrySet()) {
+                ps.setInt(1, e.getKey());
+                ps.setString(2, day);
+                ps.setLong(3, e.getValue()[0]);
+                ps.setLong(4, e.getValue()[1]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /*
+     * Recomputes the rollup from orders/order_item; used for backfill and repair. Only the days still in the hot
+     * database are recomputed: archived months are closed, so their rows are final and their orders are gone.
+     */
+    public int rebuild() {
+        try {
+            int rows = Transactions.write(conn -> {
+                long hotFromMs = Archives.hotFromMs(conn);
+                String hotFromDay = hotFromMs == Long.MIN_VALUE ? "" : Timestamps.local(hotFromMs).toLocalDate().toString();
+                try (PreparedStatement del = conn.prepareStatement("DELETE FROM sales_daily WHERE day >= ?");
+                     PreparedStatement ins = conn.prepareStatement(REBUILD_SQL)) {
+                    del.setString(1, hotFromDay);
+                    del.executeUpdate();
+                    ins.setLong(1, hotFromMs);
+                    return ins.executeUpdate();
+                }
+            });
+            log.info("Rebuilt sales_daily with {} rows", rows);
+            return rows;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Backfills once for databases that have orders from before the rollup existed
+    public void backfillIfEmpty() {
+        boolean needed;
+        try (Connection conn = Database.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT NOT EXISTS (SELECT 1 FROM sales_daily) AND EXISTS (SELECT 1 FROM orders)");
+             ResultSet rs = ps.executeQuery()) {
+            needed = rs.next() && rs.getInt(1) == 1;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        if (needed) rebuild();
+    }
+}
@@ -0,0 +1,111 @@
+package com.restaurant.pos.service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+// When a background job is due. next() always returns a time strictly after its argument.
+public interface Schedule {
+    ZonedDateTime next(ZonedDateTime after);
+
+    static Schedule every(Duration period) {
+        if (period.isZero() || period.isNegative()) throw new IllegalArgumentException("Period must be positive: " + period);
+        return after -> after.plus(period);
+    }
+
+    // Five-field cron expression (minute hour day-of-month month day-of-week), local time zone
+    static Schedule cron(String expression) {
+        return new Cron(expression);
+    }
+
+    // Supports *, single values, lists, ranges and steps ("*/15", "1-5", "0,30"). As in cron, when both
+    // day-of-month and day-of-week are restricted a day matches if either does; Sunday is 0 or 7.
+    final class Cron implements Schedule {
+        // Far enough for any satisfiable expression, including Feb 29
+        private static final int MAX_YEARS = 8;
+
+        private final String expression;
+        private final BitSet minutes;
+        private final BitSet hours;
+        private final BitSet daysOfMonth;
+        private final BitSet months;
+        private final BitSet daysOfWeek;
+        private final boolean anyDayOfMonth;
+        private final boolean anyDayOfWeek;
+
+        private Cron(String expression) {
+            String[] f = expression.trim().split("\\s+");
+            if (f.length != 5) throw new IllegalArgumentException("Expected 5 cron fields: " + expression);
+            this.expression = expression;
+            this.minutes = parse(f[0], 0, 59);
+            this.hours = parse(f[1], 0, 23);
+            this.daysOfMonth = parse(f[2], 1, 31);
+            this.months = parse(f[3], 1, 12);
+            this.daysOfWeek = parse(f[4], 0, 7);
+            if (daysOfWeek.get(7)) daysOfWeek.set(0);
+            this.anyDayOfMonth = f[2].equals("*");
+            this.anyDayOfWeek = f[4].equals("*");
+        }
+
+        @Override
+        public ZonedDateTime next(ZonedDateTime after) {
+            ZonedDateTime t = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+            ZonedDateTime limit = after.plusYears(MAX_YEARS);
+            while (t.isBefore(limit)) {
+                if (!months.get(t.getMonthValue())) {
+                    t = t.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+                } else if (!dayMatches(t)) {
+                    t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                } else if (!hours.get(t.getHour())) {
+                    t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                } else if (!minutes.get(t.getMinute())) {
+                    t = t.plusMinutes(1);
+                } else {
+                    return t;
+                }
+            }
+            throw new IllegalStateException("Cron expression never fires: " + expression);
+        }
+
+        private boolean dayMatches(ZonedDateTime t) {
+            boolean dom = daysOfMonth.get(t.getDayOfMonth());
+            boolean dow = daysOfWeek.get(t.getDayOfWeek().getValue() % 7);
+            if (anyDayOfMonth) return dow;
+            if (anyDayOfWeek) return dom;
+            return dom || dow;
+        }
+
+        private static BitSet parse(String field, int min, int max) {
+            BitSet bits = new BitSet(max + 1);
+            for (String part : field.split(",")) {
+                int step = 1;
+                int slash = part.indexOf('/');
+                if (slash >= 0) {
+                    step = Integer.parseInt(part.substring(slash + 1));
+                    part = part.substring(0, slash);
+                }
+                int lo;
+                int hi;
+                if (part.equals("*")) {
+                    lo = min;
+                    hi = max;
+                } else {
+                    int dash = part.indexOf('-');
+                    lo = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+                    hi = dash < 0 ? (slash >= 0 ? max : lo) : Integer.parseInt(part.substring(dash + 1));
+                }
+                if (lo < min || hi > max || lo > hi || step < 1) {
+                    throw new IllegalArgumentException("Bad cron field '" + field + "'");
+                }
+                for (int v = lo; v <= hi; v += step) bits.set(v);
+            }
+            return bits;
+        }
+
+        @Override
+        public String toString() {
+            return "cron(" + expression + ")";
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Archives;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time stock from periodic per-item snapshots plus the inventory ledger around them. A snapshot records
+ * for every menu item the batch quantity on hand, the quantity the ledger says should be on hand, and the highest
+ * ledger id it has seen, all inside one write transaction so no movement falls between them. Stock at T is the
+ * nearest snapshot with the ledger rows between it and T replayed, forwards from the last snapshot before T or
+ * backwards from the first one after it, so a query reads at most one snapshot interval of ledger.
+ * <p>
+ * The expected column starts at the first snapshot's on-hand and afterwards only moves with the ledger, so
+ * on_hand - expected is the stock that changed without a ledger row; the variance between two snapshots needs
+ * nothing but the two snapshots.
+ */
+public class StockHistoryService {
+    public static record Taken(long takenMs, int items, int ledgerRows) {}
+
+    // On-hand per menu item at atMs, replayed from the snapshot taken at anchorMs (or the live batches)
+    public static record StockAt(long atMs, long anchorMs, int ledgerRows, Map<Integer, Integer> onHand) {
+        public int onHand(int menuItemId) {
+            return onHand.getOrDefault(menuItemId, 0);
+        }
+    }
+
+    // ledgerChange is what the ledger explains; variance is the rest of the change, negative for shrinkage
+    public static record Variance(int menuItemId, String name, int openingOnHand, int closingOnHand,
+                                  int ledgerChange, int variance) {}
+
+    // Between the snapshots actually used: the last one at or before each end of the requested range
+    public static record VarianceReport(long fromMs, long untilMs, List<Variance> items) {}
+
+    private static final String LATEST = "SELECT taken_ms, ledger_id FROM stock_snapshot ORDER BY taken_ms DESC LIMIT 1";
+    private static final String AT_OR_BEFORE = "SELECT taken_ms, ledger_id FROM stock_snapshot WHERE taken_ms <= ? ORDER BY taken_ms DESC LIMIT 1";
+    private static final String AFTER = "SELECT taken_ms, ledger_id FROM stock_snapshot WHERE taken_ms > ? ORDER BY taken_ms LIMIT 1";
+    private static final String SNAPSHOT_ROWS = "SELECT menu_item_id, on_hand, expected FROM stock_snapshot WHERE taken_ms = ?";
+    private static final String ON_HAND = "SELECT mi.id, COALESCE(SUM(ib.quantity),0) FROM menu_item mi " +
+            "LEFT JOIN inventory_batch ib ON mi.id = ib.menu_item_id GROUP BY mi.id";
+    private static final String MAX_LEDGER_ID = "SELECT COALESCE(MAX(id),0) FROM inventory_ledger";
+    // Rows committed since a snapshot are exactly those above its ledger id; a rowid range, never the whole ledger
+    private static final String LEDGER_SINCE = "SELECT menu_item_id, SUM(quantity_change), COUNT(*) FROM inventory_ledger " +
+            "WHERE id > ? GROUP BY menu_item_id";
+    private static final String INSERT_SNAPSHOT = "INSERT INTO stock_snapshot(taken_ms, menu_item_id, on_hand, expected, ledger_id) VALUES (?,?,?,?,?)";
+    // Replay windows in %s schema's ledger, from created_ms >= ? on. Forward is every row committed after the anchor,
+    // by id alone: a journaled sale is written with its checkout time, which can be older than a snapshot that
+    // missed it. Backward is the rows the anchor had seen that happened after atMs.
+    private static final String REPLAY_FORWARD = "SELECT menu_item_id, SUM(quantity_change), COUNT(*) FROM %s.inventory_ledger " +
+            "WHERE created_ms >= ? AND id > ? AND created_ms <= ?%s GROUP BY menu_item_id";
+    private static final String REPLAY_BACKWARD = "SELECT menu_item_id, -SUM(quantity_change), COUNT(*) FROM %s.inventory_ledger " +
+            "WHERE created_ms >= ? AND id <= ? AND created_ms > ? AND created_ms <= ?%s GROUP BY menu_item_id";
+    private static final String VARIANCE = "SELECT mi.id, mi.name, COALESCE(a.on_hand,0), COALESCE(a.expected,0), " +
+            "COALESCE(b.on_hand,0), COALESCE(b.expected,0) FROM menu_item mi " +
+            "LEFT JOIN stock_snapshot a ON a.taken_ms = ? AND a.menu_item_id = mi.id " +
+            "LEFT JOIN stock_snapshot b ON b.taken_ms = ? AND b.menu_item_id = mi.id ORDER BY mi.name";
+
+    private record Anchor(long takenMs, long ledgerId) {}
+
+    // Reads the batches and the ledger rows since the previous snapshot, on the writer so both are of one instant
+    public Taken take() throws SQLException {
+        return Transactions.write(conn -> {
+            Anchor prev = anchor(conn, LATEST, null);
+            long takenMs = System.currentTimeMillis();
+            if (prev != null && takenMs <= prev.takenMs()) takenMs = prev.takenMs() + 1;
+            long ledgerId = Math.max(prev != null ? prev.ledgerId() : 0, singleLong(conn, MAX_LEDGER_ID));
+
+            Map<Integer, Integer> expected = new HashMap<>();
+            int ledgerRows = 0;
+            if (prev != null) {
+                try (PreparedStatement ps = conn.prepareStatement(SNAPSHOT_ROWS)) {
+                    ps.setLong(1, prev.takenMs());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) expected.put(rs.getInt(1), rs.getInt(3));
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(LEDGER_SINCE)) {
+                    ps.setLong(1, prev.ledgerId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            expected.merge(rs.getInt(1), rs.getInt(2), Integer::sum);
+                            ledgerRows += rs.getInt(3);
+                        }
+                    }
+                }
+            }
+
+            int items = 0;
+            try (PreparedStatement ps = conn.prepareStatement(ON_HAND);
+                 ResultSet rs = ps.executeQuery();
+                 PreparedStatement ins = conn.prepareStatement(INSERT_SNAPSHOT)) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    int onHand = rs.getInt(2);
+                    ins.setLong(1, takenMs);
+                    ins.setInt(2, id);
+                    ins.setInt(3, onHand);
+                    // The first snapshot is the baseline the ledger is measured from
+                    ins.setInt(4, prev == null ? onHand : expected.getOrDefault(id, 0));
+                    ins.setLong(5, ledgerId);
+                    ins.addBatch();
+                    items++;
+                }
+                ins.executeBatch();
+            }
+            return new Taken(takenMs, items, ledgerRows);
+        });
+    }
+
+    public StockAt stockAt(long atMs) {
+        return replayed(null, atMs);
+    }
+
+    public int stockAt(int menuItemId, long atMs) {
+        return replayed(menuItemId, atMs).onHand(menuItemId);
+    }
+
+    private StockAt replayed(Integer menuItemId, long atMs) {
+        Map<Integer, Integer> onHand = new HashMap<>();
+        int[] ledgerRows = {0};
+        try (Connection conn = Database.getReadConnection()) {
+            Anchor anchor;
+            boolean forward;
+            List<Archives.Period> sealed;
+            // Anchor, registry and hot ledger rows from one snapshot, as in OrderHistoryService
+            conn.setAutoCommit(false);
+            try {
+                anchor = anchor(conn, AT_OR_BEFORE, atMs);
+                forward = anchor != null;
+                if (anchor == null) anchor = anchor(conn, AFTER, atMs);
+                if (anchor != null) {
+                    try (PreparedStatement ps = conn.prepareStatement(SNAPSHOT_ROWS)) {
+                        ps.setLong(1, anchor.takenMs());
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) onHand.put(rs.getInt(1), rs.getInt(2));
+                        }
+                    }
+                } else {
+                    // Nothing taken yet: the live batches are the only anchor, replayed backwards
+                    anchor = new Anchor(System.currentTimeMillis(), singleLong(conn, MAX_LEDGER_ID));
+                    try (PreparedStatement ps = conn.prepareStatement(ON_HAND);
+                         ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) onHand.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+                if (menuItemId != null) onHand.keySet().retainAll(List.of(menuItemId));
+                sealed = Archives.sealed(conn);
+                // Hot rows of sealed months are in their archive too, or will be after the next archive run
+                long hotFromMs = sealed.isEmpty() ? Long.MIN_VALUE : sealed.get(0).untilMs();
+                replay(conn, "main", hotFromMs, forward, anchor, atMs, menuItemId, onHand, ledgerRows);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            // Archived months the replay window reaches in time, as the half-open range the registry compares against
+            long lo = forward ? anchor.takenMs() : atMs + 1;
+            long hi = (forward ? atMs : anchor.takenMs()) + 1;
+            for (Archives.Period p : sealed) {
+                if (p.ledgerRows() == 0 || !p.overlaps(lo, hi)) continue;
+                Archives.attach(conn, p);
+                try {
+                    replay(conn, Archives.ALIAS, Long.MIN_VALUE, forward, anchor, atMs, menuItemId, onHand, ledgerRows);
+                } finally {
+                    Archives.detach(conn);
+                }
+            }
+            return new StockAt(atMs, anchor.takenMs(), ledgerRows[0], onHand);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public VarianceReport variance(long fromMs, long untilMs) {
+        List<Variance> items = new ArrayList<>();
+        try (Connection conn = Database.getReadConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Anchor closing = anchor(conn, AT_OR_BEFORE, untilMs);
+                if (closing == null) return new VarianceReport(fromMs, untilMs, items);
+                Anchor opening = anchor(conn, AT_OR_BEFORE, fromMs);
+                // A range starting before the first snapshot is measured from the first one
+                if (opening == null) opening = anchor(conn, AFTER, fromMs);
+                try (PreparedStatement ps = conn.prepareStatement(VARIANCE)) {
+                    ps.setLong(1, opening.takenMs());
+                    ps.setLong(2, closing.takenMs());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            int openingOnHand = rs.getInt(3);
+                            int closingOnHand = rs.getInt(5);
+                            int ledgerChange = rs.getInt(6) - rs.getInt(4);
+                            items.add(new Variance(rs.getInt(1), rs.getString(2), openingOnHand, closingOnHand,
+                                    ledgerChange, closingOnHand - openingOnHand - ledgerChange));
+                        }
+                    }
+                }
+                return new VarianceReport(opening.takenMs(), closing.takenMs(), items);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void replay(Connection conn, String schema, long fromMs, boolean forward, Anchor anchor, long atMs,
+                               Integer menuItemId, Map<Integer, Integer> onHand, int[] ledgerRows) throws SQLException {
+        String sql = String.format(forward ? REPLAY_FORWARD : REPLAY_BACKWARD, schema,
+                menuItemId != null ? " AND menu_item_id = ?" : "");
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            ps.setLong(i++, fromMs);
+            ps.setLong(i++, anchor.ledgerId());
+            ps.setLong(i++, atMs);
+            if (!forward) ps.setLong(i++, anchor.takenMs());
+            if (menuItemId != null) ps.setInt(i, menuItemId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    onHand.merge(rs.getInt(1), rs.getInt(2), Integer::sum);
+                    ledgerRows[0] += rs.getInt(3);
+                }
+            }
+        }
+    }
+
+    private static Anchor anchor(Connection conn, String sql, Long ms) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (ms != null) ps.setLong(1, ms);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Anchor(rs.getLong(1), rs.getLong(2)) : null;
+            }
+        }
+    }
+
+    private static long singleLong(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * In-memory on-hand quantity per menu item. Loaded once from inventory_batch, then kept current by
+ * applying committed deltas from the checkout and add-stock paths. Deltas are applied while the caller
+ * still holds the writer connection, so they are ordered with respect to reloads, which also use it.
+ * <p>
+ * Only writes made by this process reach the projection. Stock changed by another process sharing the
+ * database shows up as drift in {@link #check()} and stays wrong here until the next {@link #reload()}.
+ */
+public final class StockProjection {
+    private static final Logger log = LoggerFactory.getLogger(StockProjection.class);
+
+    public static record Drift(int menuItemId, int projected, int actual) {}
+
+    private static final StockProjection INSTANCE = new StockProjection();
+
+    private static final String LOAD_SQL = "SELECT mi.id, mi.name, COALESCE(SUM(ib.quantity),0) AS qty " +
+            "FROM menu_item mi LEFT JOIN inventory_batch ib ON mi.id = ib.menu_item_id " +
+            "GROUP BY mi.id, mi.name ORDER BY mi.name";
+
+    // Slots are in name order so reads can stream them straight into StockLevel rows
+    private static final class Snapshot {
+        final IntIntMap slotById;
+        final int[] ids;
+        final String[] names;
+        final AtomicIntegerArray quantities;
+
+        Snapshot(int[] ids, String[] names, int[] quantities) {
+            this.ids = ids;
+            this.names = names;
+            this.quantities = new AtomicIntegerArray(quantities);
+            this.slotById = new IntIntMap(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                slotById.put(ids[i], i);
+            }
+        }
+    }
+
+    private volatile Snapshot snapshot;
+
+    private StockProjection() {}
+
+    public static StockProjection instance() {
+        return INSTANCE;
+    }
+
+    public List<InventoryService.StockLevel> levels() {
+        Snapshot s = current();
+        List<InventoryService.StockLevel> levels = new ArrayList<>(s.ids.length);
+        for (int i = 0; i < s.ids.length; i++) {
+            levels.add(new InventoryService.StockLevel(s.ids[i], s.names[i], s.quantities.get(i)));
+        }
+        return levels;
+    }
+
+    public int quantityOf(int menuItemId) {
+        Snapshot s = current();
+        int slot = s.slotById.get(menuItemId, -1);
+        return slot < 0 ? 0 : s.quantities.get(slot);
+    }
+
+    public void reload() {
+        try (Connection conn = Database.getConnection()) {
+            reload(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Compares every projected quantity with a fresh aggregate from inventory_batch. Both are read on the writer,
+     * as reload does, so no delta can be applied in between; the aggregate costs the same as a reload.
+     */
+    public List<Drift> check() {
+        List<Drift> drift = new ArrayList<>();
+        try (Connection conn = Database.getConnection()) {
+            Snapshot s = current(conn);
+            int seen = 0;
+            try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    int actual = rs.getInt(3);
+                    int slot = s.slotById.get(id, -1);
+                    int quantity = slot < 0 ? 0 : s.quantities.get(slot);
+                    if (slot >= 0) seen++;
+                    if (slot < 0 || quantity != actual) {
+                        drift.add(new Drift(id, quantity, actual));
+                    }
+                }
+            }
+            if (seen != s.ids.length) {
+                log.warn("Stock projection holds {} items that no longer exist", s.ids.length - seen);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return drift;
+    }
+
+    // Callers pass the writer connection their transaction just committed on
+    void applyCommitted(Map<Integer, Integer> deltas, Connection writer) throws SQLException {
+        Snapshot s = snapshot;
+        if (s == null) return; // not loaded yet; the first read will see the committed rows
+        for (Map.Entry<Integer, Integer> e : deltas.entrySet()) {
+            int slot = s.slotById.get(e.getKey(), -1);
+            if (slot < 0) {
+                // Item created after the last load; the reload picks up the committed delta as well
+                reload(writer);
+                return;
+            }
+            s.quantities.addAndGet(slot, e.getValue());
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        reload();
+        return snapshot;
+    }
+
+    private Snapshot current(Connection writer) throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        reload(writer);
+        return snapshot;
+    }
+
+    // conn is the writer lease the caller holds, so no delta can be applied while the aggregate runs
+    void reload(Connection conn) throws SQLException {
+        List<int[]> rows = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new int[]{rs.getInt(1), rs.getInt(3)});
+                names.add(rs.getString(2));
+            }
+        }
+        int[] ids = new int[rows.size()];
+        int[] qty = new int[rows.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rows.get(i)[0];
+            qty[i] = rows.get(i)[1];
+        }
+        snapshot = new Snapshot(ids, names.toArray(new String[0]), qty);
+        log.debug("Loaded stock projection for {} items", ids.length);
+    }
+}
@@ -0,0 +1,55 @@
+package com.restaurant.pos.tools;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// Minimal "--name value" command-line parsing for the headless tools and the API server
+public final class Args {
+    private final Map<String, String> values = new HashMap<>();
+
+    public Args(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            String name = args[i].substring(2);
+            boolean flag = i + 1 >= args.length || args[i + 1].startsWith("--");
+            values.put(name, flag ? "true" : args[++i]);
+        }
+    }
+
+    // Must run before Database.initialize()
+    public void applyDataDir() {
+        String dir = values.get("data-dir");
+        if (dir != null) System.setProperty("pos.data.dir", dir);
+    }
+
+    public int intValue(String name, int def) {
+        String v = values.get(name);
+        return v == null ? def : Integer.parseInt(v);
+    }
+
+    public long longValue(String name, long def) {
+        String v = values.get(name);
+        return v == null ? def : Long.parseLong(v);
+    }
+
+    public double doubleValue(String name, double def) {
+        String v = values.get(name);
+        return v == null ? def : Double.parseDouble(v);
+    }
+
+    public String string(String name, String def) {
+        return values.getOrDefault(name, def);
+    }
+
+    public boolean flag(String name) {
+        return Boolean.parseBoolean(values.get(name));
+    }
+
+    // Plain seconds ("90") or ISO-8601 ("PT5M")
+    public Duration duration(String name, Duration def) {
+        String v = values.get(name);
+        if (v == null) return def;
+        return v.startsWith("P") ? Duration.parse(v) : Duration.ofSeconds(Long.parseLong(v));
+    }
+}
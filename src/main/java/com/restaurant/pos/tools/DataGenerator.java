@@ -0,0 +1,355 @@
+package com.restaurant.pos.tools;
+
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Timestamps;
+import com.restaurant.pos.service.SalesRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Fills the database with synthetic but plausible history: a menu, daily deliveries, orders following lunch and
+ * dinner peaks with busier weekends, the matching order items, payments and ledger rows, and a set of manual
+ * promos. Rows go in through batched prepared statements, one transaction per chunk of days.
+ *
+ * <pre>
+ * java -cp pos.jar com.restaurant.pos.tools.DataGenerator --items 800 --years 3 --orders-per-day 600
+ *      --deliveries-per-day 40 --promos 60 [--seed 42] [--data-dir DIR]
+ * </pre>
+ */
+public final class DataGenerator {
+    private static final Logger log = LoggerFactory.getLogger(DataGenerator.class);
+
+    public static record Config(int menuItems, int historyDays, int ordersPerDay, int maxLinesPerOrder,
+                                int deliveriesPerDay, int promos, long seed) {
+        public static Config defaults() {
+            return new Config(800, 3 * 365, 600, 6, 40, 60, 42);
+        }
+    }
+
+    public static record Summary(int menuItems, long orders, long orderItems, long batches, int promos) {}
+
+    private static final String[] CATEGORIES = {
+            "Burgers", "Sandwiches", "Pizza", "Pasta", "Salads", "Soups", "Sides", "Mains",
+            "Breakfast", "Desserts", "Drinks", "Coffee", "Kids", "Specials"
+    };
+    private static final String[] PAYMENT_METHODS = {"CARD", "CARD", "CARD", "CASH", "MOBILE"};
+
+    // Relative order volume per hour of day: lunch and dinner peaks, nothing while closed
+    private static final double[] HOUR_WEIGHTS = {
+            0, 0, 0, 0, 0, 0, 0.2, 0.8, 1.2, 1.0, 1.0, 2.5,
+            4.5, 4.0, 1.8, 1.0, 1.2, 2.5, 4.2, 4.5, 3.0, 1.6, 0.6, 0.1
+    };
+    private static final double[] HOUR_CDF = cumulative(HOUR_WEIGHTS);
+
+    private static final int DAYS_PER_TRANSACTION = 30;
+
+    private static final String INSERT_ITEM = "INSERT OR IGNORE INTO menu_item(name, category, price_cents, sku) VALUES (?,?,?,?)";
+    private static final String INSERT_ORDER = "INSERT INTO orders(id, created_at, subtotal_cents, discount_cents, tax_cents, total_cents, payment_method, status, created_ms) VALUES (?,?,?,0,?,?,?,'PAID',?)";
+    private static final String INSERT_ORDER_ITEM = "INSERT INTO order_item(order_id, menu_item_id, quantity, unit_price_cents, line_total_cents) VALUES (?,?,?,?,?)";
+    private static final String INSERT_PAYMENT = "INSERT INTO payment(order_id, amount_cents, method, created_at, created_ms) VALUES (?,?,?,?,?)";
+    private static final String INSERT_LEDGER = "INSERT INTO inventory_ledger(menu_item_id, quantity_change, reason, ref_type, ref_id, created_at, created_ms) VALUES (?,?,?,?,?,?,?)";
+    private static final String INSERT_BATCH = "INSERT INTO inventory_batch(id, menu_item_id, quantity, unit_cost_cents, expiry_date, created_at) VALUES (?,?,?,?,?,?)";
+    private static final String INSERT_ARCHIVED_BATCH = "INSERT INTO inventory_batch_archive(id, menu_item_id, unit_cost_cents, expiry_date, created_at, depleted_at) VALUES (?,?,?,?,?,?)";
+    private static final String INSERT_PROMO = "INSERT INTO promo(menu_item_id, discount_percent, start_date, end_date, reason, auto_generated) VALUES (?,?,?,?,?,0)";
+
+    private final Config config;
+    private final SplittableRandom rnd;
+    private int[] itemIds;
+    private int[] itemPrices;
+    // Cumulative popularity per item (Zipf-like), sampled by binary search
+    private double[] popularityCdf;
+
+    public DataGenerator(Config config) {
+        this.config = config;
+        this.rnd = new SplittableRandom(config.seed());
+    }
+
+    public static void main(String[] argv) {
+        Args args = new Args(argv);
+        args.applyDataDir();
+        Config d = Config.defaults();
+        Config config = new Config(
+                args.intValue("items", d.menuItems()),
+                (int) Math.round(args.doubleValue("years", d.historyDays() / 365.0) * 365),
+                args.intValue("orders-per-day", d.ordersPerDay()),
+                args.intValue("max-lines", d.maxLinesPerOrder()),
+                args.intValue("deliveries-per-day", d.deliveriesPerDay()),
+                args.intValue("promos", d.promos()),
+                args.longValue("seed", d.seed()));
+        Database.initialize();
+        try {
+            long start = System.nanoTime();
+            Summary s = new DataGenerator(config).generate();
+            log.info("Generated {} in {} s", s, (System.nanoTime() - start) / 1_000_000_000);
+        } finally {
+            Database.shutdown();
+        }
+    }
+
+    // Adds to whatever is already in the database; the caller owns Database.initialize()/shutdown()
+    public Summary generate() {
+        try {
+            seedMenu();
+            LocalDate today = LocalDate.now();
+            LocalDate first = today.minusDays(config.historyDays());
+            long orders = 0;
+            long lines = 0;
+            long batches = 0;
+            for (LocalDate chunk = first; chunk.isBefore(today); chunk = chunk.plusDays(DAYS_PER_TRANSACTION)) {
+                LocalDate end = chunk.plusDays(DAYS_PER_TRANSACTION);
+                if (end.isAfter(today)) end = today;
+                try (Connection conn = Database.getConnection()) {
+                    conn.setAutoCommit(false);
+                    // Taken in the transaction that uses them, so ids reserved meanwhile by a running order journal
+                    // are never handed out here
+                    long orderId = nextId(conn, "orders");
+                    long batchId = Math.max(nextId(conn, "inventory_batch"), nextId(conn, "inventory_batch_archive"));
+                    long chunkOrders = 0;
+                    long chunkBatches = 0;
+                    for (LocalDate day = chunk; day.isBefore(end); day = day.plusDays(1)) {
+                        chunkBatches += deliveries(conn, day, today, batchId + chunkBatches);
+                        long[] r = orders(conn, day, orderId + chunkOrders);
+                        chunkOrders += r[0];
+                        lines += r[1];
+                    }
+                    conn.commit();
+                    orders += chunkOrders;
+                    batches += chunkBatches;
+                }
+                log.info("Generated history up to {}: {} orders", end, orders);
+            }
+            int promos = promos(today);
+            new SalesRollupService().rebuild();
+            try (Connection conn = Database.getConnection(); Statement st = conn.createStatement()) {
+                st.execute("ANALYZE");
+            }
+            return new Summary(itemIds.length, orders, lines, batches, promos);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void seedMenu() throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_ITEM)) {
+                for (int i = 1; i <= config.menuItems(); i++) {
+                    String category = CATEGORIES[i % CATEGORIES.length];
+                    ps.setString(1, category + " item " + i);
+                    ps.setString(2, category);
+                    ps.setInt(3, 199 + 50 * rnd.nextInt(40));
+                    ps.setString(4, String.format("SKU-%05d", i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+            List<int[]> items = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement("SELECT id, price_cents FROM menu_item WHERE active = 1 ORDER BY id");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) items.add(new int[]{rs.getInt(1), rs.getInt(2)});
+            }
+            itemIds = new int[items.size()];
+            itemPrices = new int[items.size()];
+            double[] weights = new double[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                itemIds[i] = items.get(i)[0];
+                itemPrices[i] = items.get(i)[1];
+                weights[i] = 1.0 / Math.pow(i + 1, 0.9);
+            }
+            // Shuffle popularity so best sellers are spread over categories and ids
+            for (int i = weights.length - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                double t = weights[i];
+                weights[i] = weights[j];
+                weights[j] = t;
+            }
+            popularityCdf = cumulative(weights);
+        }
+    }
+
+    // Deliveries whose stock would long be gone are written straight to the archive; recent ones stay live
+    private int deliveries(Connection conn, LocalDate day, LocalDate today, long firstId) throws SQLException {
+        int n = config.deliveriesPerDay();
+        try (PreparedStatement live = conn.prepareStatement(INSERT_BATCH);
+             PreparedStatement archived = conn.prepareStatement(INSERT_ARCHIVED_BATCH);
+             PreparedStatement led = conn.prepareStatement(INSERT_LEDGER)) {
+            for (int i = 0; i < n; i++) {
+                long id = firstId + i;
+                int item = itemIds[rnd.nextInt(itemIds.length)];
+                int qty = 20 + rnd.nextInt(180);
+                int cost = 50 + rnd.nextInt(600);
+                LocalDate expiry = day.plusDays(3 + rnd.nextInt(28));
+                LocalDateTime createdAt = day.atTime(6, rnd.nextInt(60));
+                if (expiry.isBefore(today)) {
+                    archived.setLong(1, id);
+                    archived.setInt(2, item);
+                    archived.setInt(3, cost);
+                    archived.setString(4, expiry.toString());
+                    archived.setString(5, createdAt.toString());
+                    archived.setString(6, expiry.minusDays(1).toString());
+                    archived.addBatch();
+                } else {
+                    live.setLong(1, id);
+                    live.setInt(2, item);
+                    live.setInt(3, 1 + rnd.nextInt(qty));
+                    live.setInt(4, cost);
+                    live.setString(5, expiry.toString());
+                    live.setString(6, createdAt.toString());
+                    live.addBatch();
+                }
+                ledger(led, item, qty, "delivery", "batch", id, createdAt);
+            }
+            live.executeBatch();
+            archived.executeBatch();
+            led.executeBatch();
+        }
+        return n;
+    }
+
+    private long[] orders(Connection conn, LocalDate day, long firstId) throws SQLException {
+        int n = (int) Math.round(config.ordersPerDay() * dayFactor(day) * (0.85 + 0.3 * rnd.nextDouble()));
+        long lines = 0;
+        try (PreparedStatement order = conn.prepareStatement(INSERT_ORDER);
+             PreparedStatement item = conn.prepareStatement(INSERT_ORDER_ITEM);
+             PreparedStatement pay = conn.prepareStatement(INSERT_PAYMENT);
+             PreparedStatement led = conn.prepareStatement(INSERT_LEDGER)) {
+            for (int o = 0; o < n; o++) {
+                long id = firstId + o;
+                LocalDateTime ts = timestamp(day);
+                long tsMs = Timestamps.millis(ts);
+                int lineCount = 1 + (int) Math.floor(Math.pow(rnd.nextDouble(), 2) * config.maxLinesPerOrder());
+                int subtotal = 0;
+                for (int l = 0; l < lineCount; l++) {
+                    int idx = sample(popularityCdf);
+                    int qty = rnd.nextInt(10) < 8 ? 1 : 2 + rnd.nextInt(3);
+                    int price = itemPrices[idx];
+                    item.setLong(1, id);
+                    item.setInt(2, itemIds[idx]);
+                    item.setInt(3, qty);
+                    item.setInt(4, price);
+                    item.setInt(5, qty * price);
+                    item.addBatch();
+                    ledger(led, itemIds[idx], -qty, "sale", "order", id, ts);
+                    subtotal += qty * price;
+                }
+                lines += lineCount;
+                int tax = (int) Math.round(subtotal * 0.07);
+                String method = PAYMENT_METHODS[rnd.nextInt(PAYMENT_METHODS.length)];
+                order.setLong(1, id);
+                order.setString(2, ts.toString());
+                order.setInt(3, subtotal);
+                order.setInt(4, tax);
+                order.setInt(5, subtotal + tax);
+                order.setString(6, method);
+                order.setLong(7, tsMs);
+                order.addBatch();
+                pay.setLong(1, id);
+                pay.setInt(2, subtotal + tax);
+                pay.setString(3, method);
+                pay.setString(4, ts.toString());
+                pay.setLong(5, tsMs);
+                pay.addBatch();
+            }
+            order.executeBatch();
+            item.executeBatch();
+            pay.executeBatch();
+            led.executeBatch();
+        }
+        return new long[]{n, lines};
+    }
+
+    // Mostly past campaigns, a few running now and a few scheduled
+    private int promos(LocalDate today) throws SQLException {
+        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(INSERT_PROMO)) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < config.promos(); i++) {
+                LocalDate start = today.minusDays(rnd.nextInt(Math.max(1, config.historyDays()))).plusDays(rnd.nextInt(10) < 2 ? 30 : 0);
+                ps.setInt(1, itemIds[rnd.nextInt(itemIds.length)]);
+                ps.setDouble(2, 5 * (1 + rnd.nextInt(6)));
+                ps.setString(3, start.toString());
+                ps.setString(4, start.plusDays(3 + rnd.nextInt(25)).toString());
+                ps.setString(5, "Campaign " + (i + 1));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        }
+        return config.promos();
+    }
+
+    private LocalDateTime timestamp(LocalDate day) {
+        int hour = sample(HOUR_CDF);
+        return day.atTime(hour, rnd.nextInt(60), rnd.nextInt(60), rnd.nextInt(1_000_000_000));
+    }
+
+    private static double dayFactor(LocalDate day) {
+        DayOfWeek dow = day.getDayOfWeek();
+        return switch (dow) {
+            case MONDAY -> 0.75;
+            case TUESDAY, WEDNESDAY -> 0.85;
+            case THURSDAY -> 0.95;
+            case FRIDAY -> 1.3;
+            case SATURDAY -> 1.45;
+            case SUNDAY -> 1.1;
+        };
+    }
+
+    private static void ledger(PreparedStatement led, int item, int change, String reason, String refType, long refId,
+                               LocalDateTime createdAt) throws SQLException {
+        led.setInt(1, item);
+        led.setInt(2, change);
+        led.setString(3, reason);
+        led.setString(4, refType);
+        led.setLong(5, refId);
+        led.setString(6, createdAt.toString());
+        led.setLong(7, Timestamps.millis(createdAt));
+        led.addBatch();
+    }
+
+    private int sample(double[] cdf) {
+        double x = rnd.nextDouble() * cdf[cdf.length - 1];
+        int lo = 0;
+        int hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] <= x) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cdf = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cdf[i] = sum;
+        }
+        return cdf;
+    }
+
+    // Past both the rows present and sqlite_sequence: the order journal bumps the sequence to reserve ids it has
+    // not written yet, and archived orders are no longer in the table at all
+    private static long nextId(Connection conn, String table) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT MAX(COALESCE((SELECT MAX(id) FROM " + table + "), 0), " +
+                "COALESCE((SELECT seq FROM sqlite_sequence WHERE name = ?), 0)) + 1")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.restaurant.pos.tools;
+
+import com.restaurant.pos.db.ConnectionPool;
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import com.restaurant.pos.service.InventoryService;
+import com.restaurant.pos.service.MenuService;
+import com.restaurant.pos.service.OrderJournal;
+import com.restaurant.pos.service.OrderService;
+import com.restaurant.pos.service.StockProjection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates N checkout terminals hammering placeOrder and reports throughput, latency percentiles and failures
+ * split into busy/locked database, pool timeouts, stock-outs and anything else.
+ *
+ * <pre>
+ * java -cp pos.jar com.restaurant.pos.tools.LoadDriver --terminals 8 --duration 60 [--warmup 10]
+ *      [--mode direct|grouped|journal] [--max-lines 6] [--think-ms 0] [--restock] [--verify] [--seed 7]
+ *      [--data-dir DIR]
+ * </pre>
+ * In direct mode every terminal commits its own order; grouped mode goes through the group-commit writer, and journal
+ * mode through the order journal the UI uses, which acknowledges an order once it is on disk in the journal; the
+ * journal is closed, and so fully materialized, before verifying. With --verify the run's orders are tagged and checked
+ * afterwards: every confirmed order stored exactly once with its ledger rows, nothing stored that was reported as
+ * failed, and no batch below zero. Several drivers started against the same --data-dir contend for the database file
+ * the way separate processes do, which is what exercises busy handling; the exit code is 1 if any check fails.
+ */
+public final class LoadDriver {
+    public enum Mode { DIRECT, GROUPED, JOURNAL }
+
+    public static record Config(int terminals, Duration warmup, Duration duration, Mode mode,
+                                int maxLinesPerOrder, long thinkMillis, long seed) {}
+
+    public static record Report(long orders, double ordersPerSecond, LatencyHistogram.Snapshot latency,
+                                long busy, long poolTimeouts, long stockOuts, long otherErrors, long busyRetries) {
+        @Override
+        public String toString() {
+            return String.format("%d orders, %.1f orders/s, p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms; "
+                            + "busy/locked %d (after %d retries), pool timeouts %d, stock-outs %d, other errors %d",
+                    orders, ordersPerSecond, latency.p50Nanos() / 1e6, latency.p99Nanos() / 1e6,
+                    latency.p999Nanos() / 1e6, latency.maxNanos() / 1e6, busy, busyRetries, poolTimeouts,
+                    stockOuts, otherErrors);
+        }
+    }
+
+    // Confirmed orders versus what the database holds for this run's tag
+    public static record Verification(long confirmed, long stored, long missing, long unconfirmed,
+                                      long ledgerMismatches, long negativeBatches) {
+        public boolean ok() {
+            return confirmed == stored && missing == 0 && unconfirmed == 0 && ledgerMismatches == 0
+                    && negativeBatches == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d confirmed, %d stored, %d missing, %d stored but not confirmed, "
+                            + "%d ledger mismatches, %d negative batches", ok() ? "OK" : "FAILED",
+                    confirmed, stored, missing, unconfirmed, ledgerMismatches, negativeBatches);
+        }
+    }
+
+    private static final String COUNT_TAGGED = "SELECT COUNT(*) FROM orders WHERE payment_method = ?";
+    private static final String TAGGED_IDS = "SELECT id FROM orders WHERE payment_method = ?";
+    // Orders whose ledger deductions differ from their items, e.g. deducted twice
+    private static final String LEDGER_MISMATCHES =
+            "WITH items AS (SELECT oi.order_id, SUM(oi.quantity) AS qty FROM order_item oi " +
+            "  JOIN orders o ON o.id = oi.order_id WHERE o.payment_method = ? GROUP BY oi.order_id), " +
+            "ledger AS (SELECT l.ref_id, -SUM(l.quantity_change) AS qty FROM inventory_ledger l " +
+            "  JOIN orders o ON o.id = l.ref_id WHERE l.ref_type = 'order' AND o.payment_method = ? GROUP BY l.ref_id) " +
+            "SELECT COUNT(*) FROM items LEFT JOIN ledger ON ledger.ref_id = items.order_id " +
+            "WHERE ledger.qty IS NULL OR ledger.qty <> items.qty";
+    private static final String NEGATIVE_BATCHES = "SELECT COUNT(*) FROM inventory_batch WHERE quantity < 0";
+
+    private final Config config;
+    private final OrderService orders = new OrderService();
+    private final List<MenuService.MenuItem> menu;
+    private final LatencyHistogram latency = Metrics.histogram("load.place_order");
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder poolTimeouts = new LongAdder();
+    private final LongAdder stockOuts = new LongAdder();
+    private final LongAdder otherErrors = new LongAdder();
+    // Every order the service confirmed, warmup included; its payment method tags it for verification
+    private final Set<Integer> confirmed = ConcurrentHashMap.newKeySet();
+    private final String tag = "LOAD-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private volatile boolean measuring;
+
+    public LoadDriver(Config config) {
+        this.config = config;
+        this.menu = new MenuService().listActiveMenuItems();
+        if (menu.isEmpty()) throw new IllegalStateException("No active menu items; run DataGenerator first");
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Args args = new Args(argv);
+        args.applyDataDir();
+        Config config = new Config(
+                args.intValue("terminals", 8),
+                args.duration("warmup", Duration.ofSeconds(10)),
+                args.duration("duration", Duration.ofSeconds(60)),
+                Mode.valueOf(args.string("mode", "direct").toUpperCase(Locale.ROOT)),
+                args.intValue("max-lines", 6),
+                args.longValue("think-ms", 0),
+                args.longValue("seed", 7));
+        Database.initialize();
+        Verification v = null;
+        try {
+            StockProjection.instance().reload();
+            LoadDriver driver = new LoadDriver(config);
+            if (args.flag("restock")) driver.restock();
+            if (config.mode() == Mode.JOURNAL) OrderJournal.instance().open();
+            System.out.println(driver.run());
+            OrderJournal.instance().close();
+            if (args.flag("verify")) {
+                v = driver.verify();
+                System.out.println(v);
+            }
+            for (ConnectionPool.PoolStats s : Database.poolStats()) {
+                System.out.printf("pool %s: %d acquisitions, avg wait %.3f ms, max wait %.1f ms, %d timeouts%n",
+                        s.lane(), s.acquisitions(), s.avgWaitMillis(), s.maxWaitNanos() / 1e6, s.timeouts());
+            }
+        } finally {
+            Database.shutdown();
+        }
+        if (v != null && !v.ok()) System.exit(1);
+    }
+
+    // One large fresh batch per item, so a long run measures checkout rather than stock-outs
+    public void restock() {
+        InventoryService inventory = new InventoryService();
+        LocalDate expiry = LocalDate.now().plusDays(30);
+        for (MenuService.MenuItem mi : menu) {
+            inventory.addStockBatch(mi.id(), 1_000_000, 100, expiry);
+        }
+    }
+
+    public Report run() throws InterruptedException {
+        long warmupEnd = System.nanoTime() + config.warmup().toNanos();
+        long end = warmupEnd + config.duration().toNanos();
+        List<Thread> terminals = new ArrayList<>(config.terminals());
+        for (int t = 0; t < config.terminals(); t++) {
+            SplittableRandom rnd = new SplittableRandom(config.seed() * 31 + t);
+            Thread th = new Thread(() -> terminal(rnd, end), "terminal-" + t);
+            terminals.add(th);
+            th.start();
+        }
+        Thread.sleep(Math.max(0, (warmupEnd - System.nanoTime()) / 1_000_000));
+        long measuredFrom = System.nanoTime();
+        measuring = true;
+        for (Thread th : terminals) th.join();
+        double seconds = (System.nanoTime() - measuredFrom) / 1e9;
+        orders.shutdown();
+        return new Report(ok.sum(), ok.sum() / seconds, latency.snapshot(), busy.sum(), poolTimeouts.sum(),
+                stockOuts.sum(), otherErrors.sum(), Transactions.stats().retries());
+    }
+
+    // Run after run(): the stock checks are global, so other drivers on the same database should be done too
+    public Verification verify() {
+        try (Connection conn = Database.getReadConnection()) {
+            long stored = count(conn, COUNT_TAGGED, tag);
+            long matched = 0;
+            try (PreparedStatement ps = conn.prepareStatement(TAGGED_IDS)) {
+                ps.setString(1, tag);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (confirmed.contains(rs.getInt(1))) matched++;
+                    }
+                }
+            }
+            return new Verification(confirmed.size(), stored, confirmed.size() - matched, stored - matched,
+                    count(conn, LEDGER_MISMATCHES, tag), count(conn, NEGATIVE_BATCHES, null));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long count(Connection conn, String sql, String param) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            // Every placeholder takes the same value
+            if (param != null) {
+                for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) ps.setString(i, param);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private void terminal(SplittableRandom rnd, long end) {
+        while (System.nanoTime() < end) {
+            List<OrderService.CartLine> cart = cart(rnd);
+            long t0 = System.nanoTime();
+            try {
+                OrderService.OrderResult result = config.mode() == Mode.DIRECT
+                        ? orders.placeOrder(cart, tag)
+                        : orders.submitOrder(cart, tag).join();
+                confirmed.add(result.orderId);
+                if (measuring) {
+                    latency.recordSince(t0);
+                    ok.increment();
+                }
+            } catch (RuntimeException e) {
+                if (measuring) classify(e);
+            }
+            if (config.thinkMillis() > 0) {
+                try {
+                    Thread.sleep(config.thinkMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<OrderService.CartLine> cart(SplittableRandom rnd) {
+        int lines = 1 + rnd.nextInt(config.maxLinesPerOrder());
+        List<OrderService.CartLine> cart = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            MenuService.MenuItem mi = menu.get(rnd.nextInt(menu.size()));
+            cart.add(new OrderService.CartLine(mi.id(), mi.name(), 1 + rnd.nextInt(3), mi.priceCents()));
+        }
+        return cart;
+    }
+
+    private void classify(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            String msg = String.valueOf(t.getMessage());
+            if (t instanceof SQLTimeoutException) {
+                poolTimeouts.increment();
+                return;
+            }
+            if (Transactions.isBusy(t)) {
+                busy.increment();
+                return;
+            }
+            if (msg.startsWith("Insufficient stock")) {
+                stockOuts.increment();
+                return;
+            }
+        }
+        otherErrors.increment();
+    }
+}
@@ -1,53 +1,145 @@
 package com.restaurant.pos.ui;
 
+import com.restaurant.pos.service.AsyncServices;
+import com.restaurant.pos.service.ForecastModel;
 import com.restaurant.pos.service.ForecastService;
-import com.restaurant.pos.service.PromoService;
+import com.restaurant.pos.service.JobControl;
+import com.restaurant.pos.service.SalesFacts;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.chart.CategoryAxis;
 import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Spinner;
 import javafx.scene.control.SpinnerValueFactory;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AnalyticsTab extends BorderPane {
-    private final ForecastService forecastService = new ForecastService();
-    private final PromoService promoService = new PromoService();
+    private final AsyncServices services;
 
     private final CategoryAxis xAxis = new CategoryAxis();
     private final NumberAxis yAxis = new NumberAxis();
     private final BarChart<String, Number> chart = new BarChart<>(xAxis, yAxis);
+    private final BarChart<String, Number> hourChart = new BarChart<>(new CategoryAxis(), new NumberAxis());
+
+    private static final String[] MODELS = {"Moving average", "Exponential smoothing", "Holt-Winters", "Day of week"};
+    // Same order as MODELS
+    private static final List<String> MODEL_KEYS = ForecastModel.NAMES;
+    private final ComboBox<String> modelBox = new ComboBox<>();
+    private final ProgressBar progress = new ProgressBar(0);
+    private final Button cancel = new Button("Cancel");
+    private final Label promoStatus = new Label();
+
+    private AsyncServices.Job<List<ForecastService.Forecast>> running;
 
-    public AnalyticsTab() {
+    public AnalyticsTab(AsyncServices services) {
+        this.services = services;
         setPadding(new Insets(10));
         xAxis.setLabel("Menu Item");
         yAxis.setLabel("Forecast Qty (next month)");
         chart.setTitle("Sales Forecast");
+        hourChart.setTitle("Revenue by Hour");
+        hourChart.setLegendVisible(false);
 
         Spinner<Integer> months = new Spinner<>();
         months.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 12, 3));
+        modelBox.getItems().setAll(MODELS);
+        modelBox.setValue(MODELS[0]);
         Button refresh = new Button("Refresh Forecast");
         refresh.setOnAction(e -> refreshForecast(months.getValue()));
+        cancel.setOnAction(e -> { if (running != null) running.cancel(); });
+        cancel.setDisable(true);
+        progress.setVisible(false);
 
         Button genPromos = new Button("Generate Expiry Promos (7d, 20%)");
-        genPromos.setOnAction(e -> { promoService.generateExpiryBasedPromos(7, 20); refreshForecast(months.getValue()); });
+        genPromos.setOnAction(e -> {
+            genPromos.setDisable(true);
+            Fx.then(services.generateExpiryBasedPromos(7, 20), report -> {
+                promoStatus.setText(report.created() + " created, " + report.updated() + " updated");
+                refreshForecast(months.getValue());
+            }, () -> genPromos.setDisable(false));
+        });
 
-        HBox top = new HBox(10, months, refresh, genPromos);
+        HBox top = new HBox(10, months, modelBox, refresh, cancel, progress, genPromos, promoStatus);
         setTop(top);
-        setCenter(chart);
-        refreshForecast(months.getValue());
+        VBox.setVgrow(chart, Priority.ALWAYS);
+        hourChart.setPrefHeight(260);
+        setCenter(new VBox(10, chart, hourChart));
+        // The background forecast covers the default settings; anything else is computed on demand
+        ForecastService.Published published = services.publishedForecast();
+        if (published != null && published.monthsWindow() == months.getValue() && modelBox.getValue().equals(MODELS[0])) {
+            showForecast(published.forecasts());
+        } else {
+            refreshForecast(months.getValue());
+        }
     }
 
     private void refreshForecast(int monthsWindow) {
+        if (running != null) running.cancel();
+        int historyDays = ForecastService.historyDaysFor(monthsWindow);
+        // Same window the forecast learns from: the last historyDays complete days
+        LocalDate to = LocalDate.now().minusDays(1);
+        Fx.then(services.hourlySales(to.minusDays(historyDays - 1L), to), this::showHourly);
+        int horizonDays = ForecastService.nextMonthDays();
+        // Coalesce progress updates so a fast job cannot flood the FX event queue
+        AtomicBoolean pending = new AtomicBoolean();
+        JobControl control = new JobControl(p -> {
+            if (pending.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    pending.set(false);
+                    progress.setProgress(p);
+                });
+            }
+        });
+        AsyncServices.Job<List<ForecastService.Forecast>> job =
+                services.forecast(modelKey(modelBox.getValue()), historyDays, horizonDays, control);
+        running = job;
+        progress.setProgress(0);
+        progress.setVisible(true);
+        cancel.setDisable(false);
+        Fx.then(job.result(), f -> { if (running == job) showForecast(f); }, () -> {
+            if (running != job) return;
+            running = null;
+            progress.setVisible(false);
+            cancel.setDisable(true);
+        });
+    }
+
+    private void showForecast(List<ForecastService.Forecast> forecasts) {
         chart.getData().clear();
         XYChart.Series<String, Number> s = new XYChart.Series<>();
         s.setName("Forecast");
-        for (var f : forecastService.forecastNextMonthSales(monthsWindow)) {
+        for (var f : forecasts) {
             s.getData().add(new XYChart.Data<>(f.name(), f.forecastQty()));
         }
         chart.getData().add(s);
     }
+
+    private void showHourly(SalesFacts.HourlySales sales) {
+        hourChart.getData().clear();
+        XYChart.Series<String, Number> s = new XYChart.Series<>();
+        for (int h = 0; h < 24; h++) {
+            if (sales.qty()[h] == 0) continue;
+            s.getData().add(new XYChart.Data<>(String.format("%02d:00", h), (sales.revenueCents()[h] - sales.discountCents()[h]) / 100.0));
+        }
+        hourChart.getData().add(s);
+    }
+
+    private static String modelKey(String model) {
+        int i = Arrays.asList(MODELS).indexOf(model);
+        return MODEL_KEYS.get(Math.max(0, i));
+    }
 }
@@ -0,0 +1,36 @@
+package com.restaurant.pos.ui;
+
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// Brings service futures back onto the JavaFX Application thread
+final class Fx {
+    private Fx() {}
+
+    static <T> void then(CompletableFuture<T> future, Consumer<T> onSuccess) {
+        then(future, onSuccess, () -> {});
+    }
+
+    // always runs after success or failure, e.g. to re-enable a button
+    static <T> void then(CompletableFuture<T> future, Consumer<T> onSuccess, Runnable always) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            try {
+                if (error == null) {
+                    onSuccess.accept(result);
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    if (!(cause instanceof CancellationException)) {
+                        new Alert(Alert.AlertType.ERROR, String.valueOf(cause.getMessage())).show();
+                    }
+                }
+            } finally {
+                always.run();
+            }
+        }));
+    }
+}
@@ -1,7 +1,10 @@
 package com.restaurant.pos.ui;
 
+import com.restaurant.pos.service.AsyncServices;
 import com.restaurant.pos.service.InventoryService;
 import com.restaurant.pos.service.MenuService;
+import com.restaurant.pos.service.OrderEvents;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
@@ -9,17 +12,31 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class InventoryTab extends BorderPane {
-    private final InventoryService inventoryService = new InventoryService();
-    private final MenuService menuService = new MenuService();
+    private final AsyncServices services;
 
     private final TableView<InventoryService.StockLevel> table = new TableView<>();
+    // At most one event-driven refresh waiting on the FX thread, however fast orders commit
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
 
-    public InventoryTab() {
+    public InventoryTab(AsyncServices services) {
+        this.services = services;
         setPadding(new Insets(10));
         setupTable();
         refresh();
+        // Levels come from the stock projection, which is updated before the event is published
+        services.subscribeOrders("inventory-tab", new OrderEvents.Handler() {
+            @Override public void onEvents(List<OrderEvents.OrderEvent> batch) {
+                queueRefresh();
+            }
+
+            @Override public void onMissed(long count) {
+                queueRefresh();
+            }
+        });
 
         Button addStock = new Button("Add Stock Batch");
         addStock.setOnAction(e -> openAddStockDialog());
@@ -38,7 +55,15 @@ public class InventoryTab extends BorderPane {
     }
 
     private void refresh() {
-        table.getItems().setAll(inventoryService.getStockLevels());
+        Fx.then(services.getStockLevels(), levels -> table.getItems().setAll(levels));
+    }
+
+    private void queueRefresh() {
+        if (!refreshQueued.compareAndSet(false, true)) return;
+        Platform.runLater(() -> {
+            refreshQueued.set(false);
+            refresh();
+        });
     }
 
     private void openAddStockDialog() {
@@ -47,7 +72,7 @@ public class InventoryTab extends BorderPane {
         dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
 
         ComboBox<MenuService.MenuItem> itemBox = new ComboBox<>();
-        itemBox.getItems().setAll(menuService.listActiveMenuItems());
+        Fx.then(services.listActiveMenuItems(), items -> itemBox.getItems().setAll(items));
         itemBox.setCellFactory(cb -> new ListCell<>() {
             @Override protected void updateItem(MenuService.MenuItem item, boolean empty) {
                 super.updateItem(item, empty);
@@ -80,8 +105,7 @@ public class InventoryTab extends BorderPane {
                 int cost = parseInt(costField.getText(), 0);
                 LocalDate exp = expiryPicker.getValue();
                 if (mi != null && qty > 0 && cost > 0) {
-                    inventoryService.addStockBatch(mi.id(), qty, cost, exp);
-                    refresh();
+                    Fx.then(services.addStockBatch(mi.id(), qty, cost, exp), v -> refresh());
                 }
             }
             return null;
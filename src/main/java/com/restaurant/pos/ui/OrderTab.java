@@ -1,7 +1,11 @@
 package com.restaurant.pos.ui;
 
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import com.restaurant.pos.service.AsyncServices;
 import com.restaurant.pos.service.MenuService;
 import com.restaurant.pos.service.OrderService;
+import com.restaurant.pos.service.PromoPricing;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.beans.property.ReadOnlyStringWrapper;
@@ -14,12 +18,18 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 public class OrderTab extends BorderPane {
-    private final MenuService menuService = new MenuService();
-    private final OrderService orderService = new OrderService();
+    private static final LatencyHistogram CART_TOTALS = Metrics.histogram("ui.cart_totals");
+    // Click to result on screen, including the FX hop back
+    private static final LatencyHistogram CHECKOUT = Metrics.histogram("ui.checkout");
+
+    // SKU lookups and promo pricing are in-memory snapshots; everything else is asynchronous
+    private final AsyncServices services;
+    private final Button checkoutBtn = new Button("Checkout");
 
     private final ObservableList<MenuService.MenuItem> menuItems = FXCollections.observableArrayList();
     private final ObservableList<OrderService.CartLine> cartLines = FXCollections.observableArrayList();
@@ -29,12 +39,18 @@ public class OrderTab extends BorderPane {
 
     private final Label totalsLabel = new Label("Subtotal: $0.00    Tax: $0.00    Total: $0.00");
 
-    public OrderTab() {
+    // Running cart totals, adjusted per added/removed line; a new promo snapshot triggers a full re-price
+    private int subtotalCents;
+    private int discountCents;
+    private PromoPricing.Snapshot pricedWith;
+
+    public OrderTab(AsyncServices services) {
+        this.services = services;
         setPadding(new Insets(10));
         setupMenuTable();
         setupCartTable();
 
-        menuItems.setAll(menuService.listActiveMenuItems());
+        Fx.then(services.listActiveMenuItems(), menuItems::setAll);
         menuTable.setItems(menuItems);
         cartTable.setItems(cartLines);
 
@@ -43,13 +59,19 @@ public class OrderTab extends BorderPane {
         Button addBtn = new Button("Add to Cart");
         addBtn.setOnAction(e -> addSelectedToCart(parseQty(qtyField.getText())));
 
-        HBox addBox = new HBox(10, new Label("Qty:"), qtyField, addBtn);
+        TextField skuField = new TextField();
+        skuField.setPromptText("Scan SKU");
+        skuField.setOnAction(e -> {
+            addToCart(services.findBySku(skuField.getText().trim()), parseQty(qtyField.getText()));
+            skuField.clear();
+        });
+
+        HBox addBox = new HBox(10, new Label("Qty:"), qtyField, addBtn, skuField);
         addBox.setPadding(new Insets(10, 0, 10, 0));
 
         Button removeBtn = new Button("Remove Selected");
         removeBtn.setOnAction(e -> removeSelectedFromCart());
 
-        Button checkoutBtn = new Button("Checkout");
         checkoutBtn.setOnAction(e -> doCheckout());
 
         HBox actions = new HBox(10, removeBtn, spacer(), checkoutBtn);
@@ -87,9 +109,14 @@ public class OrderTab extends BorderPane {
     }
 
     private void addSelectedToCart(int quantity) {
-        MenuService.MenuItem selected = menuTable.getSelectionModel().getSelectedItem();
+        addToCart(menuTable.getSelectionModel().getSelectedItem(), quantity);
+    }
+
+    private void addToCart(MenuService.MenuItem selected, int quantity) {
         if (selected == null || quantity <= 0) return;
-        cartLines.add(new OrderService.CartLine(selected.id(), selected.name(), quantity, selected.priceCents()));
+        OrderService.CartLine line = new OrderService.CartLine(selected.id(), selected.name(), quantity, selected.priceCents());
+        cartLines.add(line);
+        adjustTotals(line, 1);
         updateTotals();
     }
 
@@ -97,6 +124,7 @@ public class OrderTab extends BorderPane {
         OrderService.CartLine selected = cartTable.getSelectionModel().getSelectedItem();
         if (selected != null) {
             cartLines.remove(selected);
+            adjustTotals(selected, -1);
             updateTotals();
         }
     }
@@ -104,7 +132,19 @@ public class OrderTab extends BorderPane {
     private void doCheckout() {
         if (cartLines.isEmpty()) return;
         List<OrderService.CartLine> list = new ArrayList<>(cartLines);
-        OrderService.OrderResult result = orderService.placeOrder(list, "CASH");
+        checkoutBtn.setDisable(true);
+        long t0 = System.nanoTime();
+        Fx.then(services.placeOrder(list, "CASH"), result -> {
+            cartLines.clear();
+            subtotalCents = 0;
+            discountCents = 0;
+            updateTotals();
+            CHECKOUT.recordSince(t0);
+            showResult(result);
+        }, () -> checkoutBtn.setDisable(false));
+    }
+
+    private void showResult(OrderService.OrderResult result) {
         new Alert(Alert.AlertType.INFORMATION, "Order #" + result.orderId + "\nTotal: $" + String.format("%.2f", result.totalCents/100.0)).showAndWait();
         // simple receipt display for now
         TextArea ta = new TextArea(result.receipt);
@@ -129,15 +169,31 @@ public class OrderTab extends BorderPane {
             return null;
         });
         dlg.showAndWait();
-        cartLines.clear();
-        updateTotals();
+    }
+
+    private void adjustTotals(OrderService.CartLine line, int sign) {
+        PromoPricing.Snapshot promos = services.promoPricing();
+        if (promos != pricedWith) return; // updateTotals re-prices the whole cart anyway
+        int lineCents = line.unitPriceCents() * line.quantity();
+        subtotalCents += sign * lineCents;
+        discountCents += sign * promos.lineDiscount(line.menuItemId(), lineCents, LocalDate.now());
     }
 
     private void updateTotals() {
-        int subtotal = cartLines.stream().mapToInt(l -> l.unitPriceCents()*l.quantity()).sum();
-        int tax = (int)Math.round(subtotal * OrderService.TAX_RATE);
-        int total = subtotal + tax;
-        totalsLabel.setText(String.format("Subtotal: $%.2f    Tax: $%.2f    Total: $%.2f", subtotal/100.0, tax/100.0, total/100.0));
+        long t0 = System.nanoTime();
+        PromoPricing.Snapshot promos = services.promoPricing();
+        PromoPricing.Quote q;
+        if (promos != pricedWith) {
+            pricedWith = promos;
+            q = promos.quote(cartLines, LocalDate.now());
+            subtotalCents = q.subtotalCents();
+            discountCents = q.discountCents();
+        } else {
+            q = PromoPricing.Quote.of(subtotalCents, discountCents);
+        }
+        totalsLabel.setText(String.format("Subtotal: $%.2f    Discount: -$%.2f    Tax: $%.2f    Total: $%.2f",
+                q.subtotalCents()/100.0, q.discountCents()/100.0, q.taxCents()/100.0, q.totalCents()/100.0));
+        CART_TOTALS.recordSince(t0);
     }
 
     private int parseQty(String s) {
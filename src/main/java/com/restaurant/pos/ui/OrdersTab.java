@@ -1,17 +1,36 @@
 package com.restaurant.pos.ui;
 
-import com.restaurant.pos.db.Database;
+import com.restaurant.pos.service.AsyncServices;
+import com.restaurant.pos.service.OrderEvents;
+import com.restaurant.pos.service.OrderHistoryService;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class OrdersTab extends BorderPane {
+    private static final int PAGE_SIZE = 200;
+    // Start fetching the next page once a row this close to the end is rendered
+    private static final int PREFETCH_ROWS = 50;
+
+    private final AsyncServices services;
     private final TableView<OrderRow> table = new TableView<>();
+    private final Label status = new Label();
+
+    // FX-thread state for the current listing; generation discards pages from a superseded filter
+    private OrderHistoryService.Filter filter = OrderHistoryService.Filter.NONE;
+    private OrderHistoryService.Cursor cursor;
+    private boolean loading;
+    private boolean exhausted;
+    private int generation;
+    // Orders committed while the first page is in flight; it may or may not already hold them
+    private List<OrderEvents.OrderEvent> early;
 
     public static class OrderRow {
         public final int id;
@@ -22,13 +41,25 @@ public class OrdersTab extends BorderPane {
         }
     }
 
-    public OrdersTab() {
+    public OrdersTab(AsyncServices services) {
+        this.services = services;
         setPadding(new Insets(10));
         setupTable();
+        setTop(buildFilterBar());
         refresh();
+        // New orders are added at the top as they commit; without events the list refreshes on Apply
+        services.subscribeOrders("orders-tab", new OrderEvents.Handler() {
+            @Override public void onEvents(List<OrderEvents.OrderEvent> batch) {
+                Platform.runLater(() -> committed(batch));
+            }
+
+            @Override public void onMissed(long count) {
+                Platform.runLater(OrdersTab.this::refresh);
+            }
+        });
         Button print = new Button("Reprint Receipt");
         print.setOnAction(e -> reprint());
-        setBottom(print);
+        setBottom(new HBox(10, print, status));
     }
 
     private void setupTable() {
@@ -40,40 +71,126 @@ public class OrdersTab extends BorderPane {
         total.setCellValueFactory(c -> new javafx.beans.property.ReadOnlyStringWrapper(String.format("$%.2f", c.getValue().total)));
         table.getColumns().setAll(id, dt, total);
         table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_ALL_COLUMNS);
+        // Rows are virtualized, so a row near the end being rendered means the user scrolled there
+        table.setRowFactory(tv -> new TableRow<>() {
+            @Override protected void updateItem(OrderRow item, boolean empty) {
+                super.updateItem(item, empty);
+                if (!empty && getIndex() >= table.getItems().size() - PREFETCH_ROWS) {
+                    loadNextPage();
+                }
+            }
+        });
         setCenter(table);
     }
 
+    private HBox buildFilterBar() {
+        DatePicker from = new DatePicker();
+        DatePicker to = new DatePicker();
+        TextField minTotal = new TextField();
+        minTotal.setPromptText("Min $");
+        minTotal.setPrefWidth(70);
+        TextField maxTotal = new TextField();
+        maxTotal.setPromptText("Max $");
+        maxTotal.setPrefWidth(70);
+        Button apply = new Button("Apply");
+        apply.setOnAction(e -> {
+            filter = new OrderHistoryService.Filter(from.getValue(), to.getValue(),
+                    parseCents(minTotal.getText()), parseCents(maxTotal.getText()));
+            refresh();
+        });
+        Button clear = new Button("Clear");
+        clear.setOnAction(e -> {
+            from.setValue(null); to.setValue(null); minTotal.clear(); maxTotal.clear();
+            filter = OrderHistoryService.Filter.NONE;
+            refresh();
+        });
+        HBox bar = new HBox(10, new Label("From"), from, new Label("To"), to, minTotal, maxTotal, apply, clear);
+        bar.setPadding(new Insets(0, 0, 10, 0));
+        return bar;
+    }
+
     private void refresh() {
+        generation++;
+        cursor = null;
+        loading = false;
+        exhausted = false;
+        early = new ArrayList<>();
         table.getItems().clear();
-        String sql = "SELECT id, created_at, total_cents FROM orders ORDER BY id DESC LIMIT 200";
-        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                table.getItems().add(new OrderRow(rs.getInt(1), rs.getString(2), rs.getInt(3)));
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (loading || exhausted) return;
+        loading = true;
+        int gen = generation;
+        OrderHistoryService.Filter f = filter;
+        OrderHistoryService.Cursor after = cursor;
+        status.setText("Loading...");
+        // At most one page is in flight, so pages always arrive in order
+        Fx.then(services.orderHistoryPage(f, after, PAGE_SIZE), page -> {
+            if (gen != generation) return;
+            cursor = page.next();
+            exhausted = page.last();
+            List<OrderRow> rows = new ArrayList<>(page.rows().size());
+            for (OrderHistoryService.OrderSummary o : page.rows()) {
+                rows.add(new OrderRow(o.id(), o.createdAt(), o.totalCents()));
+            }
+            table.getItems().addAll(rows);
+            if (early != null) {
+                List<OrderEvents.OrderEvent> pending = early;
+                early = null;
+                Set<Integer> listed = new HashSet<>();
+                for (OrderRow r : rows) listed.add(r.id);
+                pending.removeIf(e -> listed.contains(e.orderId()));
+                committed(pending);
             }
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, e.getMessage()).show();
+            updateStatus();
+        }, () -> {
+            if (gen != generation) return;
+            loading = false;
+            // A failed first page leaves nothing for buffered orders to be checked against
+            early = null;
+        });
+    }
+
+    // Newest first, like the listing, so each committed order goes on top
+    private void committed(List<OrderEvents.OrderEvent> batch) {
+        if (early != null) {
+            early.addAll(batch);
+            return;
+        }
+        boolean added = false;
+        for (OrderEvents.OrderEvent e : batch) {
+            if (!filter.matches(e.createdMs(), e.totalCents())) continue;
+            table.getItems().add(0, new OrderRow(e.orderId(), e.createdAt(), e.totalCents()));
+            added = true;
         }
+        if (added) updateStatus();
+    }
+
+    private void updateStatus() {
+        status.setText(table.getItems().size() + (exhausted ? " orders" : "+ orders"));
     }
 
     private void reprint() {
         OrderRow row = table.getSelectionModel().getSelectedItem();
         if (row == null) return;
-        try (Connection conn = Database.getConnection(); PreparedStatement ps = conn.prepareStatement("SELECT content FROM order_receipt WHERE order_id = ?")) {
-            ps.setInt(1, row.id);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    String content = rs.getString(1);
-                    TextArea ta = new TextArea(content);
-                    ta.setEditable(false);
-                    Dialog<Void> dlg = new Dialog<>();
-                    dlg.setTitle("Receipt #" + row.id);
-                    dlg.getDialogPane().getButtonTypes().add(ButtonType.OK);
-                    dlg.getDialogPane().setContent(ta);
-                    dlg.showAndWait();
-                }
-            }
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, e.getMessage()).show();
-        }
+        Fx.then(services.loadReceipt(row.id), content -> {
+            if (content != null) showReceipt(row.id, content);
+        });
+    }
+
+    private void showReceipt(int orderId, String content) {
+        TextArea ta = new TextArea(content);
+        ta.setEditable(false);
+        Dialog<Void> dlg = new Dialog<>();
+        dlg.setTitle("Receipt #" + orderId);
+        dlg.getDialogPane().getButtonTypes().add(ButtonType.OK);
+        dlg.getDialogPane().setContent(ta);
+        dlg.showAndWait();
+    }
+
+    private Integer parseCents(String s) {
+        try { return (int) Math.round(Double.parseDouble(s.trim()) * 100); } catch (Exception e) { return null; }
     }
 }
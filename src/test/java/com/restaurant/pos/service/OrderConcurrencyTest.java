@@ -0,0 +1,174 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Concurrent checkouts against a fresh database. Sixteen callers place orders through placeOrder while a second
+ * connection, standing in for another process, keeps taking the write lock; Cola is stocked short so that callers
+ * also race for the last units. Every order a caller was told succeeded must be stored exactly once, nothing else
+ * may be stored, no batch may go negative, and the stock taken must equal the quantities sold.
+ */
+class OrderConcurrencyTest {
+    private static final int CALLERS = 16;
+    private static final int ORDERS_PER_CALLER = 40;
+    private static final int COLA_ID = 3;
+
+    @TempDir
+    static Path dataDir;
+
+    private static MenuService.MenuItem[] menu;
+
+    @BeforeAll
+    static void setUp() {
+        // Read once when Database is loaded, so each test class runs in its own JVM
+        System.setProperty("pos.data.dir", dataDir.toString());
+        Database.initialize();
+        InventoryService inventory = new InventoryService();
+        for (MenuService.MenuItem mi : new MenuService().listActiveMenuItems()) {
+            // Cola runs out part way through the run, everything else never does
+            int quantity = mi.id() == COLA_ID ? 400 : 5_000;
+            inventory.addStockBatch(mi.id(), quantity, 100, LocalDate.now().plusDays(3));
+        }
+        menu = new MenuService().listActiveMenuItems().toArray(new MenuService.MenuItem[0]);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.shutdown();
+    }
+
+    @Test
+    void concurrentCheckoutsLoseNothingAndNeverOversell() throws Exception {
+        long stockBefore = sum("SELECT COALESCE(SUM(quantity), 0) FROM inventory_batch");
+        OrderService orders = new OrderService();
+        Set<String> confirmed = ConcurrentHashMap.newKeySet();
+        Map<String, Throwable> failures = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int c = 0; c < CALLERS; c++) {
+            int caller = c;
+            done.add(callers.submit(() -> {
+                SplittableRandom rnd = new SplittableRandom(caller);
+                start.await();
+                for (int n = 0; n < ORDERS_PER_CALLER; n++) {
+                    // The payment method tags the attempt, so stored orders can be matched to callers
+                    String tag = "test-" + caller + "-" + n;
+                    try {
+                        orders.placeOrder(cart(rnd), tag);
+                        confirmed.add(tag);
+                    } catch (RuntimeException e) {
+                        failures.put(tag, e);
+                    }
+                }
+                return null;
+            }));
+        }
+        ExecutorService lockHolder = Executors.newSingleThreadExecutor();
+        Future<?> foreign = lockHolder.submit(() -> holdWriteLock(running));
+        start.countDown();
+        try {
+            for (Future<?> f : done) f.get(2, TimeUnit.MINUTES);
+        } finally {
+            running.set(false);
+            callers.shutdownNow();
+            lockHolder.shutdown();
+            orders.shutdown();
+        }
+        foreign.get(10, TimeUnit.SECONDS);
+
+        failures.forEach((tag, e) -> assertTrue(isStockOut(e), () -> tag + " failed with " + e));
+        assertEquals(CALLERS * ORDERS_PER_CALLER, confirmed.size() + failures.size());
+        assertTrue(confirmed.size() > failures.size(), "most orders should go through");
+        assertTrue(!failures.isEmpty(), "Cola should have sold out");
+
+        Set<String> stored = new HashSet<>();
+        try (Connection conn = Database.getReadConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT payment_method, COUNT(*) FROM orders WHERE payment_method LIKE 'test-%' GROUP BY payment_method");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String tag = rs.getString(1);
+                assertEquals(1, rs.getInt(2), () -> "duplicated order " + tag);
+                stored.add(tag);
+            }
+        }
+        assertEquals(confirmed, stored, "stored orders differ from confirmed ones");
+
+        assertEquals(0, sum("SELECT COUNT(*) FROM inventory_batch WHERE quantity < 0"), "negative stock");
+        long sold = sum("SELECT COALESCE(SUM(quantity), 0) FROM order_item");
+        long stockAfter = sum("SELECT COALESCE(SUM(quantity), 0) FROM inventory_batch");
+        assertEquals(stockBefore - stockAfter, sold, "stock taken differs from quantities sold");
+    }
+
+    private static List<OrderService.CartLine> cart(SplittableRandom rnd) {
+        int lines = 1 + rnd.nextInt(3);
+        List<OrderService.CartLine> cart = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            MenuService.MenuItem mi = menu[rnd.nextInt(menu.length)];
+            cart.add(new OrderService.CartLine(mi.id(), mi.name(), 1 + rnd.nextInt(3), mi.priceCents()));
+        }
+        return cart;
+    }
+
+    // Takes and briefly holds the write lock on its own connection, as another process on the same file would
+    private static Void holdWriteLock(AtomicBoolean running) throws SQLException, InterruptedException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dataDir.resolve("pos.db"));
+             Statement st = conn.createStatement()) {
+            st.execute("PRAGMA busy_timeout = 5000");
+            while (running.get()) {
+                st.execute("BEGIN IMMEDIATE");
+                Thread.sleep(2);
+                st.execute("COMMIT");
+                Thread.sleep(10);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isStockOut(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (String.valueOf(t.getMessage()).startsWith("Insufficient stock")) return true;
+        }
+        return false;
+    }
+
+    private static long sum(String sql) throws SQLException {
+        try (Connection conn = Database.getReadConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
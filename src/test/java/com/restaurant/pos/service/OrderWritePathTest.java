@@ -0,0 +1,151 @@
+package com.restaurant.pos.service;
+
+import com.restaurant.pos.db.Database;
+import com.restaurant.pos.db.Transactions;
+import com.restaurant.pos.metrics.LatencyHistogram;
+import com.restaurant.pos.metrics.Metrics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Statement counts of the checkout write path. writeOrder runs for carts of 1, 5 and 20 distinct items, each time in
+ * a transaction that is rolled back so every run sees the same stock. Each statement must be prepared once per order
+ * and executed as often for twenty lines as for one: the lines go out as batches and FIFO deduction plans every item
+ * in one query. Timings for the same cart sizes are in OrderBenchmark, under the bench profile.
+ */
+class OrderWritePathTest {
+    private static final int[] CART_SIZES = {1, 5, 20};
+    private static final int MENU_ITEMS = 200;
+    private static final int BATCHES_PER_ITEM = 5;
+
+    @TempDir
+    static Path dataDir;
+
+    private static List<MenuService.MenuItem> menu;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        // Read once when Database is loaded, so each test class runs in its own JVM
+        System.setProperty("pos.data.dir", dataDir.toString());
+        Database.initialize();
+        Transactions.write(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO menu_item(name, category, price_cents, sku) VALUES (?,?,?,?)")) {
+                for (int i = 0; i < MENU_ITEMS; i++) {
+                    ps.setString(1, "Test item " + i);
+                    ps.setString(2, "Food");
+                    ps.setInt(3, 500 + i);
+                    ps.setString(4, "TEST" + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return null;
+        });
+        MenuCatalog.instance().refreshIfChanged();
+        menu = new MenuService().listActiveMenuItems();
+        InventoryService inventory = new InventoryService();
+        for (MenuService.MenuItem mi : menu) {
+            // Several batches per item, so FIFO deduction has more than one row to plan over
+            for (int b = 1; b <= BATCHES_PER_ITEM; b++) {
+                inventory.addStockBatch(mi.id(), 1_000, 100, LocalDate.now().plusDays(b));
+            }
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        Database.shutdown();
+    }
+
+    @Test
+    void statementCountsDoNotGrowWithCartSize() throws SQLException {
+        OrderService orders = new OrderService();
+        // Once per size first, so caches loaded on first use (menu, promos) stay out of the counts
+        for (int size : CART_SIZES) writeAndRollBack(orders, cart(size), new HashMap<>());
+
+        Map<String, Long> oneLine = null;
+        for (int size : CART_SIZES) {
+            Map<String, Integer> prepared = new HashMap<>();
+            Map<String, Long> before = executions();
+            writeAndRollBack(orders, cart(size), prepared);
+            Map<String, Long> executed = since(before);
+
+            prepared.forEach((sql, n) -> assertEquals(1, n, () -> size + "-line order prepared " + n + " times: " + sql));
+            if (oneLine == null) {
+                oneLine = executed;
+            } else {
+                assertEquals(oneLine, executed, size + "-line order executed statements more often than a one-line order");
+            }
+        }
+    }
+
+    private static List<OrderService.CartLine> cart(int lines) {
+        List<OrderService.CartLine> cart = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            MenuService.MenuItem mi = menu.get(i);
+            cart.add(new OrderService.CartLine(mi.id(), mi.name(), 1 + i % 3, mi.priceCents()));
+        }
+        return cart;
+    }
+
+    // Counts writeOrder's prepareStatement calls by SQL text; the rollback is not counted
+    private static void writeAndRollBack(OrderService orders, List<OrderService.CartLine> cart,
+                                         Map<String, Integer> prepared) throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                orders.writeOrder(counting(conn, prepared), cart, "CARD");
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static Connection counting(Connection conn, Map<String, Integer> prepared) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement")) prepared.merge((String) args[0], 1, Integer::sum);
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    // Executions per statement so far, from the per-statement timers the pool keeps ("sql ...")
+    private static Map<String, Long> executions() {
+        Map<String, Long> out = new HashMap<>();
+        for (LatencyHistogram h : Metrics.all()) {
+            if (h.name().startsWith("sql ")) out.put(h.name(), h.count());
+        }
+        return out;
+    }
+
+    private static Map<String, Long> since(Map<String, Long> before) {
+        Map<String, Long> out = new HashMap<>();
+        executions().forEach((name, n) -> {
+            long d = n - before.getOrDefault(name, 0L);
+            if (d > 0) out.put(name, d);
+        });
+        return out;
+    }
+}